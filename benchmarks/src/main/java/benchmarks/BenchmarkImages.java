@@ -0,0 +1,39 @@
+package benchmarks;
+
+import model.Image;
+import model.ImageTransform;
+import model.Pixels;
+
+/**
+ * Builds the synthetic images that the benchmarks run on. The images are built from packed pixels
+ * directly, so that even the largest sizes do not need a color object per pixel.
+ */
+final class BenchmarkImages {
+  private BenchmarkImages() {
+    // static helpers only
+  }
+
+  /**
+   * Builds a square image with a pattern in every channel (so that no macro gets to skip work).
+   *
+   * @param size the height and width of the image
+   * @return the image
+   */
+  static ImageTransform pattern(int size) {
+    return new Image(size, size, 255).transformPixels((p, row, col)
+        -> Pixels.rgb((row * 31 + col) % 256, (col * 17) % 256, (row * col * 7) % 256));
+  }
+
+  /**
+   * Builds a square black and white checkerboard, to use as a mask.
+   *
+   * @param size   the height and width of the image
+   * @param square the height and width of each square of the board
+   * @return the image
+   */
+  static ImageTransform checkerboard(int size, int square) {
+    return new Image(size, size, 255).transformPixels((p, row, col)
+        -> (row / square + col / square) % 2 == 0 ? Pixels.rgb(0, 0, 0)
+        : Pixels.rgb(255, 255, 255));
+  }
+}
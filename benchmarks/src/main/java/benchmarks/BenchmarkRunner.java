@@ -0,0 +1,40 @@
+package benchmarks;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler always on, so that every result reports its allocation
+ * rate. Takes the same arguments as the JMH runner (for example a benchmark name to run, or
+ * {@code -p size=256} to run a single size).
+ */
+public final class BenchmarkRunner {
+  private BenchmarkRunner() {
+    // entry point only
+  }
+
+  /**
+   * Runs the benchmarks matching the arguments.
+   *
+   * @param args the JMH command line arguments
+   * @throws CommandLineOptionException if the arguments are invalid
+   * @throws RunnerException            if a benchmark fails
+   * @throws IOException                if the list of benchmarks cannot be read
+   */
+  public static void main(String[] args)
+      throws CommandLineOptionException, RunnerException, IOException {
+    CommandLineOptions options = new CommandLineOptions(args);
+    if (options.shouldHelp() || options.shouldList() || options.shouldListProfilers()
+        || options.shouldListResultFormats()) {
+      org.openjdk.jmh.Main.main(args);
+      return;
+    }
+    new Runner(new OptionsBuilder().parent(options).addProfiler(GCProfiler.class).build()).run();
+  }
+}
@@ -0,0 +1,141 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import model.Color;
+import model.ImageTransform;
+import model.RGBColor;
+import model.macros.Convolve;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares Convolve against a plain two-dimensional convolution (one bounds checked tap per kernel
+ * entry, reading each tap as a color), for the Blur kernel, a 15 by 15 gaussian and the Sharpen
+ * kernel (which is not separable).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class ConvolveBenchmark {
+  /**
+   * The height and width of the image.
+   */
+  @Param({"256", "2048"})
+  public int size;
+
+  /**
+   * The kernel to convolve with.
+   */
+  @Param({"blur", "gaussian-15", "sharpen"})
+  public String kernelName;
+
+  private ImageTransform image;
+  private double[][] kernel;
+  private Convolve convolve;
+
+  /**
+   * Builds the image and the kernel.
+   */
+  @Setup(Level.Trial)
+  public void setUp() {
+    image = BenchmarkImages.pattern(size);
+    switch (kernelName) {
+      case "blur":
+        kernel = new double[][]{
+            {1 / 16., 1 / 8., 1 / 16.},
+            {1 / 8., 1 / 4., 1 / 8.},
+            {1 / 16., 1 / 8., 1 / 16.}};
+        break;
+      case "gaussian-15":
+        kernel = gaussian(15, 2.5);
+        break;
+      case "sharpen":
+        kernel = new double[][]{
+            {-1 / 8., -1 / 8., -1 / 8., -1 / 8., -1 / 8.},
+            {-1 / 8., 1 / 4., 1 / 4., 1 / 4., -1 / 8.},
+            {-1 / 8., 1 / 4., 1, 1 / 4., -1 / 8.},
+            {-1 / 8., 1 / 4., 1 / 4., 1 / 4., -1 / 8.},
+            {-1 / 8., -1 / 8., -1 / 8., -1 / 8., -1 / 8.}};
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown kernel: " + kernelName + ".");
+    }
+    convolve = new Convolve(kernel);
+  }
+
+  /**
+   * Runs Convolve.
+   *
+   * @param counter the counter of the megapixels processed
+   * @return the new image
+   */
+  @Benchmark
+  public ImageTransform convolve(PixelCounter counter) {
+    counter.add(size, size);
+    return convolve.execute(image);
+  }
+
+  /**
+   * Runs the plain convolution, as Convolve used to run it.
+   *
+   * @param counter the counter of the megapixels processed
+   * @return the new image
+   */
+  @Benchmark
+  public ImageTransform plain(PixelCounter counter) {
+    counter.add(size, size);
+    int kernelCentre = kernel.length / 2;
+    int imgHeight = image.getHeight();
+    int imgWidth = image.getWidth();
+    return image.transform((c, y, x) -> {
+      double r = 0;
+      double g = 0;
+      double b = 0;
+      for (int row = -kernelCentre; row < kernelCentre + 1; row += 1) {
+        for (int col = -kernelCentre; col < kernelCentre + 1; col += 1) {
+          int sumR = y + row;
+          int sumC = x + col;
+          if (sumR >= 0 && sumR < imgHeight && sumC >= 0 && sumC < imgWidth) {
+            Color sumColor = image.getColorAt(sumR, sumC);
+            double value = kernel[row + kernelCentre][col + kernelCentre];
+            r += sumColor.getRed() * value;
+            g += sumColor.getGreen() * value;
+            b += sumColor.getBlue() * value;
+          }
+        }
+      }
+      return new RGBColor((int) r, (int) g, (int) b, c.getAlpha());
+    });
+  }
+
+  private static double[][] gaussian(int size, double sigma) {
+    double[] weights = new double[size];
+    double total = 0;
+    for (int i = 0; i < size; i += 1) {
+      double d = i - size / 2;
+      weights[i] = Math.exp(-d * d / (2 * sigma * sigma));
+      total += weights[i];
+    }
+    double[][] kernel = new double[size][size];
+    for (int row = 0; row < size; row += 1) {
+      for (int col = 0; col < size; col += 1) {
+        kernel[row][col] = weights[row] * weights[col] / (total * total);
+      }
+    }
+    return kernel;
+  }
+}
@@ -0,0 +1,130 @@
+package benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import controller.io.IPRFile;
+import controller.io.ImageLoader;
+import controller.io.PPMFormat;
+import controller.io.PPMWriter;
+import controller.io.Rasters;
+import model.ImageTransform;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares loading the same image from a P3, P6, PNG, and IPR file through the ImageLoader, both
+ * on its own and followed by reading every row of the image (since IPR files are only mapped when
+ * loaded, and their pixels are read from the file as they are used).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class LoadBenchmark {
+  /**
+   * The height and width of the image.
+   */
+  @Param({"256", "2048"})
+  public int size;
+
+  /**
+   * The format of the file.
+   */
+  @Param({"p3", "p6", "png", "ipr"})
+  public String format;
+
+  private ImageLoader loader;
+  private Path file;
+
+  /**
+   * Writes the image to a file in the format.
+   *
+   * @throws IOException if the file cannot be written
+   */
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    ImageTransform image = BenchmarkImages.pattern(size);
+    loader = new ImageLoader();
+    file = File.createTempFile("benchmark", "." + format).toPath();
+    switch (format) {
+      case "p3":
+        PPMWriter.write(image, file, PPMFormat.P3);
+        break;
+      case "p6":
+        PPMWriter.write(image, file, PPMFormat.P6);
+        break;
+      case "png":
+        BufferedImage buffered = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        Rasters.toBufferedImage(image, buffered);
+        ImageIO.write(buffered, "png", file.toFile());
+        break;
+      default:
+        IPRFile.write(image, file);
+    }
+  }
+
+  /**
+   * Deletes the file.
+   *
+   * @throws IOException if the file cannot be deleted
+   */
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(file);
+  }
+
+  /**
+   * Loads the image.
+   *
+   * @param counter the counter of the megapixels processed
+   * @return the image
+   * @throws IOException if the file cannot be read
+   */
+  @Benchmark
+  public ImageTransform load(PixelCounter counter) throws IOException {
+    counter.add(size, size);
+    return loader.load(file);
+  }
+
+  /**
+   * Loads the image and reads every row of it.
+   *
+   * @param counter the counter of the megapixels processed
+   * @return the sum of the pixels
+   * @throws IOException if the file cannot be read
+   */
+  @Benchmark
+  public long loadAndRead(PixelCounter counter) throws IOException {
+    counter.add(size, size);
+    ImageTransform image = loader.load(file);
+    int[] row = new int[image.getWidth()];
+    long sum = 0;
+    for (int r = 0; r < image.getHeight(); r += 1) {
+      image.getPixelRow(r, row);
+      for (int pixel : row) {
+        sum += pixel;
+      }
+    }
+    return sum;
+  }
+}
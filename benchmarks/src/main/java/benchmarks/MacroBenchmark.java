@@ -0,0 +1,131 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import model.ImageTransform;
+import model.macros.Blur;
+import model.macros.Brighten;
+import model.macros.Component;
+import model.macros.Crop;
+import model.macros.Downscale;
+import model.macros.Greyscale;
+import model.macros.HorizontalFlip;
+import model.macros.Levels;
+import model.macros.Macro;
+import model.macros.MacroChain;
+import model.macros.Mask;
+import model.macros.Rotate;
+import model.macros.Sepia;
+import model.macros.Sharpen;
+import model.macros.VerticalFlip;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures every macro on synthetic square images of several sizes. Besides the operations per
+ * second, each result reports the megapixels of the source image processed per second
+ * ("megapixels"), and the allocation rate when run with the GC profiler (which
+ * {@link BenchmarkRunner} always adds).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms6g", "-Xmx6g"})
+public class MacroBenchmark {
+  /**
+   * The height and width of the image.
+   */
+  @Param({"256", "2048", "8192"})
+  public int size;
+
+  /**
+   * The name of the macro to run (see {@link #macro(String)}).
+   */
+  @Param({"blur", "sharpen", "greyscale", "sepia", "brighten", "red-component",
+      "green-component", "blue-component", "value-component", "intensity-component",
+      "luma-component", "horizontal-flip", "vertical-flip", "downscale", "masked-blur", "levels",
+      "rotate", "crop", "chain"})
+  public String name;
+
+  private ImageTransform image;
+  private Macro macro;
+
+  /**
+   * Builds the image and the macro to run on it.
+   */
+  @Setup(Level.Trial)
+  public void setUp() {
+    image = BenchmarkImages.pattern(size);
+    macro = this.macro(name);
+  }
+
+  /**
+   * Runs the macro on the image.
+   *
+   * @param counter the counter of the megapixels processed
+   * @return the new image (returned so that the work cannot be skipped)
+   */
+  @Benchmark
+  public ImageTransform execute(PixelCounter counter) {
+    counter.add(size, size);
+    return macro.execute(image);
+  }
+
+  // builds the macro with the given name
+  private Macro macro(String name) {
+    switch (name) {
+      case "blur":
+        return new Blur();
+      case "sharpen":
+        return new Sharpen();
+      case "greyscale":
+        return new Greyscale();
+      case "sepia":
+        return new Sepia();
+      case "brighten":
+        return new Brighten(40);
+      case "red-component":
+        return Component.red();
+      case "green-component":
+        return Component.green();
+      case "blue-component":
+        return Component.blue();
+      case "value-component":
+        return Component.value();
+      case "intensity-component":
+        return Component.intensity();
+      case "luma-component":
+        return Component.luma();
+      case "horizontal-flip":
+        return new HorizontalFlip();
+      case "vertical-flip":
+        return new VerticalFlip();
+      case "downscale":
+        return new Downscale(size / 2, size / 2);
+      case "masked-blur":
+        return new Mask(new Blur(), BenchmarkImages.checkerboard(size, 16));
+      case "levels":
+        return new Levels(0.1, 1.5, 0.9);
+      case "rotate":
+        return new Rotate(1);
+      case "crop":
+        return new Crop(size / 4, size / 4, size / 2, size / 2);
+      case "chain":
+        return new MacroChain(new Sepia(), new Brighten(-20), new Levels(0.1, 1.2, 1));
+      default:
+        throw new IllegalArgumentException("Unknown macro: " + name + ".");
+    }
+  }
+}
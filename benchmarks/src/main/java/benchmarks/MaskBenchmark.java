@@ -0,0 +1,110 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import model.ImageTransform;
+import model.Pixels;
+import model.macros.Blur;
+import model.macros.Brighten;
+import model.macros.Macro;
+import model.macros.Mask;
+import model.macros.Sharpen;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares Mask against running the macro on the whole image and then choosing between the edited
+ * and original pixels (as Mask used to), for a disc shaped mask covering a given share of the
+ * image.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class MaskBenchmark {
+  /**
+   * The height and width of the image.
+   */
+  @Param({"2048"})
+  public int size;
+
+  /**
+   * The percentage of the image the mask selects.
+   */
+  @Param({"2", "25", "100"})
+  public int coverage;
+
+  /**
+   * The macro to run under the mask.
+   */
+  @Param({"blur", "sharpen", "brighten"})
+  public String macroName;
+
+  private ImageTransform image;
+  private ImageTransform maskImage;
+  private Macro macro;
+
+  /**
+   * Builds the image, the mask, and the macro.
+   */
+  @Setup(Level.Trial)
+  public void setUp() {
+    image = BenchmarkImages.pattern(size);
+    double radius = Math.sqrt(coverage / 100.0 * size * size / Math.PI);
+    maskImage = image.transformPixels((p, row, col)
+        -> Math.hypot(row - size / 2.0, col - size / 2.0) <= radius ? Pixels.rgb(0, 0, 0)
+        : Pixels.rgb(255, 255, 255));
+    switch (macroName) {
+      case "blur":
+        macro = new Blur();
+        break;
+      case "sharpen":
+        macro = new Sharpen();
+        break;
+      case "brighten":
+        macro = new Brighten(40);
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown macro: " + macroName + ".");
+    }
+  }
+
+  /**
+   * Runs Mask (with the mask worked out again each time, as a new mask command would).
+   *
+   * @param counter the counter of the megapixels processed
+   * @return the new image
+   */
+  @Benchmark
+  public ImageTransform mask(PixelCounter counter) {
+    counter.add(size, size);
+    return new Mask(macro, maskImage).execute(image);
+  }
+
+  /**
+   * Runs the macro on the whole image and keeps its pixels where the mask is black.
+   *
+   * @param counter the counter of the megapixels processed
+   * @return the new image
+   */
+  @Benchmark
+  public ImageTransform whole(PixelCounter counter) {
+    counter.add(size, size);
+    ImageTransform edited = macro.execute(image);
+    int black = Pixels.rgb(0, 0, 0);
+    return image.transformPixels((p, y, x)
+        -> maskImage.getPixelAt(y, x) == black ? edited.getPixelAt(y, x) : p);
+  }
+}
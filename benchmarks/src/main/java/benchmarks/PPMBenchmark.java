@@ -0,0 +1,114 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import controller.io.PPMFormat;
+import controller.io.PPMWriter;
+import model.Color;
+import model.ImageState;
+import model.ImageTransform;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares saving an image as a P3 file through PPMWriter against building the whole file in a
+ * string first and writing it with a FileWriter, as the controller used to save it. The GC
+ * profiler shows how much each allocates per save.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class PPMBenchmark {
+  /**
+   * The height and width of the image.
+   */
+  @Param({"256", "2048"})
+  public int size;
+
+  private ImageTransform image;
+  private Path file;
+
+  /**
+   * Builds the image and the file to save it to.
+   *
+   * @throws IOException if the file cannot be created
+   */
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    image = BenchmarkImages.pattern(size);
+    file = File.createTempFile("benchmark", ".ppm").toPath();
+  }
+
+  /**
+   * Deletes the file.
+   *
+   * @throws IOException if the file cannot be deleted
+   */
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(file);
+  }
+
+  /**
+   * Saves the image through PPMWriter.
+   *
+   * @param counter the counter of the megapixels processed
+   * @throws IOException if the file cannot be written
+   */
+  @Benchmark
+  public void stream(PixelCounter counter) throws IOException {
+    counter.add(size, size);
+    PPMWriter.write(image, file, PPMFormat.P3);
+  }
+
+  /**
+   * Saves the image by building the file in a string.
+   *
+   * @param counter the counter of the megapixels processed
+   * @throws IOException if the file cannot be written
+   */
+  @Benchmark
+  public void string(PixelCounter counter) throws IOException {
+    counter.add(size, size);
+    try (FileWriter writer = new FileWriter(file.toFile())) {
+      writer.write(toPPM(image));
+    }
+  }
+
+  private static String toPPM(ImageState img) {
+    StringBuilder lines = new StringBuilder();
+    lines.append("P3").append(System.lineSeparator());
+    lines.append(img.getWidth()).append(" ");
+    lines.append(img.getHeight()).append(System.lineSeparator());
+    lines.append(img.getMaxValue()).append(System.lineSeparator());
+
+    for (int row = 0; row < img.getHeight(); row += 1) {
+      for (int col = 0; col < img.getWidth(); col += 1) {
+        Color c = img.getColorAt(row, col);
+        lines.append(c.getRed()).append(System.lineSeparator());
+        lines.append(c.getGreen()).append(System.lineSeparator());
+        lines.append(c.getBlue()).append(System.lineSeparator());
+      }
+    }
+    return lines.toString();
+  }
+}
@@ -0,0 +1,38 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Counts the megapixels processed by a benchmark, which JMH reports as a rate (megapixels per
+ * second) next to the operations per second.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class PixelCounter {
+  /**
+   * The megapixels processed so far in the current iteration.
+   */
+  public double megapixels;
+
+  /**
+   * Clears the count at the start of each iteration.
+   */
+  @Setup(Level.Iteration)
+  public void clear() {
+    megapixels = 0;
+  }
+
+  /**
+   * Counts an image processed.
+   *
+   * @param height the height of the image
+   * @param width  the width of the image
+   */
+  void add(int height, int width) {
+    megapixels += (double) height * width / 1e6;
+  }
+}
@@ -2,10 +2,13 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 
-import controller.ImageProcessingController;
 import controller.ImageProcessingControllerImplProMax;
 import model.ImageProcessingModel;
 import model.ImageProcessingModelImpl;
+import model.ImageStore;
+import model.LazyImageProcessingModel;
+import model.MacroCache;
+import model.ParallelRows;
 import view.ImageProcessingGUI;
 import view.ImageProcessingGUIFrame;
 import view.ImageProcessingView;
@@ -23,31 +26,91 @@ public class ImageProcessingProgram {
   public static void main(String[] args) throws IOException {
     FileReader file = null;
     boolean gui = true;
+    String statsFile = null;
+    boolean lazy = false;
+    boolean batch = false;
+    boolean memory = false;
+    ImageStore store = new ImageStore();
+    MacroCache results = new MacroCache();
     for (int i = 0; i < args.length; i++) {
       if ("-file".equals(args[i]) && args.length > i + 1) {
         String fileName = args[++i];
         file = new FileReader(fileName);
       } else if ("-text".equals(args[i])) {
         gui = false;
+      } else if ("-parallelism".equals(args[i]) && args.length > i + 1) {
+        try {
+          ParallelRows.configure(Integer.parseInt(args[++i]), ParallelRows.DEFAULT_THRESHOLD);
+        } catch (IllegalArgumentException e) {
+          usage(file, "-parallelism must be followed by a number of threads from 1 to 32767.");
+          return;
+        }
+      } else if ("-stats".equals(args[i]) && args.length > i + 1) {
+        statsFile = args[++i];
+      } else if ("-lazy".equals(args[i])) {
+        lazy = true;
+      } else if ("-memory".equals(args[i]) && args.length > i + 1) {
+        long megabytes;
+        try {
+          megabytes = Long.parseLong(args[++i]);
+        } catch (NumberFormatException e) {
+          megabytes = 0;
+        }
+        if (megabytes < 1 || megabytes > Long.MAX_VALUE / 1_000_000L) {
+          usage(file, "-memory must be followed by a positive number of megabytes.");
+          return;
+        }
+        long budget = megabytes * 1_000_000L;
+        memory = true;
+        store = new ImageStore(budget);
+        // results are kept on top of the images, so they only get a share of the budget
+        results = new MacroCache(budget / 4);
+      } else if ("-batch".equals(args[i])) {
+        batch = true;
       }
     }
     if (file != null) {
       gui = false;
     }
+    if (lazy && memory) {
+      // the lazy model keeps its images itself, so it has no budget to keep them in
+      usage(file, "-memory cannot be used with -lazy.");
+      return;
+    }
 
-    ImageProcessingModel model = new ImageProcessingModelImpl();
+    ImageProcessingModel model = lazy ? new LazyImageProcessingModel()
+        : new ImageProcessingModelImpl(store, results);
     Readable input = file == null ? new InputStreamReader(System.in) : file;
     ImageProcessingView output = new ImageProcessingViewImpl();
-    ImageProcessingController controller;
+    ImageProcessingControllerImplProMax controller;
     if (gui) {
       ImageProcessingGUI view = new ImageProcessingGUIFrame();
       controller = new ImageProcessingControllerImplProMax(model, view);
     } else {
       controller = new ImageProcessingControllerImplProMax(model, output, input);
+      controller.setStatsFile(statsFile);
+      if (file != null) {
+        // nothing is left to use the images once the script quits
+        controller.setFreeImages(true);
+      }
+      if (batch && file != null) {
+        controller.setScriptThreads(ParallelRows.getParallelism());
+      }
     }
     controller.control();
     if (file != null) {
       file.close();
     }
   }
+
+  // prints what is wrong with the command line arguments and how they are used, closing the file
+  // of the script if it was opened
+  private static void usage(FileReader file, String problem) throws IOException {
+    if (file != null) {
+      file.close();
+    }
+    System.err.println(problem);
+    System.err.println("Usage: [-file script-path [-batch]] [-text] [-parallelism threads] "
+        + "[-stats stats-path] [-lazy] [-memory megabytes]");
+  }
 }
@@ -0,0 +1,224 @@
+package controller;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Records how long each run of a command took, how many pixels it processed, and how many bytes
+ * it allocated, so that the slow commands of a script can be found. The runs are summarized per
+ * command name, either as lines of text or as JSON.
+ */
+public class CommandStats {
+  // The runs of each command, by command name
+  private final Map<String, List<Run>> runs;
+
+  /**
+   * Constructs the stats with no runs recorded.
+   */
+  public CommandStats() {
+    this.runs = new TreeMap<>();
+  }
+
+  // A single run of a command
+  private static class Run {
+    private final long nanos;
+    private final long pixels;
+    private final long bytes;
+
+    Run(long nanos, long pixels, long bytes) {
+      this.nanos = nanos;
+      this.pixels = pixels;
+      this.bytes = bytes;
+    }
+  }
+
+  /**
+   * Records a run of a command.
+   *
+   * @param name   the name of the command
+   * @param nanos  the wall time the run took, in nanoseconds
+   * @param pixels the number of pixels the run processed
+   * @param bytes  the number of bytes the run allocated (negative if unknown)
+   * @throws IllegalArgumentException if the name is null
+   */
+  public synchronized void record(String name, long nanos, long pixels, long bytes)
+      throws IllegalArgumentException {
+    if (name == null) {
+      throw new IllegalArgumentException("Command name cannot be null.");
+    }
+    runs.computeIfAbsent(name, n -> new ArrayList<>()).add(new Run(nanos, pixels, bytes));
+  }
+
+  /**
+   * Summarizes the runs of each command (in order of name) as a line of text each: the number of
+   * runs, the 50th, 90th and 99th percentile and maximum wall times, the megapixels processed per
+   * second, and the bytes allocated per run.
+   *
+   * @return the lines of the summary
+   */
+  public synchronized List<String> summary() {
+    List<String> lines = new ArrayList<>();
+    if (runs.isEmpty()) {
+      lines.add("No commands have been run.");
+      return lines;
+    }
+    for (Map.Entry<String, List<Run>> entry : runs.entrySet()) {
+      List<Run> commandRuns = entry.getValue();
+      long[] nanos = sortedNanos(commandRuns);
+      long perRun = allocatedPerRun(commandRuns);
+      String allocated = perRun < 0 ? "unknown allocation"
+          : String.format(Locale.ROOT, "%.1f MB allocated per run", perRun / 1e6);
+      lines.add(String.format(Locale.ROOT,
+          "%s: %d run%s, p50 %.1f ms, p90 %.1f ms, p99 %.1f ms, max %.1f ms, %.1f MP/s, %s",
+          entry.getKey(), commandRuns.size(), commandRuns.size() == 1 ? "" : "s",
+          percentile(nanos, 50) / 1e6, percentile(nanos, 90) / 1e6,
+          percentile(nanos, 99) / 1e6, nanos[nanos.length - 1] / 1e6,
+          megapixelsPerSecond(commandRuns), allocated));
+    }
+    return lines;
+  }
+
+  /**
+   * Gets the same summary as JSON, along with every run of each command.
+   *
+   * @return the JSON object
+   */
+  public synchronized String toJson() {
+    StringBuilder json = new StringBuilder("{\"commands\": [");
+    String separator = "";
+    for (Map.Entry<String, List<Run>> entry : runs.entrySet()) {
+      List<Run> commandRuns = entry.getValue();
+      long[] nanos = sortedNanos(commandRuns);
+      json.append(separator).append(System.lineSeparator());
+      json.append(String.format(Locale.ROOT, "  {\"name\": \"%s\", \"runs\": %d, "
+              + "\"p50Ms\": %.3f, \"p90Ms\": %.3f, \"p99Ms\": %.3f, \"maxMs\": %.3f, "
+              + "\"megapixelsPerSecond\": %.3f, \"bytesAllocatedPerRun\": %d, \"samples\": [",
+          escape(entry.getKey()), commandRuns.size(), percentile(nanos, 50) / 1e6,
+          percentile(nanos, 90) / 1e6, percentile(nanos, 99) / 1e6,
+          nanos[nanos.length - 1] / 1e6, megapixelsPerSecond(commandRuns),
+          allocatedPerRun(commandRuns)));
+      String sampleSeparator = "";
+      for (Run run : commandRuns) {
+        json.append(String.format(Locale.ROOT,
+            "%s{\"timeMs\": %.3f, \"pixels\": %d, \"bytesAllocated\": %d}",
+            sampleSeparator, run.nanos / 1e6, run.pixels, run.bytes));
+        sampleSeparator = ", ";
+      }
+      json.append("]}");
+      separator = ",";
+    }
+    json.append(System.lineSeparator()).append("]}").append(System.lineSeparator());
+    return json.toString();
+  }
+
+  /**
+   * Gets the number of bytes allocated so far by every live thread, if the JVM can measure it.
+   *
+   * @return the number of bytes, or -1 if it cannot be measured
+   */
+  static long allocatedBytes() {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+      return -1;
+    }
+    com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) bean;
+    if (!allocations.isThreadAllocatedMemorySupported()
+        || !allocations.isThreadAllocatedMemoryEnabled()) {
+      return -1;
+    }
+    long total = 0;
+    for (long bytes : allocations.getThreadAllocatedBytes(bean.getAllThreadIds())) {
+      // threads that have died since being listed report -1
+      total += Math.max(bytes, 0);
+    }
+    return total;
+  }
+
+  /**
+   * Starts measuring the peak heap use again, from the heap use now.
+   */
+  static void resetPeakHeap() {
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+        pool.resetPeakUsage();
+      }
+    }
+  }
+
+  /**
+   * Gets the most heap used since the peak was last reset, as the sum of the peaks of each heap
+   * memory pool (which may have been reached at different times, so this is an upper bound).
+   *
+   * @return the number of bytes, or -1 if the JVM does not measure it
+   */
+  static long peakHeapBytes() {
+    long total = 0;
+    boolean measured = false;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+        total += pool.getPeakUsage().getUsed();
+        measured = true;
+      }
+    }
+    return measured ? total : -1;
+  }
+
+  private static long[] sortedNanos(List<Run> runs) {
+    long[] nanos = new long[runs.size()];
+    for (int i = 0; i < nanos.length; i += 1) {
+      nanos[i] = runs.get(i).nanos;
+    }
+    Arrays.sort(nanos);
+    return nanos;
+  }
+
+  // the nearest-rank percentile of the sorted values
+  private static long percentile(long[] sorted, int percent) {
+    int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+    return sorted[Math.max(rank, 1) - 1];
+  }
+
+  private static double megapixelsPerSecond(List<Run> runs) {
+    long nanos = 0;
+    long pixels = 0;
+    for (Run run : runs) {
+      nanos += run.nanos;
+      pixels += run.pixels;
+    }
+    return nanos == 0 ? 0 : pixels / 1e6 / (nanos / 1e9);
+  }
+
+  // the average bytes allocated by each run, or -1 if any run could not be measured
+  private static long allocatedPerRun(List<Run> runs) {
+    long bytes = 0;
+    for (Run run : runs) {
+      if (run.bytes < 0) {
+        return -1;
+      }
+      bytes += run.bytes;
+    }
+    return bytes / runs.size();
+  }
+
+  private static String escape(String text) {
+    StringBuilder escaped = new StringBuilder();
+    for (char c : text.toCharArray()) {
+      if (c == '"' || c == '\\') {
+        escaped.append('\\').append(c);
+      } else if (c < ' ') {
+        escaped.append(String.format("\\u%04x", (int) c));
+      } else {
+        escaped.append(c);
+      }
+    }
+    return escaped.toString();
+  }
+}
@@ -2,26 +2,39 @@ package controller;
 
 import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
 
 import javax.imageio.ImageIO;
 
-import model.Color;
+import controller.io.IPRFile;
+import controller.io.ImageLoader;
+import controller.io.PPMFormat;
+import controller.io.PPMWriter;
+import controller.io.Rasters;
 import model.ImageProcessingModel;
 import model.ImageState;
-import model.RGBColor;
+import model.Color;
+import model.ImageTransform;
+import model.ParallelRows;
 import model.macros.Brighten;
 import model.macros.Component;
 import model.macros.HorizontalFlip;
+import model.macros.Macro;
 import model.macros.VerticalFlip;
 import view.ImageProcessingView;
 
@@ -32,6 +45,9 @@ import view.ImageProcessingView;
  * applied to other image formats.
  */
 public class ImageProcessingControllerImpl implements ImageProcessingController {
+  // The start of the name of every image resource of a line of a script
+  private static final String IMAGE = "image ";
+
   //INVARIANT: Non-null Image Processing Model
   protected final ImageProcessingModel model;
   //INVARIANT: Non-null Readable
@@ -40,7 +56,23 @@ public class ImageProcessingControllerImpl implements ImageProcessingController
   private final ImageProcessingView output;
   //INVARIANT: Non-null Map
   private final Map<String, Function<Scanner, ImageProcessingCommand>> knownCommands;
+  //INVARIANT: Non-null Map, the number of leading number arguments of each command that has any
+  private final Map<String, Integer> numberArguments;
   private final List<String> commandMenu;
+  //INVARIANT: Non-null, has a run for every command that succeeded
+  private final CommandStats stats;
+  // The file to write the stats to as JSON when the user quits (null to not write them)
+  private String statsFile;
+  // The pixels read and written by loading and saving files so far
+  private final LongAdder filePixels;
+  //INVARIANT: Non-null, keeps the image readers of every format loaded so far
+  private final ImageLoader loader;
+  // The number of threads that scripts are run on (0 to run them a line at a time)
+  private int scriptThreads;
+  // Whether scripts forget images once they are not used again
+  private boolean freeImages;
+  // The messages of the script line being run by this thread, when scripts are run on threads
+  private final ThreadLocal<List<String>> lineMessages;
 
   /**
    * In order to construct an image processing controller we need a model, readable, and a view.
@@ -66,22 +98,62 @@ public class ImageProcessingControllerImpl implements ImageProcessingController
     this.model = model;
     this.input = input;
     this.output = output;
+    this.stats = new CommandStats();
+    this.filePixels = new LongAdder();
+    this.loader = new ImageLoader();
+    this.lineMessages = new ThreadLocal<>();
 
     // and make a hashmap of commands
     this.knownCommands = new HashMap<>();
+    this.numberArguments = new HashMap<>();
     this.commandMenu = this.loadMenu();
     // that we load commands into
     this.loadCommands();
   }
 
-  protected void toImage(ImageState img, BufferedImage dest) {
-    for (int row = 0; row < img.getHeight(); row += 1) {
-      for (int col = 0; col < img.getWidth(); col += 1) {
-        Color c = img.getColorAt(row, col);
-        dest.setRGB(col, row, (c.getAlpha() << 24)
-            | (c.getRed() << 16) | (c.getGreen() << 8) | c.getBlue());
-      }
+  /**
+   * Sets the file that the timing stats of every command are written to, as JSON, when the user
+   * quits.
+   *
+   * @param fileName the path of the file (or null to not write the stats)
+   */
+  public void setStatsFile(String fileName) {
+    this.statsFile = fileName;
+  }
+
+  /**
+   * Sets the number of threads that scripts are run on. With any threads, the whole script is read
+   * before it is run, and lines that work on different images and files run at the same time
+   * (lines on the same image or file still run in the order of the script, and the stats command
+   * waits for every line before it). Messages are still written in the order of the script. While
+   * lines run at the same time, the pixels and allocation recorded for each command include the
+   * work of the other lines running with it.
+   *
+   * @param threads the number of threads (0 to run scripts a line at a time, as they are read)
+   * @throws IllegalArgumentException if the number of threads is negative
+   */
+  public void setScriptThreads(int threads) throws IllegalArgumentException {
+    if (threads < 0) {
+      throw new IllegalArgumentException("Threads cannot be negative.");
     }
+    this.scriptThreads = threads;
+  }
+
+  /**
+   * Sets whether scripts forget each image as soon as its value is not used again (nothing reads
+   * it before it is next written, or the script ends), so that the memory it takes can be freed.
+   * The whole script is read before it is run, and the peak heap use is written when it quits.
+   * The images a script leaves behind are forgotten too, so this is only for scripts whose results
+   * are saved to files.
+   *
+   * @param free whether to forget images
+   */
+  public void setFreeImages(boolean free) {
+    this.freeImages = free;
+  }
+
+  protected void toImage(ImageState img, BufferedImage dest) {
+    Rasters.toBufferedImage(img, dest);
   }
 
   // loads all the commands that the model can be operated on with
@@ -90,43 +162,48 @@ public class ImageProcessingControllerImpl implements ImageProcessingController
     // Command to load the file in the model
     addCommand("load",
         sc -> model -> this.loadImg(model, sc.next(), sc.next()));
-    // Command to save the file from the model
+    // Command to save the file from the model (optionally in a given PPM format)
     addCommand("save",
-        sc -> model -> this.saveImg(model, sc.next(), sc.next()));
+        sc -> model -> {
+          String fileName = sc.next();
+          String imgName = sc.next();
+          this.saveImg(model, fileName, imgName,
+              sc.hasNext() ? PPMFormat.fromMagic(sc.next()) : null);
+        });
     // A command that changes an image to its red-grayscale representation
     addCommand("red-component",
         sc -> model -> {
-          model.runCommand(new Component(Color::getRed), sc.next(), sc.next());
+          model.runCommand(Component.red(), sc.next(), sc.next());
           this.writeMessage("Red-component image created.");
         });
     // A command that changes an image to its green-grayscale representation
     addCommand("green-component",
         sc -> model -> {
-          model.runCommand(new Component(Color::getGreen), sc.next(), sc.next());
+          model.runCommand(Component.green(), sc.next(), sc.next());
           this.writeMessage("Green-component image created.");
         });
     // A command that changes an image to its blue-grayscale representation
     addCommand("blue-component",
         sc -> model -> {
-          model.runCommand(new Component(Color::getBlue), sc.next(), sc.next());
+          model.runCommand(Component.blue(), sc.next(), sc.next());
           this.writeMessage("Blue-component image created.");
         });
     // A command that changes an image to its value-grayscale representation
     addCommand("value-component",
         sc -> model -> {
-          model.runCommand(new Component(Color::getValue), sc.next(), sc.next());
+          model.runCommand(Component.value(), sc.next(), sc.next());
           this.writeMessage("Value-component image created.");
         });
     // A command that changes an image to its luma-grayscale representation
     addCommand("luma-component",
         sc -> model -> {
-          model.runCommand(new Component(Color::getLuma), sc.next(), sc.next());
+          model.runCommand(Component.luma(), sc.next(), sc.next());
           this.writeMessage("Luma-component image created.");
         });
     // A command that changes an image to its intensity-grayscale representation
     addCommand("intensity-component",
         sc -> model -> {
-          model.runCommand(new Component(Color::getIntensity), sc.next(), sc.next());
+          model.runCommand(Component.intensity(), sc.next(), sc.next());
           this.writeMessage("Intensity-component image created.");
         });
     // A command that changes an image to be horizontally flipped
@@ -142,7 +219,7 @@ public class ImageProcessingControllerImpl implements ImageProcessingController
           this.writeMessage("Vertically flipped image created.");
         });
     // A command that changes an image to be brightened or darkened
-    addCommand("brighten",
+    addCommand("brighten", 1,
         sc -> model -> {
           model.runCommand(new Brighten(getInt(sc)), sc.next(), sc.next());
           this.writeMessage("Brightness changed image created.");
@@ -150,7 +227,14 @@ public class ImageProcessingControllerImpl implements ImageProcessingController
   }
 
   protected void addCommand(String name, Function<Scanner, ImageProcessingCommand> command) {
+    this.addCommand(name, 0, command);
+  }
+
+  // adds a command whose arguments start with the given number of numbers (before image names)
+  protected void addCommand(String name, int numbers,
+                            Function<Scanner, ImageProcessingCommand> command) {
     knownCommands.put(name, command);
+    numberArguments.put(name, numbers);
   }
 
   protected Function<Scanner, ImageProcessingCommand> getCommand(String name) {
@@ -159,6 +243,10 @@ public class ImageProcessingControllerImpl implements ImageProcessingController
 
   @Override
   public void control() throws IllegalStateException {
+    if (this.scriptThreads > 0 || this.freeImages) {
+      this.controlScript();
+      return;
+    }
     Scanner sc = new Scanner(input);
     boolean quit = false;
 
@@ -177,106 +265,262 @@ public class ImageProcessingControllerImpl implements ImageProcessingController
       }
       if (userInstruction.equals("quit") || userInstruction.equals("q")) {
         quit = true;
-      } else if (userInstruction.equals("menu")) {
-        this.printMenu();
-      } else if (userInstruction.startsWith("#")) {
-        // comment pass-through
       } else {
-        processCommand(userInstruction, line, model);
+        this.runLine(userInstruction, line);
       }
     }
 
-    //after the user has quit, print farewell message
+    //after the user has quit, write the stats and print farewell message
+    this.writeStats();
     this.farewellMessage();
   }
 
-  /**
-   * Parse an image file in the PPM format and create a 2D array of
-   * Colors that gets added to the model - with a specified String name.
-   *
-   * @param file the readable that we parse
-   */
-  protected void parsePPM(Readable file, String name, ImageProcessingModel model) {
-    Scanner sc = new Scanner(file);
-    StringBuilder lines = new StringBuilder();
-    while (sc.hasNextLine()) {
-      String s = sc.nextLine();
-      if (!s.startsWith("#")) {
-        lines.append(s).append(System.lineSeparator());
+  // runs a line of input (other than quitting), given its instruction and the rest of the line
+  private void runLine(String userInstruction, Scanner line) throws IllegalStateException {
+    if (userInstruction.equals("menu")) {
+      this.printMenu();
+    } else if (userInstruction.equals("stats")) {
+      this.printStats();
+    } else if (userInstruction.startsWith("#")) {
+      // comment pass-through
+    } else {
+      processCommand(userInstruction, line, model);
+    }
+  }
+
+  // reads the whole script, then runs its lines on the script threads, writing the messages of
+  // each line in the order of the script as if the lines had run one at a time
+  private void controlScript() throws IllegalStateException {
+    Scanner sc = new Scanner(input);
+    this.welcomeMessage();
+
+    List<String> lines = new ArrayList<>();
+    boolean quit = false;
+    while (!quit && sc.hasNextLine()) {
+      String line = sc.nextLine();
+      Scanner tokens = new Scanner(line);
+      String userInstruction = tokens.hasNext() ? tokens.next() : "";
+      quit = userInstruction.equals("quit") || userInstruction.equals("q");
+      if (!quit) {
+        lines.add(line);
       }
     }
-    sc = new Scanner(lines.toString());
 
-    if (!sc.next().equals("P3")) {
-      throw new IllegalArgumentException("Invalid file format.");
+    List<List<String>> reads = new ArrayList<>();
+    List<List<String>> writes = new ArrayList<>();
+    for (String line : lines) {
+      Scanner tokens = new Scanner(line);
+      String userInstruction = tokens.hasNext() ? tokens.next() : "";
+      List<String> args = new ArrayList<>();
+      while (tokens.hasNext()) {
+        args.add(tokens.next());
+      }
+      reads.add(new ArrayList<>());
+      writes.add(new ArrayList<>());
+      this.findResources(userInstruction, args, reads.get(reads.size() - 1),
+          writes.get(writes.size() - 1));
+    }
+    Map<Integer, List<String>> lastUses = this.freeImages ? lastUses(reads, writes)
+        : new HashMap<>();
+    if (this.freeImages) {
+      CommandStats.resetPeakHeap();
     }
 
-    int width = sc.nextInt();
-    int height = sc.nextInt();
-    int maxValue = sc.nextInt();
+    ScriptScheduler scheduler = new ScriptScheduler(Math.max(this.scriptThreads, 1));
+    try {
+      List<CompletableFuture<List<String>>> steps = new ArrayList<>();
+      List<CompletableFuture<List<String>>> removals = new ArrayList<>();
+      for (int i = 0; i < lines.size(); i += 1) {
+        steps.add(this.scheduleLine(scheduler, lines.get(i), reads.get(i), writes.get(i)));
+        // forget each image whose value is not used again, once every line using it is done
+        for (String name : lastUses.getOrDefault(i, new ArrayList<>())) {
+          removals.add(scheduler.add(new ArrayList<>(), Collections.singletonList(IMAGE + name),
+              false, () -> {
+                model.removeImage(name);
+                return null;
+              }));
+        }
+      }
+      for (CompletableFuture<List<String>> step : steps) {
+        writeMessage("Type instruction:");
+        for (String message : join(step)) {
+          writeMessage(message);
+        }
+      }
+      for (CompletableFuture<List<String>> removal : removals) {
+        join(removal);
+      }
+    } finally {
+      scheduler.shutdown();
+    }
+    writeMessage("Type instruction:");
+    if (!quit) {
+      throw new IllegalStateException("Unable to successfully receive input.");
+    }
 
-    Color[][] pane = new Color[height][width];
+    //after the script has quit, write the stats and print farewell message
+    this.writeStats();
+    if (this.freeImages) {
+      long peak = CommandStats.peakHeapBytes();
+      writeMessage(peak < 0 ? "Peak heap use is unknown."
+          : String.format(Locale.ROOT, "Peak heap use: %.1f MB", peak / 1e6));
+    }
+    this.farewellMessage();
+  }
 
-    for (int row = 0; row < height; row++) {
-      for (int col = 0; col < width; col++) {
-        pane[row][col] = new RGBColor(sc.nextInt(), sc.nextInt(), sc.nextInt());
+  // works out, for each line of a script, the images whose value is used for the last time by it
+  // (nothing reads the image again before it is next written, or the script ends)
+  private static Map<Integer, List<String>> lastUses(List<List<String>> reads,
+                                                     List<List<String>> writes) {
+    Map<String, Integer> lastUse = new HashMap<>();
+    Map<Integer, List<String>> lastUses = new HashMap<>();
+    for (int i = 0; i < reads.size(); i += 1) {
+      for (String resource : reads.get(i)) {
+        if (resource.startsWith(IMAGE)) {
+          lastUse.put(resource.substring(IMAGE.length()), i);
+        }
       }
+      for (String resource : writes.get(i)) {
+        if (resource.startsWith(IMAGE)) {
+          String name = resource.substring(IMAGE.length());
+          // a line that reads an image it writes replaces the old value itself
+          Integer last = lastUse.put(name, i);
+          if (last != null && last < i) {
+            lastUses.computeIfAbsent(last, line -> new ArrayList<>()).add(name);
+          }
+        }
+      }
+    }
+    for (Map.Entry<String, Integer> entry : lastUse.entrySet()) {
+      lastUses.computeIfAbsent(entry.getValue(), line -> new ArrayList<>()).add(entry.getKey());
     }
-    model.createImage(pane, name, maxValue);
+    return lastUses;
   }
 
-  // Converts an ImageState to PPM format so that it can be written to a file
-  protected String toPPM(ImageState img) {
-    StringBuilder lines = new StringBuilder();
-    lines.append("P3").append(System.lineSeparator());
-    lines.append(img.getWidth()).append(" ");
-    lines.append(img.getHeight()).append(System.lineSeparator());
-    lines.append(img.getMaxValue()).append(System.lineSeparator());
+  // adds a line of a script to the scheduler, collecting its messages rather than writing them
+  private CompletableFuture<List<String>> scheduleLine(ScriptScheduler scheduler, String line,
+                                                      List<String> reads, List<String> writes) {
+    Scanner tokens = new Scanner(line);
+    String userInstruction = tokens.hasNext() ? tokens.next() : "";
+    return scheduler.add(reads, writes, userInstruction.equals("stats"), () -> {
+      List<String> messages = new ArrayList<>();
+      this.lineMessages.set(messages);
+      try {
+        Scanner rest = new Scanner(line);
+        if (rest.hasNext()) {
+          rest.next();
+        }
+        this.runLine(userInstruction, rest);
+      } finally {
+        this.lineMessages.remove();
+      }
+      return messages;
+    });
+  }
 
-    for (int row = 0; row < img.getHeight(); row += 1) {
-      for (int col = 0; col < img.getWidth(); col += 1) {
-        Color c = img.getColorAt(row, col);
-        lines.append(c.getRed()).append(System.lineSeparator());
-        lines.append(c.getGreen()).append(System.lineSeparator());
-        lines.append(c.getBlue()).append(System.lineSeparator());
+  /**
+   * Works out the images and files that a line of a script reads and writes, so that lines that do
+   * not share any can run at the same time, and images can be forgotten once they are not used
+   * again. Loading reads a file and writes an image, and saving reads an image and writes a file.
+   * Every other command reads each image named in its arguments (after its leading numbers) and,
+   * if it names more than one, writes the last. Images are given as "image " followed by the name,
+   * and files as "file " followed by the path.
+   *
+   * @param instruction the instruction of the line
+   * @param args        the rest of the arguments of the line
+   * @param reads       the list to add the images and files read to
+   * @param writes      the list to add the images and files written to
+   */
+  protected void findResources(String instruction, List<String> args, List<String> reads,
+                               List<String> writes) {
+    if (instruction.equals("load") && args.size() >= 2) {
+      reads.add(fileResource(args.get(0)));
+      writes.add(IMAGE + args.get(1));
+    } else if (instruction.equals("save") && args.size() >= 2) {
+      reads.add(IMAGE + args.get(1));
+      writes.add(fileResource(args.get(0)));
+    } else if (knownCommands.containsKey(instruction)) {
+      List<String> images = args.subList(
+          Math.min(numberArguments.getOrDefault(instruction, 0), args.size()), args.size());
+      for (int i = 0; i < images.size(); i += 1) {
+        boolean written = images.size() > 1 && i == images.size() - 1;
+        (written ? writes : reads).add(IMAGE + images.get(i));
       }
     }
-    return lines.toString();
   }
 
-  protected void loadImg(ImageProcessingModel model, String fileName, String imgName) {
-    File source = new File(fileName);
-    try (FileReader file = new FileReader(source)) {
-      BufferedImage img = ImageIO.read(source);
-      if (img == null) {
-        this.parsePPM(file, imgName, model);
-      } else {
-        Color[][] pane = new Color[img.getHeight()][img.getWidth()];
-        for (int row = 0; row < pane.length; row += 1) {
-          for (int col = 0; col < pane[row].length; col += 1) {
-            int color = img.getRGB(col, row);
-            int alpha = (color >> 24) & 0xff;
-            int r = (color >> 16) & 0xff;
-            int g = (color >> 8) & 0xff;
-            int b = color & 0xff;
-            pane[row][col] = new RGBColor(r, g, b, alpha);
-          }
-        }
-        model.createImage(pane, imgName, 255);
+  // the resource of a file, the same for every path to the file
+  protected static String fileResource(String fileName) {
+    try {
+      return "file " + Paths.get(fileName).toAbsolutePath().normalize();
+    } catch (InvalidPathException e) {
+      return "file " + fileName;
+    }
+  }
+
+  // waits for a step of a script, rethrowing anything it threw
+  private static <T> T join(CompletableFuture<T> step) {
+    try {
+      return step.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
       }
+      throw e;
+    }
+  }
 
+  protected void loadImg(ImageProcessingModel model, String fileName, String imgName) {
+    try {
+      ImageTransform image = this.loader.load(Paths.get(fileName));
+      model.addImage(image, imgName);
+      this.filePixels.add((long) image.getHeight() * image.getWidth());
       this.writeMessage("File is loaded.");
-    } catch (IOException | NoSuchElementException e) {
+    } catch (IOException | InvalidPathException e) {
       throw new IllegalArgumentException("Failed to load file.");
     }
   }
 
   protected void saveImg(ImageProcessingModel model, String fileName, String imgName) {
+    this.saveImg(model, fileName, imgName, null);
+  }
+
+  /**
+   * Saves the image with the given name to the file. PPM files (.ppm, or .pgm for greyscale) may
+   * be saved in any of the PPM formats, and otherwise the format is chosen by the extension of the
+   * file (P3 for .ppm, P5 for .pgm, and the uncompressed format of {@link IPRFile} for .ipr).
+   *
+   * @param model    the model that has the image
+   * @param fileName the path of the file
+   * @param imgName  the name of the image
+   * @param format   the PPM format to save in (or null to choose by the extension)
+   * @throws IllegalArgumentException if the image does not exist, the format cannot be used for
+   *                                  the file, or the file cannot be saved
+   */
+  protected void saveImg(ImageProcessingModel model, String fileName, String imgName,
+                         PPMFormat format) throws IllegalArgumentException {
     ImageState img = model.getImage(imgName);
-    if (fileName.endsWith(".ppm") || fileName.endsWith(".PPM")) {
-      try (FileWriter file = new FileWriter(fileName)) {
-        file.write(toPPM(img));
-      } catch (IOException e) {
+    boolean ppm = fileName.endsWith(".ppm") || fileName.endsWith(".PPM");
+    boolean pgm = fileName.endsWith(".pgm") || fileName.endsWith(".PGM");
+    if (format == null && pgm) {
+      format = PPMFormat.P5;
+    }
+    if (format != null && !ppm && !pgm) {
+      throw new IllegalArgumentException("Only PPM files can be saved in a PPM format.");
+    }
+    if (ppm || pgm) {
+      try {
+        PPMWriter.write(img, Paths.get(fileName), format == null ? PPMFormat.P3 : format);
+      } catch (IOException | InvalidPathException e) {
+        throw new IllegalArgumentException("Failed to save file.");
+      }
+    } else if (fileName.endsWith(".ipr") || fileName.endsWith(".IPR")) {
+      try {
+        IPRFile.write(img, Paths.get(fileName));
+      } catch (IOException | InvalidPathException e) {
         throw new IllegalArgumentException("Failed to save file.");
       }
     } else {
@@ -284,6 +528,7 @@ public class ImageProcessingControllerImpl implements ImageProcessingController
         throw new IllegalArgumentException("Failed to save file.");
       }
     }
+    this.filePixels.add((long) img.getHeight() * img.getWidth());
     this.writeMessage("File is saved.");
   }
 
@@ -324,11 +569,97 @@ public class ImageProcessingControllerImpl implements ImageProcessingController
       throw new IllegalArgumentException("Unknown command, please try again.");
     }
     ImageProcessingCommand c = cmd.apply(sc);
+    long pixels = ParallelRows.getPixelsProcessed() + this.filePixels.sum();
+    long bytes = CommandStats.allocatedBytes();
+    long start = System.nanoTime();
     c.run(model);
+    long nanos = System.nanoTime() - start;
+    long bytesAfter = CommandStats.allocatedBytes();
+    stats.record(instruction, nanos,
+        ParallelRows.getPixelsProcessed() + this.filePixels.sum() - pixels,
+        bytes < 0 || bytesAfter < 0 ? -1 : Math.max(bytesAfter - bytes, 0));
+  }
+
+  /**
+   * Reads the rest of a line as commands that each run a macro on an image, and works out their
+   * macros in order, without running them. Each command is given as its instruction followed by
+   * its leading numbers, with no image names.
+   *
+   * @param sc the rest of the line
+   * @return the macros
+   * @throws IllegalArgumentException if any command is unknown or does not run a macro
+   */
+  protected List<Macro> readMacros(Scanner sc) throws IllegalArgumentException {
+    List<Macro> macros = new ArrayList<>();
+    while (sc.hasNext()) {
+      String instruction = sc.next();
+      List<String> numbers = new ArrayList<>();
+      for (int i = 0; i < numberArguments.getOrDefault(instruction, 0); i += 1) {
+        numbers.add(String.valueOf(getInt(sc)));
+      }
+      macros.add(this.getMacro(instruction, numbers));
+    }
+    return macros;
+  }
+
+  // works out the macro that a command runs, without running it: the command is given its leading
+  // numbers and the names of a source and a new image, and is run on a model that only keeps the
+  // macro it is asked to run (dropping any messages the command writes)
+  private Macro getMacro(String instruction, List<String> numbers) throws IllegalArgumentException {
+    Function<Scanner, ImageProcessingCommand> cmd = knownCommands.getOrDefault(instruction, null);
+    if (cmd == null || instruction.equals("load") || instruction.equals("save")) {
+      throw new IllegalArgumentException("Unknown command, please try again.");
+    }
+    MacroRecorder recorder = new MacroRecorder();
+    List<String> messages = this.lineMessages.get();
+    this.lineMessages.set(new ArrayList<>());
+    try {
+      cmd.apply(new Scanner(String.join(" ", numbers) + " source result")).run(recorder);
+    } catch (NoSuchElementException e) {
+      throw new IllegalArgumentException("Not enough arguments provided.");
+    } finally {
+      if (messages == null) {
+        this.lineMessages.remove();
+      } else {
+        this.lineMessages.set(messages);
+      }
+    }
+    if (recorder.macro == null) {
+      throw new IllegalArgumentException("Command does not run a macro.");
+    }
+    return recorder.macro;
+  }
+
+  // A model that keeps the one macro it is asked to run, and has no images
+  private static class MacroRecorder implements ImageProcessingModel {
+    private Macro macro;
+
+    @Override
+    public void createImage(Color[][] colors, String name, int maxValue) {
+      throw new IllegalArgumentException("Command does not run a macro.");
+    }
+
+    @Override
+    public void runCommand(Macro command, String target, String newName) {
+      if (command == null || this.macro != null) {
+        throw new IllegalArgumentException("Command does not run a macro.");
+      }
+      this.macro = command;
+    }
+
+    @Override
+    public ImageState getImage(String name) {
+      throw new IllegalArgumentException("Command does not run a macro.");
+    }
   }
 
   // Sends a message to the view
   protected void writeMessage(String message) throws IllegalStateException {
+    List<String> messages = this.lineMessages.get();
+    if (messages != null) {
+      messages.add(message);
+      return;
+    }
     try {
       output.renderMessage(message + System.lineSeparator());
     } catch (IOException e) {
@@ -357,17 +688,45 @@ public class ImageProcessingControllerImpl implements ImageProcessingController
       writeMessage(" ➤ " + msg);
     }
     writeMessage(" ➤ menu (Print supported instruction list)");
+    writeMessage(" ➤ stats (Print how long each command has taken so far)");
     writeMessage(" ➤ q or quit (quit the program)");
   }
 
+  private void printStats() throws IllegalStateException {
+    writeMessage("Command stats: ");
+    for (String line : this.stats.summary()) {
+      writeMessage(" ➤ " + line);
+    }
+    List<String> storage = this.model.storageSummary();
+    if (!storage.isEmpty()) {
+      writeMessage("Image storage: ");
+      for (String line : storage) {
+        writeMessage(" ➤ " + line);
+      }
+    }
+  }
+
+  // writes the stats to the stats file, if there is one
+  private void writeStats() throws IllegalStateException {
+    if (this.statsFile == null) {
+      return;
+    }
+    try (FileWriter file = new FileWriter(this.statsFile)) {
+      file.write(this.stats.toJson());
+    } catch (IOException e) {
+      writeMessage("Failed to save stats.");
+    }
+  }
+
   protected List<String> loadMenu() {
     List<String> list = new ArrayList<>();
     list.add("load image-path image-name "
         + "(Loads an image from the specified path and refers to it henceforth in the program "
         + "by the given name)");
-    list.add("save image-path image-name "
+    list.add("save image-path image-name [P3|P5|P6] "
         + "(Saves the image with the given name to the specified path which includes "
-        + "the name of the file)");
+        + "the name of the file - a PPM file may be given the format to save in, which is "
+        + "otherwise P3 for .ppm files and P5 for .pgm files)");
     list.add("(component name)-component image-name dest-image-name "
         + "(Create a greyscale image with the (component name) component of the image with "
         + "the given name."
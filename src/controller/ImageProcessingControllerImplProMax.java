@@ -1,13 +1,17 @@
 package controller;
 
 import java.awt.image.BufferedImage;
+import java.io.IOException;
 import java.io.StringReader;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
 import java.util.List;
 import java.util.Scanner;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
-import model.Color;
+import controller.io.PPMFormat;
+import controller.io.StripPipeline;
 import model.ImageProcessingModel;
 import model.ImageState;
 import model.macros.Blur;
@@ -74,8 +78,11 @@ public class ImageProcessingControllerImplProMax extends ImageProcessingControll
           ImageState image = model.getImage(sc.next());
           this.writeMessage("Width: " + image.getWidth() + " Height: " + image.getHeight());
         });
+    // A command that runs commands on a file a strip at a time, saving the result to another file
+    addCommand("stream",
+        sc -> model -> this.streamFile(sc.next(), sc.next(), sc));
     // A command that downscales an image
-    addCommand("downscale",
+    addCommand("downscale", 2,
         sc -> model -> {
           model.runCommand(new Downscale(getInt(sc),
                   getInt(sc)),
@@ -86,7 +93,7 @@ public class ImageProcessingControllerImplProMax extends ImageProcessingControll
 
     // A command that partially brightens an image, given the mask
     Function<Scanner, ImageProcessingCommand> brighten = this.getCommand("brighten");
-    addCommand("brighten",
+    addCommand("brighten", 1,
         sc -> model -> {
           int inc = getInt(sc);
           String sourceImg = sc.next();
@@ -95,27 +102,27 @@ public class ImageProcessingControllerImplProMax extends ImageProcessingControll
             brighten.apply(new Scanner(inc + " " + sourceImg + " " + maskImg)).run(model);
             return;
           }
-          model.runCommand(new Mask(new Brighten(inc), model.getImage(maskImg)), sourceImg,
+          model.runCommand(new Mask(new Brighten(inc), model.getMaskRegion(maskImg)), sourceImg,
               sc.next());
           this.writeMessage("Partially brightness changed image created.");
         });
     // partially find the red component of an image, given the mask
-    makeMasked("red-component", () -> new Component(Color::getRed),
+    makeMasked("red-component", Component::red,
         "Partially red-component image created.");
     // partially find the green component of an image, given the mask
-    makeMasked("green-component", () -> new Component(Color::getGreen),
+    makeMasked("green-component", Component::green,
         "Partially green-component image created.");
     // partially find the blue component of an image, given the mask
-    makeMasked("blue-component", () -> new Component(Color::getBlue),
+    makeMasked("blue-component", Component::blue,
         "Partially blue-component image created.");
     // partially find the value component of an image, given the mask
-    makeMasked("value-component", () -> new Component(Color::getValue),
+    makeMasked("value-component", Component::value,
         "Partially value-component image created.");
     // partially find the luma component of an image, given the mask
-    makeMasked("luma-component", () -> new Component(Color::getLuma),
+    makeMasked("luma-component", Component::luma,
         "Partially luma-component image created.");
     // partially find the intensity component of an image, given the mask
-    makeMasked("intensity-component", () -> new Component(Color::getIntensity),
+    makeMasked("intensity-component", Component::intensity,
         "Partially intensity-component image created.");
     // partially horizontally flip an image, given the mask
     makeMasked("horizontal-flip", HorizontalFlip::new,
@@ -137,6 +144,39 @@ public class ImageProcessingControllerImplProMax extends ImageProcessingControll
         "Partially sepia image created.");
   }
 
+  // runs the commands on the rest of the line on the image in the input file, a strip of rows at a
+  // time, and saves the result to the output file (in the PPM format given first, if any, or
+  // chosen by the extension of the file like saving)
+  private void streamFile(String input, String output, Scanner sc) throws IllegalArgumentException {
+    boolean pgm = output.endsWith(".pgm") || output.endsWith(".PGM");
+    if (!pgm && !output.endsWith(".ppm") && !output.endsWith(".PPM")) {
+      throw new IllegalArgumentException("Only PPM files can be streamed.");
+    }
+    PPMFormat format = sc.hasNext("[Pp][356]") ? PPMFormat.fromMagic(sc.next())
+        : pgm ? PPMFormat.P5 : PPMFormat.P3;
+    StripPipeline pipeline = new StripPipeline(this.readMacros(sc));
+    try {
+      pipeline.run(Paths.get(input), Paths.get(output), format);
+    } catch (IOException | InvalidPathException e) {
+      throw new IllegalArgumentException("Failed to stream file.");
+    }
+    this.writeMessage("File is streamed.");
+  }
+
+  // streaming reads its input file and writes its output file, and uses no images
+  @Override
+  protected void findResources(String instruction, List<String> args, List<String> reads,
+                               List<String> writes) {
+    if (!instruction.equals("stream")) {
+      super.findResources(instruction, args, reads, writes);
+      return;
+    }
+    if (args.size() >= 2) {
+      reads.add(fileResource(args.get(0)));
+      writes.add(fileResource(args.get(1)));
+    }
+  }
+
   // helper for masked commands (with no arguments other than a new name)
   private void makeMasked(String name, Supplier<Macro> makeMacro, String successMessage) {
     Function<Scanner, ImageProcessingCommand> oldCommand = this.getCommand(name);
@@ -148,7 +188,7 @@ public class ImageProcessingControllerImplProMax extends ImageProcessingControll
             oldCommand.apply(new Scanner(sourceImg + " " + maskImg)).run(model);
             return;
           }
-          model.runCommand(new Mask(makeMacro.get(), model.getImage(maskImg)),
+          model.runCommand(new Mask(makeMacro.get(), model.getMaskRegion(maskImg)),
               sourceImg, sc.next());
           this.writeMessage(successMessage);
         });
@@ -186,6 +226,9 @@ public class ImageProcessingControllerImplProMax extends ImageProcessingControll
         + "(Find the partially sepia version of an image to create a new image, "
         + "referred to henceforth by the given destination name)");
     list.add("size image-name " + "(get the dimensions of an image)");
+    list.add("stream image-path dest-image-path [P3|P5|P6] command... "
+        + "(Run commands - each given by its name and any numbers, like blur or brighten 10 - on "
+        + "a PPM file a strip at a time, and save the result to the destination PPM file)");
     return list;
   }
 
@@ -0,0 +1,117 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Runs the steps of a script on a pool of threads, as soon as the steps they depend on are done.
+ * Each step names the resources (images or files) it reads and writes, and a step depends on the
+ * last step before it to write anything it reads or writes, and on every step since then that
+ * read anything it writes. So steps on unrelated resources run at the same time, and any two steps
+ * on the same resource run in script order. A barrier step depends on every step before it, and
+ * every step after it depends on it.
+ */
+final class ScriptScheduler {
+  private final ThreadPoolExecutor pool;
+  // The last step to write each resource
+  private final Map<String, CompletableFuture<?>> writers;
+  // The steps that read each resource since it was last written
+  private final Map<String, List<CompletableFuture<?>>> readers;
+  // Every step since the last barrier (and the barrier itself)
+  private final List<CompletableFuture<?>> steps;
+  // The last barrier step (null if there has not been one)
+  private CompletableFuture<?> lastBarrier;
+
+  /**
+   * Constructs a scheduler with no steps.
+   *
+   * @param threads the number of threads to run steps on
+   * @throws IllegalArgumentException if the number of threads is not positive
+   */
+  ScriptScheduler(int threads) throws IllegalArgumentException {
+    if (threads < 1) {
+      throw new IllegalArgumentException("Threads must be positive.");
+    }
+    this.pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<>(), work -> {
+          Thread thread = new Thread(work, "script-step");
+          thread.setDaemon(true);
+          return thread;
+        });
+    this.writers = new HashMap<>();
+    this.readers = new HashMap<>();
+    this.steps = new ArrayList<>();
+    this.lastBarrier = null;
+  }
+
+  /**
+   * Adds a step, which runs once the steps before it that it depends on are done. If any of those
+   * fail, this step is not run, and fails with the same exception.
+   *
+   * @param reads   the resources the step reads
+   * @param writes  the resources the step writes
+   * @param barrier whether the step depends on (and is depended on by) every other step
+   * @param work    the work of the step
+   * @param <T>     the type of the result of the step
+   * @return the result of the step, once it is done
+   */
+  <T> CompletableFuture<T> add(Collection<String> reads, Collection<String> writes,
+                               boolean barrier, Supplier<T> work) {
+    List<CompletableFuture<?>> before = new ArrayList<>();
+    if (barrier) {
+      before.addAll(steps);
+    } else {
+      before.add(lastBarrier);
+      for (String resource : reads) {
+        before.add(writers.get(resource));
+      }
+      for (String resource : writes) {
+        before.add(writers.get(resource));
+        before.addAll(readers.getOrDefault(resource, new ArrayList<>()));
+      }
+      before.removeIf(step -> step == null);
+    }
+
+    CompletableFuture<T> step = CompletableFuture.allOf(before.toArray(new CompletableFuture<?>[0]))
+        .thenApplyAsync(done -> work.get(), pool);
+    if (barrier) {
+      lastBarrier = step;
+      steps.clear();
+      writers.clear();
+      readers.clear();
+    } else {
+      for (String resource : reads) {
+        readers.computeIfAbsent(resource, r -> new ArrayList<>()).add(step);
+      }
+      for (String resource : writes) {
+        writers.put(resource, step);
+        readers.remove(resource);
+      }
+    }
+    steps.add(step);
+    return step;
+  }
+
+  /**
+   * Stops the threads, waiting for the steps that have started to be done (without interrupting
+   * them). Steps that have not started are never run. If the calling thread is interrupted while
+   * waiting, it stops waiting and keeps its interrupt status.
+   */
+  void shutdown() {
+    pool.shutdown();
+    pool.getQueue().clear();
+    try {
+      pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
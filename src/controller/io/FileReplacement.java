@@ -0,0 +1,83 @@
+package controller.io;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Writes files through a temporary file next to them, which only replaces the file once it is
+ * whole, so a write that fails leaves the file as it was. The temporary file is created with the
+ * default permissions for new files, or with the permissions of the file it replaces if that
+ * exists (where the file system has POSIX permissions), so replacing a file never changes who may
+ * read it.
+ */
+final class FileReplacement {
+  // The number of names tried for the temporary file before giving up
+  private static final int ATTEMPTS = 100;
+
+  private FileReplacement() {
+    // static helpers only
+  }
+
+  /**
+   * Writes the contents of a file.
+   */
+  interface Contents {
+    /**
+     * Writes the contents to the file, which exists and is empty.
+     *
+     * @param path the path of the file
+     * @throws IOException if the file cannot be written
+     */
+    void writeTo(Path path) throws IOException;
+  }
+
+  /**
+   * Writes the file, replacing it if it exists.
+   *
+   * @param path     the path of the file
+   * @param contents writes the contents of the file
+   * @throws IOException if the file cannot be written
+   */
+  static void write(Path path, Contents contents) throws IOException {
+    Path absolute = path.toAbsolutePath();
+    Path temp = createTemp(absolute);
+    try {
+      if (Files.exists(absolute)
+          && Files.getFileAttributeView(temp, PosixFileAttributeView.class) != null) {
+        Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(absolute));
+      }
+      contents.writeTo(temp);
+      try {
+        Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  // creates an empty file next to the given one, with the default permissions (unlike
+  // Files.createTempFile, which only lets the owner read it)
+  private static Path createTemp(Path path) throws IOException {
+    String prefix = "." + path.getFileName() + ".";
+    for (int attempt = 1; ; attempt += 1) {
+      Path temp = path.resolveSibling(
+          prefix + Long.toUnsignedString(ThreadLocalRandom.current().nextLong(), 36) + ".tmp");
+      try {
+        return Files.createFile(temp);
+      } catch (FileAlreadyExistsException e) {
+        if (attempt == ATTEMPTS) {
+          throw e;
+        }
+      }
+    }
+  }
+}
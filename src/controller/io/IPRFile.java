@@ -0,0 +1,167 @@
+package controller.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import model.ImageState;
+import model.MappedImage;
+import model.Pixels;
+
+/**
+ * Reads and writes IPR files, the uncompressed image format of this program (.ipr). A file is a
+ * header of four big-endian ints (the magic number "IPR1", then the height, width and max value of
+ * the image), followed by the pixels as big-endian ints, laid out the way images store them:
+ * packed into one int each for max values up to 255, and as red, green and blue ints otherwise, a
+ * row at a time from the top.
+ *
+ * <p>Since the pixels need no decoding, reading a file only maps it into memory (see
+ * {@link MappedImage}), which takes the same time however large the image, and its pixels are only
+ * read from the disk as they are used. Files are written to a temporary file next to them first,
+ * which then replaces the file, so that images still mapped from the old file keep their pixels.
+ * Files are at most 2 GB, as that is the most that can be mapped at once.</p>
+ */
+public final class IPRFile {
+  // The bytes that every IPR file starts with
+  private static final byte[] MAGIC = {'I', 'P', 'R', '1'};
+  // The number of bytes before the pixels
+  private static final int HEADER_BYTES = 16;
+  // The number of bytes written to the file at a time
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private IPRFile() {
+    // static helpers only
+  }
+
+  /**
+   * Maps the image in the IPR file into memory.
+   *
+   * @param path the path of the file
+   * @return the image
+   * @throws IOException              if the file cannot be read
+   * @throws IllegalArgumentException if the path is null, or the file is not a valid IPR file
+   */
+  public static MappedImage read(Path path) throws IOException, IllegalArgumentException {
+    if (path == null) {
+      throw new IllegalArgumentException("Path cannot be null.");
+    }
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      return read(channel);
+    }
+  }
+
+  /**
+   * Maps the image in the IPR file open on the channel into memory. The image stays valid once the
+   * channel is closed.
+   *
+   * @param channel the channel of the file
+   * @return the image
+   * @throws IOException              if the file cannot be read
+   * @throws IllegalArgumentException if the file is not a valid IPR file
+   */
+  static MappedImage read(FileChannel channel) throws IOException, IllegalArgumentException {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+    while (header.hasRemaining()) {
+      if (channel.read(header, header.position()) < 0) {
+        throw new IllegalArgumentException("Invalid file format.");
+      }
+    }
+    header.flip();
+    for (byte b : MAGIC) {
+      if (header.get() != b) {
+        throw new IllegalArgumentException("Invalid file format.");
+      }
+    }
+    int height = header.getInt();
+    int width = header.getInt();
+    int maxValue = header.getInt();
+    if (height < 0 || width < 0 || maxValue < 1) {
+      throw new IllegalArgumentException("Invalid file format.");
+    }
+    long bytes = (long) height * width * (Pixels.isPackable(maxValue) ? 1 : 3) * Integer.BYTES;
+    if (channel.size() != HEADER_BYTES + bytes) {
+      throw new IllegalArgumentException("Invalid file format.");
+    }
+    if (bytes > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Image is too large to map.");
+    }
+    IntBuffer pixels = bytes == 0 ? IntBuffer.allocate(0)
+        : channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, bytes).asIntBuffer();
+    return new MappedImage(pixels, height, width, maxValue);
+  }
+
+  /**
+   * Writes the image to the file as an IPR file, replacing the file if it exists. The file keeps
+   * the permissions it had, and a new file gets the default permissions.
+   *
+   * @param img  the image to write
+   * @param path the path of the file
+   * @throws IOException              if the file cannot be written
+   * @throws IllegalArgumentException if any argument is null, or the image is too large for a file
+   */
+  public static void write(ImageState img, Path path) throws IOException, IllegalArgumentException {
+    if (img == null || path == null) {
+      throw new IllegalArgumentException("Cannot write a null image or path.");
+    }
+    int height = img.getHeight();
+    int width = img.getWidth();
+    int maxValue = img.getMaxValue();
+    boolean packed = Pixels.isPackable(maxValue);
+    if ((long) height * width * (packed ? 1 : 3) * Integer.BYTES > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Image is too large to map.");
+    }
+    FileReplacement.write(path, temp -> writePixels(img, temp));
+  }
+
+  // writes the header and pixels of the image to the empty file
+  private static void writePixels(ImageState img, Path path) throws IOException {
+    int height = img.getHeight();
+    int width = img.getWidth();
+    int maxValue = img.getMaxValue();
+    boolean packed = Pixels.isPackable(maxValue);
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+      ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+      buffer.put(MAGIC).putInt(height).putInt(width).putInt(maxValue);
+      int[] row = new int[width * (packed ? 1 : 3)];
+      for (int r = 0; r < height; r += 1) {
+        if (packed) {
+          img.getPixelRow(r, row);
+        } else {
+          img.getChannelRow(r, row);
+        }
+        for (int value : row) {
+          if (buffer.remaining() < Integer.BYTES) {
+            flush(buffer, channel);
+          }
+          buffer.putInt(value);
+        }
+      }
+      flush(buffer, channel);
+    }
+  }
+
+  // whether the first bytes of a file are the magic number of an IPR file
+  static boolean hasMagic(byte[] magic, int length) {
+    if (length < MAGIC.length) {
+      return false;
+    }
+    for (int i = 0; i < MAGIC.length; i += 1) {
+      if (magic[i] != MAGIC[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // writes everything in the buffer to the channel, leaving the buffer empty
+  private static void flush(ByteBuffer buffer, FileChannel channel) throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+}
@@ -0,0 +1,133 @@
+package controller.io;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.FileImageInputStream;
+import javax.imageio.stream.ImageInputStream;
+
+import model.ImageTransform;
+
+/**
+ * Loads images from files of any format it can read: IPR files (mapped into memory through
+ * {@link IPRFile}), the PPM formats (through {@link PPMReader}) and every format that ImageIO has
+ * a reader for. Each file is opened once, and the first bytes of
+ * it are used to pick the decoder, so that PPM files never go through the ImageIO plugins and the
+ * common formats (PNG, JPEG, BMP and GIF) go straight to their reader. The readers are kept and
+ * reused for the next file of the same format. Files may be loaded from several threads at once,
+ * in which case a thread that finds the reader of its format in use gets a new one.
+ */
+public final class ImageLoader {
+  // The number of bytes at the start of a file that its format is picked by
+  private static final int MAGIC_LENGTH = 4;
+
+  // The idle reader of each format that has been loaded, by the name of the format
+  // INVARIANT: Is only used while holding its own lock
+  private final Map<String, ImageReader> readers;
+
+  /**
+   * Constructs a loader that has no readers yet.
+   */
+  public ImageLoader() {
+    this.readers = new HashMap<>();
+  }
+
+  /**
+   * Loads the image in the file.
+   *
+   * @param path the path of the file
+   * @return the image
+   * @throws IOException              if the file cannot be read
+   * @throws IllegalArgumentException if the path is null, or the file is not in a format that can
+   *                                  be read
+   */
+  public ImageTransform load(Path path) throws IOException, IllegalArgumentException {
+    if (path == null) {
+      throw new IllegalArgumentException("Path cannot be null.");
+    }
+    try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "r")) {
+      byte[] magic = new byte[MAGIC_LENGTH];
+      int length = 0;
+      int n;
+      while (length < magic.length && (n = file.read(magic, length, magic.length - length)) > 0) {
+        length += n;
+      }
+      file.seek(0);
+
+      if (IPRFile.hasMagic(magic, length)) {
+        return IPRFile.read(file.getChannel());
+      }
+      if (isPPM(magic, length)) {
+        return PPMReader.read(file.getChannel());
+      }
+      ImageInputStream stream = new FileImageInputStream(file);
+      String format = sniff(magic, length);
+      ImageReader reader = this.reader(format, stream);
+      if (reader == null) {
+        throw new IllegalArgumentException("Invalid file format.");
+      }
+      try {
+        reader.setInput(stream, true, true);
+        return Rasters.fromBufferedImage(reader.read(0, reader.getDefaultReadParam()));
+      } finally {
+        reader.setInput(null);
+        synchronized (readers) {
+          readers.putIfAbsent(format == null ? reader.getFormatName() : format, reader);
+        }
+      }
+    }
+  }
+
+  // takes the reader for the format (or the first reader that can decode the stream, if the format
+  // is not known), reusing the idle reader that the last file of the format was loaded with
+  private ImageReader reader(String format, ImageInputStream stream) throws IOException {
+    if (format != null) {
+      synchronized (readers) {
+        ImageReader idle = readers.remove(format);
+        if (idle != null) {
+          return idle;
+        }
+      }
+    }
+    Iterator<ImageReader> found = format == null ? ImageIO.getImageReaders(stream)
+        : ImageIO.getImageReadersByFormatName(format);
+    return found.hasNext() ? found.next() : null;
+  }
+
+  // whether the file starts like a PPM file: a magic number, or a comment or whitespace before it
+  private static boolean isPPM(byte[] magic, int length) {
+    if (length == 0) {
+      return true;
+    }
+    byte first = magic[0];
+    return (first == 'P' && (length == 1 || (magic[1] >= '1' && magic[1] <= '6')))
+        || first == '#' || first == ' ' || first == '\n' || first == '\r' || first == '\t';
+  }
+
+  // the name of the format that the file starts with the magic number of, if it is a common one
+  private static String sniff(byte[] magic, int length) {
+    int b0 = length > 0 ? magic[0] & 0xff : -1;
+    int b1 = length > 1 ? magic[1] & 0xff : -1;
+    int b2 = length > 2 ? magic[2] & 0xff : -1;
+    int b3 = length > 3 ? magic[3] & 0xff : -1;
+    if (b0 == 0x89 && b1 == 'P' && b2 == 'N' && b3 == 'G') {
+      return "png";
+    }
+    if (b0 == 0xff && b1 == 0xd8 && b2 == 0xff) {
+      return "jpeg";
+    }
+    if (b0 == 'B' && b1 == 'M') {
+      return "bmp";
+    }
+    if (b0 == 'G' && b1 == 'I' && b2 == 'F' && b3 == '8') {
+      return "gif";
+    }
+    return null;
+  }
+}
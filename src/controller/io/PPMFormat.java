@@ -0,0 +1,67 @@
+package controller.io;
+
+/**
+ * The variants of the PPM family of image files, named by the magic number at the start of the
+ * file.
+ */
+public enum PPMFormat {
+  /**
+   * Plain PPM: the channels of each pixel as text.
+   */
+  P3(3, false),
+  /**
+   * Binary PGM: a single grey sample for each pixel.
+   */
+  P5(1, true),
+  /**
+   * Binary PPM: the red, green, and blue samples of each pixel.
+   */
+  P6(3, true);
+
+  /**
+   * The largest max value that the binary formats can store, in two bytes a sample.
+   */
+  public static final int MAX_BINARY_VALUE = 65535;
+
+  private final int samplesPerPixel;
+  private final boolean binary;
+
+  PPMFormat(int samplesPerPixel, boolean binary) {
+    this.samplesPerPixel = samplesPerPixel;
+    this.binary = binary;
+  }
+
+  /**
+   * Get the number of samples stored for each pixel.
+   *
+   * @return 3 for color formats, 1 for greyscale
+   */
+  public int getSamplesPerPixel() {
+    return samplesPerPixel;
+  }
+
+  /**
+   * Checks if the samples are stored as bytes rather than text.
+   *
+   * @return true if the format is binary
+   */
+  public boolean isBinary() {
+    return binary;
+  }
+
+  /**
+   * Finds the format with the given magic number (ignoring case).
+   *
+   * @param magic the magic number, such as "P6"
+   * @return the format
+   * @throws IllegalArgumentException if no format has the magic number
+   */
+  public static PPMFormat fromMagic(String magic) throws IllegalArgumentException {
+    for (PPMFormat format : values()) {
+      if (format.name().equalsIgnoreCase(magic)) {
+        return format;
+      }
+    }
+    throw new IllegalArgumentException("Invalid file format.");
+  }
+}
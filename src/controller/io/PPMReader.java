@@ -0,0 +1,332 @@
+package controller.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import model.Image;
+import model.ImageTransform;
+import model.Pixels;
+
+/**
+ * Reads images from PPM files: P3 (the channels of each pixel as text), P6 (binary red, green, and
+ * blue samples) and P5 (a binary grey sample, PGM). Binary samples take one byte each for max
+ * values up to 255, and two bytes (most significant first) above that. The file is read through a
+ * channel in fixed size blocks, and is decoded in a single pass straight into the pixels of the
+ * new image, so reading takes no more memory than the image itself no matter how large the file.
+ * Comments (from a '#' to the end of the line) may appear anywhere between the numbers of a plain
+ * file, or of the header of a binary one.
+ *
+ * <p>Files too large to read whole can be read a strip of rows at a time instead (see
+ * {@link #open}), taking only the memory of a strip no matter how large the image.</p>
+ */
+public final class PPMReader implements Closeable {
+  // The number of bytes read from the file at a time
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private final ReadableByteChannel channel;
+  // INVARIANT: Is in read mode (between position and limit are the bytes not yet decoded)
+  private final ByteBuffer buffer;
+  // The header of the file, once it has been read
+  private PPMFormat format;
+  private int height;
+  private int width;
+  private int maxValue;
+  // The number of rows read so far
+  // INVARIANT: Is between 0 and height
+  private int rowsRead;
+
+  private PPMReader(ReadableByteChannel channel) {
+    this.channel = channel;
+    this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    this.buffer.flip();
+  }
+
+  /**
+   * Reads the image in the PPM file.
+   *
+   * @param path the path of the file
+   * @return the image
+   * @throws IOException              if the file cannot be read
+   * @throws IllegalArgumentException if the file is not a valid P3, P5 or P6 file
+   */
+  public static ImageTransform read(Path path) throws IOException, IllegalArgumentException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      return read(channel);
+    }
+  }
+
+  /**
+   * Reads the image in a PPM file from the channel, from its current position to its end. The
+   * channel is left open.
+   *
+   * @param channel the channel to read from
+   * @return the image
+   * @throws IOException              if the channel cannot be read
+   * @throws IllegalArgumentException if the file is not a valid P3, P5 or P6 file
+   */
+  static ImageTransform read(ReadableByteChannel channel)
+      throws IOException, IllegalArgumentException {
+    PPMReader reader = new PPMReader(channel);
+    reader.readHeader();
+    if ((long) reader.width * reader.height * 3 > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Invalid file format.");
+    }
+    return reader.readRows(reader.height);
+  }
+
+  /**
+   * Opens the PPM file to read its image a strip of rows at a time, reading only its header for
+   * now. The reader must be closed once it is done with.
+   *
+   * @param path the path of the file
+   * @return the reader
+   * @throws IOException              if the file cannot be read
+   * @throws IllegalArgumentException if the file does not start with a valid P3, P5 or P6 header
+   */
+  public static PPMReader open(Path path) throws IOException, IllegalArgumentException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      PPMReader reader = new PPMReader(channel);
+      reader.readHeader();
+      return reader;
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Gets the height of the image in the file.
+   *
+   * @return the number of rows
+   */
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * Gets the width of the image in the file.
+   *
+   * @return the number of columns
+   */
+  public int getWidth() {
+    return width;
+  }
+
+  /**
+   * Gets the max value of the channels of the image in the file.
+   *
+   * @return the max value
+   */
+  public int getMaxValue() {
+    return maxValue;
+  }
+
+  /**
+   * Reads the next rows of the image, as an image of its own (with fewer rows, if fewer are left).
+   *
+   * @param rows the number of rows to read
+   * @return the rows
+   * @throws IOException              if the file cannot be read
+   * @throws IllegalArgumentException if the number of rows is negative, or the file is not valid
+   */
+  public ImageTransform readRows(int rows) throws IOException, IllegalArgumentException {
+    if (rows < 0) {
+      throw new IllegalArgumentException("Rows cannot be negative.");
+    }
+    rows = Math.min(rows, height - rowsRead);
+    if ((long) rows * width * 3 > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Too many rows to read at once.");
+    }
+    boolean packed = Pixels.isPackable(maxValue);
+    int[][] pages = Image.newPages(rows, width, maxValue);
+    for (int[] page : pages) {
+      int count = page.length / (packed ? 1 : 3);
+      if (format.isBinary()) {
+        this.readSamples(format, page, count, maxValue);
+      } else {
+        this.readText(page, count, packed);
+      }
+    }
+    rowsRead += rows;
+    return Image.fromPages(pages, rows, width, maxValue);
+  }
+
+  /**
+   * Gets the number of rows of the image that have not been read yet.
+   *
+   * @return the number of rows
+   */
+  public int getRowsLeft() {
+    return height - rowsRead;
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  // reads the header of the file, up to the first sample
+  private void readHeader() throws IOException, IllegalArgumentException {
+    this.format = this.nextMagic();
+    this.width = this.nextInt();
+    this.height = this.nextInt();
+    this.maxValue = this.nextInt();
+    if (maxValue < 1 || (format.isBinary() && maxValue > PPMFormat.MAX_BINARY_VALUE)
+        || (long) width * 3 > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Invalid file format.");
+    }
+    if (format.isBinary()) {
+      // a single whitespace byte separates the header from the samples
+      this.next();
+    }
+  }
+
+  // decodes the channels of each pixel from the numbers in the rest of the file
+  private void readText(int[] pixels, int count, boolean packed)
+      throws IOException, IllegalArgumentException {
+    for (int pixel = 0; pixel < count; pixel += 1) {
+      int r = this.nextInt();
+      int g = this.nextInt();
+      int b = this.nextInt();
+      if (packed) {
+        pixels[pixel] = Pixels.rgb(r, g, b);
+      } else {
+        pixels[pixel * 3] = r;
+        pixels[pixel * 3 + 1] = g;
+        pixels[pixel * 3 + 2] = b;
+      }
+    }
+  }
+
+  // decodes the binary samples of each pixel, a block of the file at a time
+  private void readSamples(PPMFormat format, int[] pixels, int count, int maxValue)
+      throws IOException, IllegalArgumentException {
+    boolean packed = Pixels.isPackable(maxValue);
+    int bytesPerSample = maxValue > 255 ? 2 : 1;
+    int bytesPerPixel = format.getSamplesPerPixel() * bytesPerSample;
+    int pixel = 0;
+    while (pixel < count) {
+      if (!this.fill(bytesPerPixel)) {
+        throw new IllegalArgumentException("Invalid file format.");
+      }
+      int n = Math.min(buffer.remaining() / bytesPerPixel, count - pixel);
+      byte[] bytes = buffer.array();
+      int i = buffer.arrayOffset() + buffer.position();
+      for (int end = pixel + n; pixel < end; pixel += 1) {
+        int r = bytes[i] & 0xff;
+        if (bytesPerSample == 2) {
+          r = (r << 8) | (bytes[i + 1] & 0xff);
+        }
+        int g = r;
+        int b = r;
+        if (format.getSamplesPerPixel() == 3) {
+          g = bytes[i + bytesPerSample] & 0xff;
+          b = bytes[i + 2 * bytesPerSample] & 0xff;
+          if (bytesPerSample == 2) {
+            g = (g << 8) | (bytes[i + 3] & 0xff);
+            b = (b << 8) | (bytes[i + 5] & 0xff);
+          }
+        }
+        i += bytesPerPixel;
+        if (packed) {
+          pixels[pixel] = Pixels.rgb(r, g, b);
+        } else {
+          pixels[pixel * 3] = r;
+          pixels[pixel * 3 + 1] = g;
+          pixels[pixel * 3 + 2] = b;
+        }
+      }
+      buffer.position(i - buffer.arrayOffset());
+    }
+  }
+
+  // reads the magic number at the start of the file (after any comments)
+  private PPMFormat nextMagic() throws IOException, IllegalArgumentException {
+    int first = this.skipSpace();
+    int second = this.next();
+    int after = this.peek();
+    if (first != 'P' || second < 0 || (after >= 0 && !isSpace(after) && after != '#')) {
+      throw new IllegalArgumentException("Invalid file format.");
+    }
+    return PPMFormat.fromMagic("P" + (char) second);
+  }
+
+  // reads a non-negative number, skipping whitespace and comments before it
+  private int nextInt() throws IOException, IllegalArgumentException {
+    int b = this.skipSpace();
+    if (b < '0' || b > '9') {
+      throw new IllegalArgumentException("Invalid file format.");
+    }
+    int value = b - '0';
+    for (b = this.peek(); b >= '0' && b <= '9'; b = this.peek()) {
+      if (value > (Integer.MAX_VALUE - (b - '0')) / 10) {
+        throw new IllegalArgumentException("Invalid file format.");
+      }
+      value = value * 10 + (b - '0');
+      buffer.get();
+    }
+    if (b >= 0 && !isSpace(b) && b != '#') {
+      throw new IllegalArgumentException("Invalid file format.");
+    }
+    return value;
+  }
+
+  // reads up to and including the first byte that is not whitespace or in a comment
+  private int skipSpace() throws IOException, IllegalArgumentException {
+    int b = this.next();
+    while (isSpace(b) || b == '#') {
+      if (b == '#') {
+        while (b != '\n' && b != '\r' && b >= 0) {
+          b = this.next();
+        }
+      }
+      b = this.next();
+    }
+    if (b < 0) {
+      throw new IllegalArgumentException("Invalid file format.");
+    }
+    return b;
+  }
+
+  private static boolean isSpace(int b) {
+    return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == 0x0b || b == '\f';
+  }
+
+  // reads the next byte (0 to 255), or -1 at the end of the file
+  private int next() throws IOException {
+    if (!buffer.hasRemaining() && !this.fill(1)) {
+      return -1;
+    }
+    return buffer.get() & 0xff;
+  }
+
+  // gets the next byte without reading it, or -1 at the end of the file
+  private int peek() throws IOException {
+    if (!buffer.hasRemaining() && !this.fill(1)) {
+      return -1;
+    }
+    return buffer.get(buffer.position()) & 0xff;
+  }
+
+  // makes sure that at least the given number of bytes are left in the buffer, if the file has them
+  private boolean fill(int bytes) throws IOException {
+    if (buffer.remaining() >= bytes) {
+      return true;
+    }
+    buffer.compact();
+    while (buffer.position() < bytes) {
+      if (channel.read(buffer) < 0) {
+        buffer.flip();
+        return false;
+      }
+    }
+    buffer.flip();
+    return true;
+  }
+}
@@ -0,0 +1,245 @@
+package controller.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import model.ImageState;
+import model.Pixels;
+
+/**
+ * Writes images to PPM files: P3 (the channels of each pixel as text, one per line), P6 (binary
+ * red, green, and blue samples) or P5 (a binary grey sample, PGM). Binary samples take one byte
+ * each for max values up to 255, and two bytes (most significant first) above that. The image is
+ * copied a row at a time into a buffer, which is written to the file through a channel whenever it
+ * fills up, so writing takes the same memory no matter how large the image.
+ *
+ * <p>Images too large to hold whole can be written a strip of rows at a time instead (see
+ * {@link #open}).</p>
+ */
+public final class PPMWriter implements Closeable {
+  // The number of bytes written to the file at a time
+  private static final int BUFFER_SIZE = 1 << 16;
+  // The largest max value that a table of digits is built for, larger ones are formatted as written
+  private static final int MAX_TABLE_VALUE = 1 << 16;
+  // The longest line of a P3 file (the digits of an int and a line separator)
+  private static final int MAX_LINE_LENGTH = 16;
+
+  private final FileChannel channel;
+  private final PPMFormat format;
+  private final int height;
+  private final int width;
+  private final int maxValue;
+  // INVARIANT: Is in write mode (up to position are the bytes not yet written to the channel)
+  private final ByteBuffer buffer;
+  // The line of a P3 file for every value up to the max value (or null if it is not P3, or the
+  // max value is too large for a table)
+  private final byte[][] lines;
+  private final byte[] separator;
+  // The channels of a row, as it is written
+  private final int[] channels;
+  // The number of rows written so far
+  // INVARIANT: Is between 0 and height
+  private int rowsWritten;
+
+  private PPMWriter(FileChannel channel, PPMFormat format, int height, int width,
+                    int maxValue) {
+    this.channel = channel;
+    this.format = format;
+    this.height = height;
+    this.width = width;
+    this.maxValue = maxValue;
+    this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    this.separator = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+    this.lines = !format.isBinary() && maxValue <= MAX_TABLE_VALUE ? lines(maxValue, separator)
+        : null;
+    this.channels = new int[width * 3];
+  }
+
+  /**
+   * Writes the image to the file in a PPM format, replacing the file if it exists. When written as
+   * P5, pixels whose channels are all the same keep that value, and other pixels are written as
+   * their luma.
+   *
+   * @param img    the image to write
+   * @param path   the path of the file
+   * @param format the format to write
+   * @throws IOException              if the file cannot be written
+   * @throws IllegalArgumentException if any argument is null, or the format is binary and the max
+   *                                  value of the image is above
+   *                                  {@link PPMFormat#MAX_BINARY_VALUE}
+   */
+  public static void write(ImageState img, Path path, PPMFormat format)
+      throws IOException, IllegalArgumentException {
+    if (img == null || path == null || format == null) {
+      throw new IllegalArgumentException("Cannot write a null image, path, or format.");
+    }
+    try (PPMWriter writer = open(path, format, img.getHeight(), img.getWidth(),
+        img.getMaxValue())) {
+      writer.writeRows(img);
+    }
+  }
+
+  /**
+   * Starts writing an image of the given size to the file in a PPM format (see
+   * {@link #write}), replacing the file if it exists. Its rows are then written a strip at a time,
+   * in order, and the writer must be closed once every row has been written.
+   *
+   * @param path     the path of the file
+   * @param format   the format to write
+   * @param height   the height of the image
+   * @param width    the width of the image
+   * @param maxValue the max value for the channels of the image
+   * @return the writer
+   * @throws IOException              if the file cannot be written
+   * @throws IllegalArgumentException if the path or format is null, the dimensions are negative,
+   *                                  the max value is not positive, or the format is binary and
+   *                                  the max value is above {@link PPMFormat#MAX_BINARY_VALUE}
+   */
+  public static PPMWriter open(Path path, PPMFormat format, int height, int width, int maxValue)
+      throws IOException, IllegalArgumentException {
+    if (path == null || format == null) {
+      throw new IllegalArgumentException("Cannot write a null image, path, or format.");
+    }
+    if (height < 0 || width < 0) {
+      throw new IllegalArgumentException("Invalid image dimensions.");
+    }
+    if (maxValue < 1) {
+      throw new IllegalArgumentException("Invalid max value.");
+    }
+    if (format.isBinary() && maxValue > PPMFormat.MAX_BINARY_VALUE) {
+      throw new IllegalArgumentException("Max value is too large for a binary format.");
+    }
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE,
+        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+    PPMWriter writer = new PPMWriter(channel, format, height, width, maxValue);
+    String newline = format.isBinary() ? "\n" : System.lineSeparator();
+    writer.buffer.put((format.name() + newline + width + " " + height + newline + maxValue
+        + newline).getBytes(StandardCharsets.US_ASCII));
+    return writer;
+  }
+
+  /**
+   * Writes the rows of the image as the next rows of the file.
+   *
+   * @param rows the rows to write
+   * @throws IOException              if the file cannot be written
+   * @throws IllegalArgumentException if the rows are null, do not have the width and max value of
+   *                                  the image, or go past its last row
+   */
+  public void writeRows(ImageState rows) throws IOException, IllegalArgumentException {
+    if (rows == null) {
+      throw new IllegalArgumentException("Cannot write a null image, path, or format.");
+    }
+    if (rows.getWidth() != width || rows.getMaxValue() != maxValue
+        || rows.getHeight() > height - rowsWritten) {
+      throw new IllegalArgumentException("Rows do not match the image.");
+    }
+    int bytesPerSample = maxValue > 255 ? 2 : 1;
+    boolean grey = format.getSamplesPerPixel() == 1;
+    for (int row = 0; row < rows.getHeight(); row += 1) {
+      rows.getChannelRow(row, channels);
+      if (!format.isBinary()) {
+        for (int value : channels) {
+          if (buffer.remaining() < MAX_LINE_LENGTH) {
+            this.flush();
+          }
+          if (lines != null) {
+            buffer.put(lines[value]);
+          } else {
+            putDigits(buffer, value);
+            buffer.put(separator);
+          }
+        }
+        continue;
+      }
+      for (int col = 0; col < width; col += 1) {
+        if (buffer.remaining() < 3 * bytesPerSample) {
+          this.flush();
+        }
+        int r = channels[col * 3];
+        int g = channels[col * 3 + 1];
+        int b = channels[col * 3 + 2];
+        if (grey) {
+          put(buffer, r == g && g == b ? r : Pixels.luma(r, g, b), bytesPerSample);
+        } else {
+          put(buffer, r, bytesPerSample);
+          put(buffer, g, bytesPerSample);
+          put(buffer, b, bytesPerSample);
+        }
+      }
+    }
+    rowsWritten += rows.getHeight();
+  }
+
+  /**
+   * Writes what is left of the file and closes it.
+   *
+   * @throws IOException           if the file cannot be written
+   * @throws IllegalStateException if not every row of the image has been written
+   */
+  @Override
+  public void close() throws IOException, IllegalStateException {
+    try {
+      this.flush();
+    } finally {
+      channel.close();
+    }
+    if (rowsWritten < height) {
+      throw new IllegalStateException("Not every row of the image was written.");
+    }
+  }
+
+  // the line of a P3 file for every value from 0 to the max value
+  private static byte[][] lines(int maxValue, byte[] separator) {
+    byte[][] lines = new byte[maxValue + 1][];
+    for (int value = 0; value <= maxValue; value += 1) {
+      int digits = digits(value);
+      byte[] line = new byte[digits + separator.length];
+      for (int i = digits - 1, rest = value; i >= 0; i -= 1, rest /= 10) {
+        line[i] = (byte) ('0' + rest % 10);
+      }
+      System.arraycopy(separator, 0, line, digits, separator.length);
+      lines[value] = line;
+    }
+    return lines;
+  }
+
+  private static void putDigits(ByteBuffer buffer, int value) {
+    int digits = digits(value);
+    int start = buffer.position();
+    for (int i = start + digits - 1, rest = value; i >= start; i -= 1, rest /= 10) {
+      buffer.put(i, (byte) ('0' + rest % 10));
+    }
+    buffer.position(start + digits);
+  }
+
+  // the number of decimal digits of a non-negative value
+  private static int digits(int value) {
+    int digits = 1;
+    for (int rest = value / 10; rest > 0; rest /= 10) {
+      digits += 1;
+    }
+    return digits;
+  }
+
+  private static void put(ByteBuffer buffer, int sample, int bytesPerSample) {
+    if (bytesPerSample == 2) {
+      buffer.put((byte) (sample >> 8));
+    }
+    buffer.put((byte) sample);
+  }
+
+  // writes everything in the buffer to the channel, leaving the buffer empty
+  private void flush() throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+}
@@ -0,0 +1,158 @@
+package controller.io;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+import model.Image;
+import model.ImageState;
+import model.ImageTransform;
+import model.Pixels;
+
+/**
+ * Copies pixels between buffered images and images of the model. For the common raster types
+ * (INT_ARGB, INT_RGB, 3BYTE_BGR and 4BYTE_ABGR) the arrays behind the raster are read and written
+ * directly, and every other type is copied a row at a time through the bulk getRGB and setRGB
+ * methods, so that no pixel goes through a color model conversion on its own.
+ */
+public final class Rasters {
+  private Rasters() {
+    // static helpers only
+  }
+
+  /**
+   * Copies a buffered image into a new image with a max value of 255.
+   *
+   * @param img the buffered image
+   * @return the image
+   * @throws IllegalArgumentException if the buffered image is null
+   */
+  public static ImageTransform fromBufferedImage(BufferedImage img)
+      throws IllegalArgumentException {
+    if (img == null) {
+      throw new IllegalArgumentException("Buffered image cannot be null.");
+    }
+    int width = img.getWidth();
+    WritableRaster raster = img.getRaster();
+    int type = isDirect(raster) ? img.getType() : BufferedImage.TYPE_CUSTOM;
+    // (each row is written straight into the pages of the image, so no copy of it is kept)
+    return Image.fromRows(img.getHeight(), width, Pixels.MAX_PACKED, (fromRow, toRow, dest) -> {
+      int[] pixels = new int[width];
+      for (int row = fromRow; row < toRow; row += 1) {
+        readRow(img, raster, type, row, pixels);
+        dest.write(row, pixels);
+      }
+    }, null);
+  }
+
+  // reads the pixels of a row of the buffered image, whose raster has the given type (or
+  // TYPE_CUSTOM if it cannot be read directly)
+  private static void readRow(BufferedImage img, WritableRaster raster, int type, int row,
+                              int[] pixels) {
+    int width = img.getWidth();
+    switch (type) {
+      case BufferedImage.TYPE_INT_ARGB:
+      case BufferedImage.TYPE_INT_RGB: {
+        int[] data = ((DataBufferInt) raster.getDataBuffer()).getData();
+        int stride = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+        int alpha = type == BufferedImage.TYPE_INT_RGB ? 0xff000000 : 0;
+        int from = raster.getDataBuffer().getOffset() + row * stride;
+        for (int col = 0; col < width; col += 1) {
+          pixels[col] = data[from + col] | alpha;
+        }
+        break;
+      }
+      case BufferedImage.TYPE_3BYTE_BGR:
+      case BufferedImage.TYPE_4BYTE_ABGR: {
+        byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+        int stride = ((ComponentSampleModel) raster.getSampleModel()).getScanlineStride();
+        boolean hasAlpha = type == BufferedImage.TYPE_4BYTE_ABGR;
+        int bytesPerPixel = hasAlpha ? 4 : 3;
+        int i = raster.getDataBuffer().getOffset() + row * stride;
+        for (int col = 0; col < width; col += 1, i += bytesPerPixel) {
+          int alpha = hasAlpha ? data[i] & 0xff : 0xff;
+          int b = i + bytesPerPixel - 3;
+          pixels[col] = (alpha << 24) | ((data[b + 2] & 0xff) << 16)
+              | ((data[b + 1] & 0xff) << 8) | (data[b] & 0xff);
+        }
+        break;
+      }
+      default:
+        img.getRGB(0, row, width, 1, pixels, 0, width);
+    }
+  }
+
+  /**
+   * Copies an image into a buffered image of the same size. Channels above 255 are saturated.
+   *
+   * @param img  the image
+   * @param dest the buffered image to copy the image into
+   * @throws IllegalArgumentException if either image is null, or they are not the same size
+   */
+  public static void toBufferedImage(ImageState img, BufferedImage dest)
+      throws IllegalArgumentException {
+    if (img == null || dest == null) {
+      throw new IllegalArgumentException("Images cannot be null.");
+    }
+    int height = img.getHeight();
+    int width = img.getWidth();
+    if (dest.getHeight() != height || dest.getWidth() != width) {
+      throw new IllegalArgumentException("Images must be the same size.");
+    }
+    int[] pixels = new int[width];
+    WritableRaster raster = dest.getRaster();
+    switch (isDirect(raster) ? dest.getType() : BufferedImage.TYPE_CUSTOM) {
+      case BufferedImage.TYPE_INT_ARGB:
+      case BufferedImage.TYPE_INT_RGB: {
+        int[] data = ((DataBufferInt) raster.getDataBuffer()).getData();
+        int stride = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+        // RGB rasters have no alpha bits, so they are cleared as setRGB would
+        int mask = dest.getType() == BufferedImage.TYPE_INT_RGB ? 0x00ffffff : 0xffffffff;
+        for (int row = 0; row < height; row += 1) {
+          img.getPixelRow(row, pixels);
+          int from = raster.getDataBuffer().getOffset() + row * stride;
+          for (int col = 0; col < width; col += 1) {
+            data[from + col] = pixels[col] & mask;
+          }
+        }
+        break;
+      }
+      case BufferedImage.TYPE_3BYTE_BGR:
+      case BufferedImage.TYPE_4BYTE_ABGR: {
+        byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+        int stride = ((ComponentSampleModel) raster.getSampleModel()).getScanlineStride();
+        boolean hasAlpha = dest.getType() == BufferedImage.TYPE_4BYTE_ABGR;
+        int bytesPerPixel = hasAlpha ? 4 : 3;
+        for (int row = 0; row < height; row += 1) {
+          img.getPixelRow(row, pixels);
+          int i = raster.getDataBuffer().getOffset() + row * stride;
+          for (int col = 0; col < width; col += 1, i += bytesPerPixel) {
+            int pixel = pixels[col];
+            if (hasAlpha) {
+              data[i] = (byte) Pixels.alpha(pixel);
+            }
+            int b = i + bytesPerPixel - 3;
+            data[b] = (byte) Pixels.blue(pixel);
+            data[b + 1] = (byte) Pixels.green(pixel);
+            data[b + 2] = (byte) Pixels.red(pixel);
+          }
+        }
+        break;
+      }
+      default:
+        for (int row = 0; row < height; row += 1) {
+          img.getPixelRow(row, pixels);
+          dest.setRGB(0, row, width, 1, pixels, 0, width);
+        }
+    }
+  }
+
+  // whether the raster starts at the start of its data (it is not a part of a larger raster)
+  private static boolean isDirect(WritableRaster raster) {
+    return raster.getParent() == null && raster.getSampleModelTranslateX() == 0
+        && raster.getSampleModelTranslateY() == 0;
+  }
+}
@@ -0,0 +1,368 @@
+package controller.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import model.Image;
+import model.ImageState;
+import model.ImageTransform;
+import model.Pixels;
+import model.macros.HorizontalFlip;
+import model.macros.LocalOperation;
+import model.macros.Macro;
+import model.macros.Rotate;
+import model.macros.VerticalFlip;
+
+/**
+ * Runs macros on a PPM file and writes the result to another PPM file, without ever holding the
+ * whole image. The file is read a strip of rows at a time (see {@link PPMReader#open}), each strip
+ * goes through the macros in order, and is written out as soon as it comes out of the last one
+ * (see {@link PPMWriter#open}), so the memory taken depends on the size of the strips rather than
+ * the size of the image.
+ *
+ * <p>Local operations (see {@link LocalOperation}) are run on each strip along with as many rows
+ * above and below it as they reach, and keep only the rows of the strip, so the result is the same
+ * as running them on the whole image. Horizontal flips work on each strip alone. Vertical flips
+ * and rotations need rows from the other end of the image first, so the image they run on is
+ * written to a temporary file (which is deleted afterwards), and each strip of their result is
+ * read back from it. Other macros (like downscaling or masks) cannot be run in strips.</p>
+ */
+public final class StripPipeline {
+  /**
+   * The number of pixels in each strip, unless given otherwise.
+   */
+  public static final int DEFAULT_STRIP_PIXELS = 1 << 20;
+
+  // INVARIANT: Every macro can be run in strips
+  private final List<Macro> macros;
+  // INVARIANT: Is positive
+  private final int stripPixels;
+
+  /**
+   * Constructs the pipeline that runs the macros in order, on strips of the default size.
+   *
+   * @param macros the macros to run
+   * @throws IllegalArgumentException if the macros or any macro are null, or any macro cannot be
+   *                                  run in strips
+   */
+  public StripPipeline(List<Macro> macros) throws IllegalArgumentException {
+    this(macros, DEFAULT_STRIP_PIXELS);
+  }
+
+  /**
+   * Constructs the pipeline that runs the macros in order, on strips of about the given number of
+   * pixels (a strip always has at least one row).
+   *
+   * @param macros      the macros to run
+   * @param stripPixels the number of pixels in each strip
+   * @throws IllegalArgumentException if the macros or any macro are null, any macro cannot be run
+   *                                  in strips, or the number of pixels is not positive
+   */
+  public StripPipeline(List<Macro> macros, int stripPixels) throws IllegalArgumentException {
+    if (macros == null) {
+      throw new IllegalArgumentException("Macros cannot be null.");
+    }
+    if (stripPixels < 1) {
+      throw new IllegalArgumentException("Strip size must be positive.");
+    }
+    for (Macro macro : macros) {
+      if (macro == null) {
+        throw new IllegalArgumentException("Macro cannot be null.");
+      }
+      if (!(macro instanceof LocalOperation || macro instanceof HorizontalFlip
+          || macro instanceof VerticalFlip || macro instanceof Rotate)) {
+        throw new IllegalArgumentException("Macro cannot be run in strips.");
+      }
+    }
+    this.macros = new ArrayList<>(macros);
+    this.stripPixels = stripPixels;
+  }
+
+  /**
+   * Runs the macros on the image in the input file, writing the result to the output file in the
+   * given PPM format (replacing the file if it exists). The result is written to a temporary file
+   * next to the output file first, which only replaces it once it is whole, so the output file is
+   * left as it was if the stream fails. The output file keeps the permissions it had, and a new
+   * file gets the default permissions.
+   *
+   * @param input  the path of the PPM file to read
+   * @param output the path of the PPM file to write
+   * @param format the format to write
+   * @throws IOException              if either file cannot be read or written
+   * @throws IllegalArgumentException if any argument is null, the files are the same, or the input
+   *                                  file is not a valid PPM file
+   */
+  public void run(Path input, Path output, PPMFormat format)
+      throws IOException, IllegalArgumentException {
+    if (input == null || output == null || format == null) {
+      throw new IllegalArgumentException("Cannot stream a null path or format.");
+    }
+    if (input.toAbsolutePath().normalize().equals(output.toAbsolutePath().normalize())) {
+      throw new IllegalArgumentException("Cannot stream a file onto itself.");
+    }
+    FileReplacement.write(output, temp -> this.stream(input, temp, format));
+  }
+
+  // runs the macros on the image in the input file, writing the result to the empty output file
+  private void stream(Path input, Path output, PPMFormat format) throws IOException {
+    List<Strips> stages = new ArrayList<>();
+    try (PPMReader reader = PPMReader.open(input)) {
+      Strips last = new FileStrips(reader);
+      for (Macro macro : macros) {
+        last = stage(macro, last);
+        stages.add(last);
+      }
+      try (PPMWriter writer = PPMWriter.open(output, format, last.height, last.width,
+          last.maxValue)) {
+        int rows = this.stripRows(last.width);
+        for (int row = 0; row < last.height; row += rows) {
+          writer.writeRows(last.next(Math.min(rows, last.height - row)));
+        }
+      }
+    } finally {
+      for (Strips stage : stages) {
+        stage.close();
+      }
+    }
+  }
+
+  // the number of rows in a strip of the given width
+  private int stripRows(int width) {
+    return Math.max(1, stripPixels / Math.max(width, 1));
+  }
+
+  // the strips of the result of running the macro on the strips of the source
+  private Strips stage(Macro macro, Strips source) {
+    if (macro instanceof LocalOperation) {
+      return new HaloStrips(macro, ((LocalOperation) macro).radius(), source);
+    }
+    if (macro instanceof HorizontalFlip || new Rotate(0).equals(macro)) {
+      return new HaloStrips(macro, 0, source);
+    }
+    boolean turned = new Rotate(1).equals(macro) || new Rotate(3).equals(macro);
+    return new SpillStrips(macro, turned, new Rotate(1).equals(macro), source,
+        this.stripRows(source.width));
+  }
+
+  // The rows of an image, given a strip at a time from the top
+  private abstract static class Strips implements Closeable {
+    protected final int height;
+    protected final int width;
+    protected final int maxValue;
+    // The number of rows given so far
+    // INVARIANT: Is between 0 and height
+    protected int rowsGiven;
+
+    Strips(int height, int width, int maxValue) {
+      this.height = height;
+      this.width = width;
+      this.maxValue = maxValue;
+    }
+
+    // gives the next rows of the image (at most as many as are left)
+    abstract ImageTransform next(int rows) throws IOException;
+
+    @Override
+    public void close() throws IOException {
+      // nothing is held by default
+    }
+  }
+
+  // The rows of the image in a PPM file
+  private static class FileStrips extends Strips {
+    private final PPMReader reader;
+
+    FileStrips(PPMReader reader) {
+      super(reader.getHeight(), reader.getWidth(), reader.getMaxValue());
+      this.reader = reader;
+    }
+
+    @Override
+    ImageTransform next(int rows) throws IOException {
+      ImageTransform strip = reader.readRows(rows);
+      rowsGiven += strip.getHeight();
+      return strip;
+    }
+  }
+
+  // The rows of the result of a macro whose rows depend only on the rows of the source within the
+  // radius of them, worked out from each strip of the source and the rows around it
+  private static class HaloStrips extends Strips {
+    private final Macro macro;
+    private final int radius;
+    private final Strips source;
+    // The rows of the source read so far that later strips still need, and the row of the source
+    // that its first row is
+    private ImageTransform window;
+    private int windowTop;
+
+    HaloStrips(Macro macro, int radius, Strips source) {
+      super(source.height, source.width, source.maxValue);
+      this.macro = macro;
+      this.radius = radius;
+      this.source = source;
+      this.window = new Image(0, width, maxValue);
+    }
+
+    @Override
+    ImageTransform next(int rows) throws IOException {
+      int top = rowsGiven;
+      int bottom = Math.min(height, top + rows);
+      int windowBottom = windowTop + window.getHeight();
+      int needed = Math.min(height, bottom + radius) - windowBottom;
+      if (needed > 0) {
+        window = stack(window, source.next(needed));
+      }
+      ImageTransform result = macro.execute(window);
+      if (result == null || result.getHeight() != window.getHeight()
+          || result.getWidth() != width) {
+        throw new IllegalArgumentException("Resulting image dimensions must be the same "
+            + "as image dimensions.");
+      }
+      ImageTransform strip = result.crop(top - windowTop, 0, bottom - top, width);
+      // keep only the rows above the next strip that it still reaches
+      int keepTop = Math.max(windowTop, bottom - radius);
+      window = window.crop(keepTop - windowTop, 0, windowTop + window.getHeight() - keepTop,
+          width);
+      windowTop = keepTop;
+      rowsGiven = bottom;
+      return strip;
+    }
+  }
+
+  // The rows of the result of a vertical flip or rotation, read back from a temporary file of the
+  // whole source once it has been written
+  private static class SpillStrips extends Strips {
+    private final Macro macro;
+    // Whether the macro turns the image by a quarter turn either way, and if so which way
+    private final boolean turned;
+    private final boolean clockwise;
+    private final Strips source;
+    // The number of ints each pixel takes in the file
+    private final int stride;
+    // The number of rows of the source written to the file at a time
+    private final int spillRows;
+    // The file holding the rows of the source, in order, once it has been written (null before)
+    private FileChannel file;
+
+    SpillStrips(Macro macro, boolean turned, boolean clockwise, Strips source, int spillRows) {
+      super(turned ? source.width : source.height, turned ? source.height : source.width,
+          source.maxValue);
+      this.macro = macro;
+      this.turned = turned;
+      this.clockwise = clockwise;
+      this.source = source;
+      this.stride = Pixels.isPackable(maxValue) ? 1 : 3;
+      this.spillRows = spillRows;
+    }
+
+    @Override
+    ImageTransform next(int rows) throws IOException {
+      if (file == null) {
+        this.spill();
+      }
+      int count = Math.min(rows, height - rowsGiven);
+      // the rectangle of the source that the rows come from: rows from the bottom up, or columns
+      // from the left (turning clockwise) or right (turning counterclockwise)
+      int top = turned ? 0 : source.height - rowsGiven - count;
+      int left = !turned ? 0 : clockwise ? rowsGiven : source.width - rowsGiven - count;
+      int blockHeight = turned ? source.height : count;
+      int blockWidth = turned ? count : source.width;
+      ImageTransform block;
+      try {
+        block = this.read(top, left, blockHeight, blockWidth);
+      } catch (UncheckedIOException e) {
+        throw e.getCause();
+      }
+      rowsGiven += count;
+      return macro.execute(block);
+    }
+
+    // reads the rectangle of the source from the file
+    private ImageTransform read(int top, int left, int blockHeight, int blockWidth) {
+      int sourceWidth = source.width;
+      return Image.fromRows(blockHeight, blockWidth, maxValue,
+          (fromRow, toRow, dest) -> {
+            int[] line = new int[blockWidth * stride];
+            ByteBuffer bytes = ByteBuffer.allocate(line.length * Integer.BYTES);
+            for (int y = fromRow; y < toRow; y += 1) {
+              bytes.clear();
+              long position = ((long) (top + y) * sourceWidth + left) * stride * Integer.BYTES;
+              try {
+                while (bytes.hasRemaining()) {
+                  if (file.read(bytes, position + bytes.position()) < 0) {
+                    throw new IOException("Temporary file ended early.");
+                  }
+                }
+              } catch (IOException e) {
+                throw new UncheckedIOException(e);
+              }
+              bytes.flip();
+              bytes.asIntBuffer().get(line);
+              dest.write(y, line);
+            }
+          }, null);
+    }
+
+    // writes every row of the source to a new temporary file
+    private void spill() throws IOException {
+      Path path = Files.createTempFile("strips", ".tmp");
+      file = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+          StandardOpenOption.DELETE_ON_CLOSE);
+      int sourceWidth = source.width;
+      int[] line = new int[sourceWidth * stride];
+      ByteBuffer bytes = ByteBuffer.allocate(line.length * Integer.BYTES);
+      for (int row = 0; row < source.height; row += spillRows) {
+        ImageTransform strip = source.next(Math.min(spillRows, source.height - row));
+        for (int y = 0; y < strip.getHeight(); y += 1) {
+          if (stride == 1) {
+            strip.getPixelRow(y, line);
+          } else {
+            strip.getChannelRow(y, line);
+          }
+          bytes.clear();
+          bytes.asIntBuffer().put(line);
+          while (bytes.hasRemaining()) {
+            file.write(bytes);
+          }
+        }
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (file != null) {
+        file.close();
+      }
+    }
+  }
+
+  // the rows of the first image followed by the rows of the second (of the same width)
+  private static ImageTransform stack(ImageState first, ImageState second) {
+    int width = first.getWidth();
+    int stride = Pixels.isPackable(first.getMaxValue()) ? 1 : 3;
+    int split = first.getHeight();
+    return Image.fromRows(split + second.getHeight(), width, first.getMaxValue(),
+        (fromRow, toRow, dest) -> {
+          int[] line = new int[width * stride];
+          for (int y = fromRow; y < toRow; y += 1) {
+            ImageState img = y < split ? first : second;
+            int row = y < split ? y : y - split;
+            if (stride == 1) {
+              img.getPixelRow(row, line);
+            } else {
+              img.getChannelRow(row, line);
+            }
+            dest.write(y, line);
+          }
+        }, null);
+  }
+}
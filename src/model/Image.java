@@ -5,9 +5,34 @@ import java.util.Objects;
 
 /**
  * The immutable image that we are working on. Any changes to the image will only produce a new
- * image. An image is a 2D array of colors and a max value for the channels.
+ * image. An image is a grid of colors and a max value for the channels. The colors are stored as
+ * primitive pixels rather than color objects: images with a max value of at most 255 pack each
+ * pixel into a single int (see {@link Pixels}), deeper images store three ints per pixel.
+ * Transforming an image may run the function on several rows at once (see {@link ParallelRows}),
+ * so functions should only depend on their inputs and on images that are not being changed.
+ *
+ * <p>Flips, rotations, and crops do not copy any pixels: the new image shares the pixels of this
+ * one, and only changes where each of its rows and columns is found in them. Transforming an image
+ * always gives an image with its own pixels, in order. (Note that a small crop of a large image
+ * keeps all of the pixels of the large image alive until it is transformed.)
+ *
+ * <p>The pixels are stored in fixed-size pages of {@link #PAGE_PIXELS} pixels each, in order.
+ * Pages never change once an image is made, so images can share them: an image transformed from
+ * one with its own pixels keeps (rather than copies) every page of it that comes out the same. A
+ * brighten by 0, or an edit of a small part of an image, then only takes memory for the pages
+ * that changed. Pages that nothing uses any more are freed by the garbage collector, so they need
+ * no counting.</p>
  */
 public class Image implements ImageTransform {
+  /**
+   * The number of pixels in each page the pixels of an image are stored in (the last page of an
+   * image may hold fewer).
+   */
+  public static final int PAGE_PIXELS = 1 << 12;
+  // The pixel with number i is pixel i & PAGE_MASK of page i >>> PAGE_SHIFT
+  private static final int PAGE_SHIFT = 12;
+  private static final int PAGE_MASK = PAGE_PIXELS - 1;
+
   // INVARIANT: Is a non-negative integer
   // Reason: You can have an image with no height (blank image)
   private final int height;
@@ -18,10 +43,20 @@ public class Image implements ImageTransform {
   // Reason: Cannot be 0 because 0 only represents black but can be any positive integer
   // because we can always change what white represents (and base our color scale accordingly)
   private final int maxValue;
-  // INVARIANT: Non-null Color array
-  // INVARIANT: All rows are non-null
-  // INVARIANT: All rows have length this.width
-  private final Color[][] pane;
+  // The pixels, split into pages of PAGE_PIXELS pixels each (the last page may hold fewer)
+  // INVARIANT: Non-null, with every channel between 0 and maxValue
+  // INVARIANT: If packed, holds a pixel in every int, and every pixel is opaque
+  // INVARIANT: If not packed, holds a pixel in every 3 ints (red, green, blue)
+  // INVARIANT: Pages may be shared with other images, and are never changed after construction
+  private final int[][] pages;
+  // INVARIANT: Is Pixels.isPackable(maxValue)
+  private final boolean packed;
+  // The pixel at (row, col) is pixel number offset + row * rowStride + col * colStride in pages
+  // (which is row * width + col for images with their own pixels)
+  // INVARIANT: Every row and column of the image is within pages
+  private final int offset;
+  private final int rowStride;
+  private final int colStride;
 
   /**
    * We can construct a new image by passing in a 2D array of Colors.
@@ -49,14 +84,18 @@ public class Image implements ImageTransform {
     }
     this.height = img.length;
     this.maxValue = maxValue;
+    this.packed = Pixels.isPackable(maxValue);
 
     if (height == 0 || img[0] == null) {
       this.width = 0;
     } else {
       this.width = img[0].length;
     }
+    this.offset = 0;
+    this.rowStride = width;
+    this.colStride = 1;
 
-    this.pane = new Color[height][width];
+    this.pages = newPages(height * width, this.stride());
 
     for (int row = 0; row < height; row += 1) {
       if (img[row] == null) {
@@ -70,18 +109,234 @@ public class Image implements ImageTransform {
         if (c == null) {
           throw new IllegalArgumentException("Pixel color cannot be null.");
         }
-        this.pane[row][col] = new RGBColor(clamp(c.getRed()),
-            clamp(c.getGreen()), clamp(c.getBlue()));
+        this.store(this.pages, row * width + col, c);
+      }
+    }
+  }
+
+  /**
+   * We can construct a new black image with the given dimensions and max value.
+   *
+   * @param height   the height of the image
+   * @param width    the width of the image
+   * @param maxValue the max value for the channels
+   * @throws IllegalArgumentException if the dimensions are negative or the maxValue is not
+   *                                  positive
+   */
+  public Image(int height, int width, int maxValue) throws IllegalArgumentException {
+    if (height < 0 || width < 0) {
+      throw new IllegalArgumentException("Invalid image dimensions.");
+    }
+    if (maxValue < 1) {
+      throw new IllegalArgumentException("Invalid max value.");
+    }
+    this.height = height;
+    this.width = width;
+    this.maxValue = maxValue;
+    this.packed = Pixels.isPackable(maxValue);
+    this.offset = 0;
+    this.rowStride = width;
+    this.colStride = 1;
+    int count = height * width;
+    this.pages = new int[pageCount(count)][];
+    for (int p = 0; p < pages.length; p += 1) {
+      int length = Math.min(PAGE_PIXELS, count - (p << PAGE_SHIFT)) * this.stride();
+      if (p > 0 && length == pages[0].length) {
+        // every whole page is black, so they all share the first one
+        pages[p] = pages[0];
+      } else {
+        pages[p] = new int[length];
+        if (packed) {
+          Arrays.fill(pages[p], Pixels.rgb(0, 0, 0));
+        }
+      }
+    }
+  }
+
+  /**
+   * Builds an image straight from its pixels, laid out the way images store them: row-major, with
+   * each pixel packed into one int (see {@link Pixels}) if the max value is at most
+   * {@link Pixels#MAX_PACKED}, or as three ints (red, green, blue) otherwise. Channels are clamped
+   * to the max value in place. An array of at most one page of pixels becomes the storage of the
+   * image rather than being copied, so it must not be changed afterwards. Larger arrays are copied
+   * into pages, so images too large to hold twice are better decoded straight into pages (see
+   * {@link #newPages}).
+   *
+   * @param pixels   the pixels of the image
+   * @param height   the height of the image
+   * @param width    the width of the image
+   * @param maxValue the max value for the channels
+   * @return the image
+   * @throws IllegalArgumentException if the pixels are null or do not have the length of the
+   *                                  image, the dimensions are negative, or the maxValue is not
+   *                                  positive
+   */
+  public static Image fromPixels(int[] pixels, int height, int width, int maxValue)
+      throws IllegalArgumentException {
+    return fromPixels(pixels, height, width, maxValue, null);
+  }
+
+  /**
+   * Builds an image straight from its pixels (see {@link #fromPixels(int[], int, int, int)}),
+   * sharing every page of the base image that holds the same pixels rather than copying them. The
+   * base only shares pages if it is an image with its own pixels (not a flip, rotation or crop) of
+   * the same dimensions and max value, so this is worth doing for pixels that are mostly a copy of
+   * the base.
+   *
+   * @param pixels   the pixels of the image
+   * @param height   the height of the image
+   * @param width    the width of the image
+   * @param maxValue the max value for the channels
+   * @param base     the image to share pages with (or null to share none)
+   * @return the image
+   * @throws IllegalArgumentException if the pixels are null or do not have the length of the
+   *                                  image, the dimensions are negative, or the maxValue is not
+   *                                  positive
+   */
+  public static Image fromPixels(int[] pixels, int height, int width, int maxValue,
+                                 ImageState base) throws IllegalArgumentException {
+    if (pixels == null) {
+      throw new IllegalArgumentException("Pixel array cannot be null.");
+    }
+    if (height < 0 || width < 0) {
+      throw new IllegalArgumentException("Invalid image dimensions.");
+    }
+    if (maxValue < 1) {
+      throw new IllegalArgumentException("Invalid max value.");
+    }
+    boolean packed = Pixels.isPackable(maxValue);
+    if (pixels.length != (long) height * width * (packed ? 1 : 3)) {
+      throw new IllegalArgumentException("Pixel array does not match the image dimensions.");
+    }
+    clampAll(pixels, maxValue);
+    return new Image(toPages(pixels, packed ? 1 : 3, sharable(base, height, width, maxValue)),
+        height, width, maxValue);
+  }
+
+  /**
+   * Makes the pages to store the pixels of an image with the given dimensions and max value in,
+   * for {@link #fromPages}: each holds {@link #PAGE_PIXELS} pixels (the last may hold fewer), laid
+   * out the way {@link #fromPixels(int[], int, int, int)} takes them. Pixels that are read in order
+   * (like from a file) can then be decoded straight into the pages, without ever being copied.
+   *
+   * @param height   the height of the image
+   * @param width    the width of the image
+   * @param maxValue the max value for the channels
+   * @return the pages, filled with zeros
+   * @throws IllegalArgumentException if the dimensions are negative or too large, or the maxValue
+   *                                  is not positive
+   */
+  public static int[][] newPages(int height, int width, int maxValue)
+      throws IllegalArgumentException {
+    if (height < 0 || width < 0 || (long) height * width > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Invalid image dimensions.");
+    }
+    if (maxValue < 1) {
+      throw new IllegalArgumentException("Invalid max value.");
+    }
+    return newPages(height * width, Pixels.isPackable(maxValue) ? 1 : 3);
+  }
+
+  /**
+   * Builds an image from pages of its pixels laid out like those of {@link #newPages}. Channels
+   * are clamped to the max value in place, and the pages become the storage of the image rather
+   * than being copied, so they must not be changed afterwards.
+   *
+   * @param pages    the pages of the pixels of the image
+   * @param height   the height of the image
+   * @param width    the width of the image
+   * @param maxValue the max value for the channels
+   * @return the image
+   * @throws IllegalArgumentException if the pages or any page are null or do not have the length
+   *                                  of the pages of the image, the dimensions are negative, or the
+   *                                  maxValue is not positive
+   */
+  public static Image fromPages(int[][] pages, int height, int width, int maxValue)
+      throws IllegalArgumentException {
+    if (pages == null) {
+      throw new IllegalArgumentException("Pixel pages cannot be null.");
+    }
+    if (height < 0 || width < 0 || (long) height * width > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Invalid image dimensions.");
+    }
+    if (maxValue < 1) {
+      throw new IllegalArgumentException("Invalid max value.");
+    }
+    boolean packed = Pixels.isPackable(maxValue);
+    int count = height * width;
+    if (pages.length != pageCount(count)) {
+      throw new IllegalArgumentException("Pixel pages do not match the image dimensions.");
+    }
+    for (int p = 0; p < pages.length; p += 1) {
+      if (pages[p] == null || pages[p].length
+          != Math.min(PAGE_PIXELS, count - (p << PAGE_SHIFT)) * (packed ? 1 : 3)) {
+        throw new IllegalArgumentException("Pixel pages do not match the image dimensions.");
       }
+      clampAll(pages[p], maxValue);
     }
+    return new Image(pages.clone(), height, width, maxValue);
+  }
+
+  /**
+   * Builds an image by computing bands of its rows at once (see {@link RowsFunction}), sharing
+   * every page of the base image that comes out the same rather than keeping a copy of it (see
+   * {@link #fromPixels(int[], int, int, int, ImageState)}). Bands may be computed on several
+   * threads at once.
+   *
+   * @param height   the height of the image
+   * @param width    the width of the image
+   * @param maxValue the max value for the channels
+   * @param rows     the function that computes the rows of the image
+   * @param base     the image to share pages with (or null to share none)
+   * @return the image
+   * @throws IllegalArgumentException if the function is null, the dimensions are negative, the
+   *                                  maxValue is not positive, or the function writes a row
+   *                                  wrongly
+   */
+  public static Image fromRows(int height, int width, int maxValue, RowsFunction rows,
+                               ImageState base) throws IllegalArgumentException {
+    if (rows == null) {
+      throw new IllegalArgumentException("Function cannot be null.");
+    }
+    if (height < 0 || width < 0) {
+      throw new IllegalArgumentException("Invalid image dimensions.");
+    }
+    if (maxValue < 1) {
+      throw new IllegalArgumentException("Invalid max value.");
+    }
+    int stride = Pixels.isPackable(maxValue) ? 1 : 3;
+    int[][] pages = newPages(height * width, stride);
+    ParallelRows.forEachBand(height, width, (fromRow, toRow) -> rows.apply(fromRow, toRow,
+        (row, pixels) -> {
+          if (row < fromRow || row >= toRow) {
+            throw new IllegalArgumentException("Row is not in the band.");
+          }
+          if (pixels == null || pixels.length < width * stride) {
+            throw new IllegalArgumentException("Row array is too short.");
+          }
+          // (bands may share a page, but never write the same pixels of it)
+          copyIn(pixels, pages, row * width, width, maxValue);
+        }));
+    return new Image(share(pages, sharable(base, height, width, maxValue)), height, width,
+        maxValue);
   }
 
   // So we don't have to make a copy unnecessarily - every time we transform the image.
-  private Image(Color[][] pane, int height, int width, int maxValue) {
-    this.pane = pane;
+  private Image(int[][] pages, int height, int width, int maxValue) {
+    this(pages, height, width, maxValue, 0, width, 1);
+  }
+
+  // Shares the pixels of another image, laid out as given
+  private Image(int[][] pages, int height, int width, int maxValue, int offset, int rowStride,
+                int colStride) {
+    this.pages = pages;
     this.height = height;
     this.width = width;
     this.maxValue = maxValue;
+    this.packed = Pixels.isPackable(maxValue);
+    this.offset = offset;
+    this.rowStride = rowStride;
+    this.colStride = colStride;
   }
 
   @Override
@@ -104,7 +359,66 @@ public class Image implements ImageTransform {
     if (row < 0 || col < 0 || row >= height || col >= width) {
       throw new IllegalArgumentException("Cannot get color from invalid location.");
     }
-    return pane[row][col];
+    return this.load(this.index(row, col));
+  }
+
+  @Override
+  public int getPixelAt(int row, int col) throws IllegalArgumentException {
+    if (row < 0 || col < 0 || row >= height || col >= width) {
+      throw new IllegalArgumentException("Cannot get color from invalid location.");
+    }
+    int index = this.index(row, col);
+    if (packed) {
+      return this.pixel(index);
+    }
+    return Pixels.rgb(this.channel(index, 0), this.channel(index, 1), this.channel(index, 2));
+  }
+
+  @Override
+  public void getPixelRow(int row, int[] dest) throws IllegalArgumentException {
+    if (!packed) {
+      ImageTransform.super.getPixelRow(row, dest);
+      return;
+    }
+    if (row < 0 || row >= height) {
+      throw new IllegalArgumentException("Cannot get color from invalid location.");
+    }
+    if (dest == null || dest.length < width) {
+      throw new IllegalArgumentException("Row array is too short.");
+    }
+    if (colStride == 1) {
+      copyOut(pages, this.index(row, 0), dest, 0, width, 1);
+      return;
+    }
+    for (int col = 0, i = this.index(row, 0); col < width; col += 1, i += colStride) {
+      dest[col] = this.pixel(i);
+    }
+  }
+
+  @Override
+  public void getChannelRow(int row, int[] dest) throws IllegalArgumentException {
+    if (row < 0 || row >= height) {
+      throw new IllegalArgumentException("Cannot get color from invalid location.");
+    }
+    if (dest == null || dest.length < width * 3) {
+      throw new IllegalArgumentException("Row array is too short.");
+    }
+    if (!packed && colStride == 1) {
+      copyOut(pages, this.index(row, 0), dest, 0, width, 3);
+      return;
+    }
+    for (int col = 0, i = this.index(row, 0); col < width; col += 1, i += colStride) {
+      if (packed) {
+        int pixel = this.pixel(i);
+        dest[col * 3] = Pixels.red(pixel);
+        dest[col * 3 + 1] = Pixels.green(pixel);
+        dest[col * 3 + 2] = Pixels.blue(pixel);
+      } else {
+        dest[col * 3] = this.channel(i, 0);
+        dest[col * 3 + 1] = this.channel(i, 1);
+        dest[col * 3 + 2] = this.channel(i, 2);
+      }
+    }
   }
 
   @Override
@@ -112,18 +426,262 @@ public class Image implements ImageTransform {
     if (map == null) {
       throw new IllegalArgumentException("Function cannot be null.");
     }
-    Color[][] newPane = new Color[height][width];
-    for (int row = 0; row < height; row += 1) {
-      for (int col = 0; col < width; col += 1) {
-        Color c = map.apply(this.pane[row][col], row, col);
-        if (c == null) {
-          throw new IllegalArgumentException("Pixel color cannot be null.");
+    int[][] newPages = newPages(height * width, this.stride());
+    ParallelRows.forEachBand(height, width, (fromRow, toRow) -> {
+      for (int row = fromRow; row < toRow; row += 1) {
+        for (int col = 0; col < width; col += 1) {
+          Color c = map.apply(this.load(this.index(row, col)), row, col);
+          if (c == null) {
+            throw new IllegalArgumentException("Pixel color cannot be null.");
+          }
+          this.store(newPages, row * width + col, c);
+        }
+      }
+    });
+    return this.derive(newPages);
+  }
+
+  @Override
+  public ImageTransform transformPixels(PixelFunction map) throws IllegalArgumentException {
+    if (map == null) {
+      throw new IllegalArgumentException("Function cannot be null.");
+    }
+    if (!packed) {
+      throw new IllegalArgumentException("Image pixels cannot be packed.");
+    }
+    int[][] newPages = newPages(height * width, 1);
+    ParallelRows.forEachBand(height, width, (fromRow, toRow) -> {
+      int[] line = new int[width];
+      for (int row = fromRow; row < toRow; row += 1) {
+        this.getPixelRow(row, line);
+        for (int col = 0; col < width; col += 1) {
+          line[col] = map.apply(line[col], row, col);
+        }
+        // (bands may share a page, but never write the same pixels of it)
+        copyIn(line, newPages, row * width, width, maxValue);
+      }
+    });
+    return this.derive(newPages);
+  }
+
+  @Override
+  public ImageTransform transformRows(RowsFunction map) throws IllegalArgumentException {
+    if (map == null) {
+      throw new IllegalArgumentException("Function cannot be null.");
+    }
+    if (!packed) {
+      throw new IllegalArgumentException("Image pixels cannot be packed.");
+    }
+    return fromRows(height, width, maxValue, map, this);
+  }
+
+  @Override
+  public ImageTransform flipHorizontal() {
+    return new Image(pages, height, width, maxValue, this.index(0, width - 1), rowStride,
+        -colStride);
+  }
+
+  @Override
+  public ImageTransform flipVertical() {
+    return new Image(pages, height, width, maxValue, this.index(height - 1, 0), -rowStride,
+        colStride);
+  }
+
+  @Override
+  public ImageTransform rotate(int quarterTurns) {
+    switch (Math.floorMod(quarterTurns, 4)) {
+      case 1:
+        // the first row is the first column read from the bottom up
+        return new Image(pages, width, height, maxValue, this.index(height - 1, 0), colStride,
+            -rowStride);
+      case 2:
+        return new Image(pages, height, width, maxValue, this.index(height - 1, width - 1),
+            -rowStride, -colStride);
+      case 3:
+        // the first row is the last column read from the top down
+        return new Image(pages, width, height, maxValue, this.index(0, width - 1), -colStride,
+            rowStride);
+      default:
+        return this;
+    }
+  }
+
+  @Override
+  public ImageTransform crop(int row, int col, int height, int width)
+      throws IllegalArgumentException {
+    if (row < 0 || col < 0 || height < 0 || width < 0
+        || row > this.height - height || col > this.width - width) {
+      throw new IllegalArgumentException("Crop region must be within the image.");
+    }
+    return new Image(pages, height, width, maxValue, this.index(row, col), rowStride, colStride);
+  }
+
+  // the pages the pixels of this image are stored in (which may be shared with other images, and
+  // must not be changed)
+  int[][] getPages() {
+    return pages;
+  }
+
+  // the number of the pixel at the row and column in pages
+  private int index(int row, int col) {
+    return offset + row * rowStride + col * colStride;
+  }
+
+  // the packed pixel with the given number in pages
+  private int pixel(int index) {
+    return pages[index >>> PAGE_SHIFT][index & PAGE_MASK];
+  }
+
+  // a channel (0 for red, 1 for green, 2 for blue) of the pixel with the given number in pages,
+  // if the pixels are not packed
+  private int channel(int index, int channel) {
+    return pages[index >>> PAGE_SHIFT][(index & PAGE_MASK) * 3 + channel];
+  }
+
+  // checks if the pixels of this image are its own, in order
+  private boolean isContiguous() {
+    int count = height * width;
+    return offset == 0 && rowStride == width && colStride == 1
+        && pages.length == pageCount(count)
+        && (count == 0 || pages[pages.length - 1].length
+        == (count - ((pages.length - 1) << PAGE_SHIFT)) * this.stride());
+  }
+
+  // an image like this one with the new pages, sharing the pages of this image that are the same
+  private Image derive(int[][] newPages) {
+    return new Image(share(newPages, sharable(this, height, width, maxValue)), height, width,
+        maxValue);
+  }
+
+  // the image if it is an image with its own pixels and the given dimensions and max value (so
+  // that its pages line up with those of a new image like that), or null otherwise
+  private static Image sharable(ImageState image, int height, int width, int maxValue) {
+    if (!(image instanceof Image)) {
+      return null;
+    }
+    Image img = (Image) image;
+    return img.height == height && img.width == width && img.maxValue == maxValue
+        && img.isContiguous() ? img : null;
+  }
+
+  // replaces every page that is the same as the page of the base image (if not null) in the same
+  // place with that page, so the copy can be freed
+  private static int[][] share(int[][] pages, Image base) {
+    if (base != null) {
+      for (int p = 0; p < pages.length; p += 1) {
+        if (Arrays.equals(pages[p], base.pages[p])) {
+          pages[p] = base.pages[p];
         }
-        newPane[row][col] = new RGBColor(clamp(c.getRed()),
-            clamp(c.getGreen()), clamp(c.getBlue()));
       }
     }
-    return new Image(newPane, height, width, maxValue);
+    return pages;
+  }
+
+  // the number of pages that hold the given number of pixels
+  private static int pageCount(int pixels) {
+    return (pixels >>> PAGE_SHIFT) + ((pixels & PAGE_MASK) == 0 ? 0 : 1);
+  }
+
+  // new pages for the given number of pixels, each taking the given number of ints
+  private static int[][] newPages(int pixels, int stride) {
+    int[][] pages = new int[pageCount(pixels)][];
+    for (int p = 0; p < pages.length; p += 1) {
+      pages[p] = new int[Math.min(PAGE_PIXELS, pixels - (p << PAGE_SHIFT)) * stride];
+    }
+    return pages;
+  }
+
+  // splits the pixels (taking the given number of ints each) into pages, using the page of the
+  // base image (if not null) wherever it holds the same pixels, and the array itself if it fits
+  // in a single page
+  private static int[][] toPages(int[] pixels, int stride, Image base) {
+    int pageInts = PAGE_PIXELS * stride;
+    int[][] pages = new int[pageCount(pixels.length / stride)][];
+    for (int p = 0; p < pages.length; p += 1) {
+      int from = p * pageInts;
+      int to = Math.min(pixels.length, from + pageInts);
+      if (base != null && Arrays.equals(pixels, from, to, base.pages[p], 0,
+          base.pages[p].length)) {
+        pages[p] = base.pages[p];
+      } else if (pages.length == 1) {
+        pages[p] = pixels;
+      } else {
+        pages[p] = Arrays.copyOfRange(pixels, from, to);
+      }
+    }
+    return pages;
+  }
+
+  // clamps every channel of the pixels in the array to the max value, in place
+  private static void clampAll(int[] pixels, int maxValue) {
+    boolean packed = Pixels.isPackable(maxValue);
+    for (int i = 0; i < pixels.length; i += 1) {
+      pixels[i] = packed ? Pixels.clamp(pixels[i], maxValue)
+          : Math.max(Math.min(pixels[i], maxValue), 0);
+    }
+  }
+
+  // copies the given number of pixels from the start of the array to the pixels with the given
+  // number onwards in the pages, clamping every channel to the max value
+  private static void copyIn(int[] src, int[][] pages, int index, int count, int maxValue) {
+    boolean packed = Pixels.isPackable(maxValue);
+    int stride = packed ? 1 : 3;
+    int srcPos = 0;
+    while (count > 0) {
+      int n = Math.min(count, PAGE_PIXELS - (index & PAGE_MASK)) * stride;
+      int[] page = pages[index >>> PAGE_SHIFT];
+      int at = (index & PAGE_MASK) * stride;
+      for (int i = 0; i < n; i += 1) {
+        page[at + i] = packed ? Pixels.clamp(src[srcPos + i], maxValue)
+            : Math.max(Math.min(src[srcPos + i], maxValue), 0);
+      }
+      srcPos += n;
+      index += n / stride;
+      count -= n / stride;
+    }
+  }
+
+  // copies the given number of pixels (taking the given number of ints each) with the given
+  // number onwards in the pages to the array, starting at the given int
+  private static void copyOut(int[][] pages, int index, int[] dest, int destPos, int count,
+                              int stride) {
+    while (count > 0) {
+      int n = Math.min(count, PAGE_PIXELS - (index & PAGE_MASK));
+      System.arraycopy(pages[index >>> PAGE_SHIFT], (index & PAGE_MASK) * stride, dest, destPos,
+          n * stride);
+      destPos += n * stride;
+      index += n;
+      count -= n;
+    }
+  }
+
+  // the number of ints used to store a single pixel
+  private int stride() {
+    return packed ? 1 : 3;
+  }
+
+  // reads the pixel with the given number in pages as a color
+  private Color load(int index) {
+    if (packed) {
+      return Pixels.toColor(this.pixel(index));
+    }
+    return new RGBColor(this.channel(index, 0), this.channel(index, 1), this.channel(index, 2));
+  }
+
+  // writes the clamped channels of the color to the pixel with the given number in dest
+  private void store(int[][] dest, int index, Color c) {
+    int r = clamp(c.getRed());
+    int g = clamp(c.getGreen());
+    int b = clamp(c.getBlue());
+    int[] page = dest[index >>> PAGE_SHIFT];
+    if (packed) {
+      page[index & PAGE_MASK] = Pixels.rgb(r, g, b);
+    } else {
+      int i = (index & PAGE_MASK) * 3;
+      page[i] = r;
+      page[i + 1] = g;
+      page[i + 2] = b;
+    }
   }
 
   private int clamp(int n) {
@@ -145,18 +703,65 @@ public class Image implements ImageTransform {
         && this.maxValue == that.getMaxValue())) {
       return false;
     }
+    if (that instanceof Image) {
+      return this.samePixels((Image) that);
+    }
     for (int row = 0; row < height; row += 1) {
       for (int col = 0; col < width; col += 1) {
-        if (!this.pane[row][col].equals(that.getColorAt(row, col))) {
+        if (!this.load(this.index(row, col)).equals(that.getColorAt(row, col))) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  // compares the pixels of two images with the same dimensions and max value
+  private boolean samePixels(Image that) {
+    if (this.pages == that.pages && this.offset == that.offset
+        && this.rowStride == that.rowStride && this.colStride == that.colStride) {
+      return true;
+    }
+    if (this.isContiguous() && that.isContiguous()) {
+      for (int p = 0; p < pages.length; p += 1) {
+        if (this.pages[p] != that.pages[p] && !Arrays.equals(this.pages[p], that.pages[p])) {
           return false;
         }
       }
+      return true;
+    }
+    for (int row = 0; row < height; row += 1) {
+      for (int col = 0; col < width; col += 1) {
+        int i = this.index(row, col);
+        int j = that.index(row, col);
+        if (packed) {
+          if (this.pixel(i) != that.pixel(j)) {
+            return false;
+          }
+          continue;
+        }
+        for (int channel = 0; channel < 3; channel += 1) {
+          if (this.channel(i, channel) != that.channel(j, channel)) {
+            return false;
+          }
+        }
+      }
     }
     return true;
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(height, width, maxValue, Arrays.deepHashCode(pane));
+    // the same as Arrays.deepHashCode over a grid of opaque RGBColors
+    int gridHash = 1;
+    for (int row = 0; row < height; row += 1) {
+      int rowHash = 1;
+      for (int col = 0; col < width; col += 1) {
+        Color c = this.load(this.index(row, col));
+        rowHash = 31 * rowHash + Objects.hash(c.getRed(), c.getGreen(), c.getBlue(), 255);
+      }
+      gridHash = 31 * gridHash + rowHash;
+    }
+    return Objects.hash(height, width, maxValue, gridHash);
   }
 }
@@ -1,6 +1,10 @@
 package model;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import model.macros.Macro;
+import model.macros.MaskRegion;
 
 /**
  * Represents the model that contains, manages, and works on images.
@@ -18,6 +22,60 @@ public interface ImageProcessingModel extends ImageProcessingState {
    */
   void createImage(Color[][] colors, String name, int maxValue) throws IllegalArgumentException;
 
+  /**
+   * Adds an image that has already been built to the map that the Model uses, under the name
+   * provided. By default this copies the image into a color array and creates it from that.
+   *
+   * @param image the image to add
+   * @param name  the name of the image
+   * @throws IllegalArgumentException if the image or name is null
+   */
+  default void addImage(ImageTransform image, String name) throws IllegalArgumentException {
+    if (image == null) {
+      throw new IllegalArgumentException("Image cannot be null.");
+    }
+    Color[][] colors = new Color[image.getHeight()][image.getWidth()];
+    for (int row = 0; row < colors.length; row += 1) {
+      for (int col = 0; col < colors[row].length; col += 1) {
+        colors[row][col] = image.getColorAt(row, col);
+      }
+    }
+    this.createImage(colors, name, image.getMaxValue());
+  }
+
+  /**
+   * Forgets the image with the given name, so that the memory it takes can be freed once nothing
+   * else uses it. Nothing happens if there is no image with the name. By default the image is
+   * kept, as a model need not be able to forget images.
+   *
+   * @param name the name of the image
+   */
+  default void removeImage(String name) {
+    // keep every image
+  }
+
+  /**
+   * Gets the pixels the image with the given name selects as a mask (see
+   * {@link model.macros.Mask}). The model may keep what it works out, so that masking by the same
+   * image again does not work it out again, until the image with the name is replaced.
+   *
+   * @param name the name of the mask image
+   * @return the pixels the mask selects
+   * @throws IllegalArgumentException if there is no image with the name
+   */
+  default MaskRegion getMaskRegion(String name) throws IllegalArgumentException {
+    return MaskRegion.of(this.getImage(name));
+  }
+
+  /**
+   * Describes how the images are stored, such as how many of them are kept in memory.
+   *
+   * @return the lines of the description (none by default)
+   */
+  default List<String> storageSummary() {
+    return new ArrayList<>();
+  }
+
   /**
    * Run this command on the image stored in the map with this target name and give the result a
    * new name.
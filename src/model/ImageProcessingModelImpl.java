@@ -1,23 +1,96 @@
 package model;
 
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import model.macros.Macro;
+import model.macros.MaskRegion;
 
 /**
- * An implementation of the ImageProcessingModel. It stores the images on a map and works with them.
+ * An implementation of the ImageProcessingModel. It stores the images in an image store (which may
+ * keep only some of them in memory) and works with them. Running a macro equal to one already run
+ * on the same image gives back the result from before (see {@link MacroCache}). Commands on
+ * different images may be run from several threads at once. Images made from others share the
+ * storage of the pixels that did not change (see {@link Image}), and the storage summary tells
+ * how much of each image is its own and how much is shared.
  */
 public class ImageProcessingModelImpl implements ImageProcessingModel {
+  // INVARIANT: Non-null
+  private final ImageStore images;
+  // INVARIANT: Non-null
+  private final MacroCache results;
+  // The masks worked out from images, by the name of the image
   // INVARIANT: keys cannot be null
   // INVARIANT: values cannot be null
-  private final Map<String, ImageTransform> images;
+  private final Map<String, CompiledMask> masks;
+  // The number of the last write to each name that has ever been written
+  // INVARIANT: keys cannot be null
+  // INVARIANT: values cannot be null, and only grow
+  private final Map<String, Long> versions;
+  // The number of writes to names so far
+  // INVARIANT: Non-null
+  private final AtomicLong writes;
 
   /**
-   * The constructor for the model. Start with no images saved.
+   * The constructor for the model. Start with no images saved, keeping every image in memory.
    */
   public ImageProcessingModelImpl() {
-    this.images = new HashMap<>();
+    this(new ImageStore());
+  }
+
+  /**
+   * The constructor for the model. Start with the images in the given store.
+   *
+   * @param images the store to keep the images in
+   * @throws IllegalArgumentException if the store is null
+   */
+  public ImageProcessingModelImpl(ImageStore images) throws IllegalArgumentException {
+    this(images, new MacroCache());
+  }
+
+  /**
+   * The constructor for the model. Start with the images in the given store, and the results of
+   * macros in the given cache.
+   *
+   * @param images  the store to keep the images in
+   * @param results the cache to keep the results of macros in
+   * @throws IllegalArgumentException if the store or cache is null
+   */
+  public ImageProcessingModelImpl(ImageStore images, MacroCache results)
+      throws IllegalArgumentException {
+    if (images == null) {
+      throw new IllegalArgumentException("Image store cannot be null.");
+    }
+    if (results == null) {
+      throw new IllegalArgumentException("Macro cache cannot be null.");
+    }
+    this.images = images;
+    this.results = results;
+    this.masks = new ConcurrentHashMap<>();
+    this.versions = new ConcurrentHashMap<>();
+    this.writes = new AtomicLong();
+  }
+
+  // A mask worked out from an image. It keeps no reference to the image, which may be spilled
+  // (see ImageStore), only the version of the name it was worked out from.
+  private static class CompiledMask {
+    // The version of the name when its image was read (which is only still right if the name has
+    // not been written since)
+    private final long version;
+    private final MaskRegion region;
+
+    CompiledMask(long version, MaskRegion region) {
+      this.version = version;
+      this.region = region;
+    }
   }
 
   @Override
@@ -27,6 +100,27 @@ public class ImageProcessingModelImpl implements ImageProcessingModel {
       throw new IllegalArgumentException("String name cannot be null.");
     }
     this.images.put(name, new Image(colors, maxValue));
+    this.written(name);
+  }
+
+  @Override
+  public void addImage(ImageTransform image, String name) throws IllegalArgumentException {
+    if (image == null) {
+      throw new IllegalArgumentException("Image cannot be null.");
+    }
+    if (name == null) {
+      throw new IllegalArgumentException("String name cannot be null.");
+    }
+    this.images.put(name, image);
+    this.written(name);
+  }
+
+  @Override
+  public void removeImage(String name) {
+    this.images.remove(name);
+    if (name != null) {
+      this.written(name);
+    }
   }
 
   @Override
@@ -40,24 +134,128 @@ public class ImageProcessingModelImpl implements ImageProcessingModel {
     if (newName == null) {
       throw new IllegalArgumentException("New String name cannot be null.");
     }
-    if (!this.images.containsKey(target)) {
+    ImageTransform source = this.images.get(target);
+    if (source == null) {
       throw new IllegalArgumentException("Unknown image.");
     }
-    ImageTransform result = command.execute(this.images.get(target));
+    ImageTransform result = this.results.run(command, source);
     if (result == null) {
       throw new IllegalArgumentException("Macro did not return an image");
     }
     this.images.put(newName, result);
+    this.written(newName);
   }
 
   @Override
   public ImageState getImage(String name) {
-    if (!this.images.containsKey(name)) {
+    ImageTransform image = this.images.get(name);
+    if (image == null) {
       throw new IllegalArgumentException("Unknown image.");
     }
-    if (name == null) {
-      throw new IllegalArgumentException("String name cannot be null.");
+    return new ObservableImage(image);
+  }
+
+  @Override
+  public MaskRegion getMaskRegion(String name) throws IllegalArgumentException {
+    // the version is read before the image, so a write in between only makes the mask look stale
+    long version = name == null ? 0 : this.versions.getOrDefault(name, 0L);
+    ImageTransform image = this.images.get(name);
+    if (image == null) {
+      throw new IllegalArgumentException("Unknown image.");
+    }
+    CompiledMask mask = this.masks.get(name);
+    if (mask == null || mask.version != version) {
+      mask = new CompiledMask(version, MaskRegion.of(image));
+      this.masks.put(name, mask);
+    }
+    return mask.region;
+  }
+
+  // also gives the bytes of each image in memory that are its own and that are shared
+  @Override
+  public List<String> storageSummary() {
+    List<String> lines = this.images.summary();
+    lines.addAll(this.results.summary());
+    for (Map.Entry<String, long[]> entry : this.storageBytes().entrySet()) {
+      lines.add(String.format(Locale.ROOT, "%s: %.1f MB unique, %.1f MB shared", entry.getKey(),
+          entry.getValue()[0] / 1e6, entry.getValue()[1] / 1e6));
+    }
+    return lines;
+  }
+
+  /**
+   * Gets the number of bytes of the pixels of the image that no other image in the model shares.
+   * Images that are not in memory (see {@link ImageStore}) or are mapped from files (see
+   * {@link MappedImage}) hold none.
+   *
+   * @param name the name of the image
+   * @return the number of bytes
+   * @throws IllegalArgumentException if there is no image with the name
+   */
+  public long getUniqueBytes(String name) throws IllegalArgumentException {
+    return this.storageBytes(name)[0];
+  }
+
+  /**
+   * Gets the number of bytes of the pixels of the image that are shared with other images in the
+   * model (such as the unchanged parts of an image it was made from, or that were made from it).
+   * Images that are not in memory (see {@link ImageStore}) hold none.
+   *
+   * @param name the name of the image
+   * @return the number of bytes
+   * @throws IllegalArgumentException if there is no image with the name
+   */
+  public long getSharedBytes(String name) throws IllegalArgumentException {
+    return this.storageBytes(name)[1];
+  }
+
+  // records that the name has been written, forgetting the mask worked out from its old image
+  private void written(String name) {
+    this.versions.put(name, this.writes.incrementAndGet());
+    this.masks.remove(name);
+  }
+
+  // the unique and shared bytes of the image with the name
+  private long[] storageBytes(String name) throws IllegalArgumentException {
+    if (!this.images.contains(name)) {
+      throw new IllegalArgumentException("Unknown image.");
+    }
+    return this.storageBytes().getOrDefault(name, new long[2]);
+  }
+
+  // the unique and shared bytes of every image in memory, by name (counting the pages of images
+  // by how many images use them, mapped images as holding none, and other images as unique)
+  private Map<String, long[]> storageBytes() {
+    Map<String, ImageTransform> held = this.images.getHeldImages();
+    Map<int[], Integer> users = new IdentityHashMap<>();
+    for (ImageTransform image : held.values()) {
+      for (int[] page : pages(image)) {
+        users.merge(page, 1, Integer::sum);
+      }
+    }
+    Map<String, long[]> bytes = new LinkedHashMap<>();
+    for (Map.Entry<String, ImageTransform> entry : held.entrySet()) {
+      ImageTransform image = entry.getValue();
+      long[] counts = new long[2];
+      if (image instanceof Image) {
+        for (int[] page : pages(image)) {
+          counts[users.get(page) > 1 ? 1 : 0] += page.length * 4L;
+        }
+      } else if (!(image instanceof MappedImage)) {
+        counts[0] = (long) image.getHeight() * image.getWidth()
+            * (Pixels.isPackable(image.getMaxValue()) ? 4 : 12);
+      }
+      bytes.put(entry.getKey(), counts);
+    }
+    return bytes;
+  }
+
+  // the different pages of the image (none if it is not an image that stores them)
+  private static Set<int[]> pages(ImageTransform image) {
+    Set<int[]> pages = Collections.newSetFromMap(new IdentityHashMap<>());
+    if (image instanceof Image) {
+      pages.addAll(Arrays.asList(((Image) image).getPages()));
     }
-    return new ObservableImage(this.images.get(name));
+    return pages;
   }
 }
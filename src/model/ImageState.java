@@ -32,6 +32,53 @@ public interface ImageState {
    */
   Color getColorAt(int row, int col) throws IllegalArgumentException;
 
+  /**
+   * Returns the color at a specific position packed into an int (see {@link Pixels}). Channels
+   * above 255 are saturated, so this is only exact for images with a max value of at most 255.
+   *
+   * @return the packed pixel at a specific position
+   */
+  default int getPixelAt(int row, int col) throws IllegalArgumentException {
+    return Pixels.argb(this.getColorAt(row, col));
+  }
+
+  /**
+   * Copies a whole row of the image into the given array as packed pixels (see
+   * {@link #getPixelAt(int, int)}).
+   *
+   * @param row  the row to copy
+   * @param dest the array to copy the row into, at least as long as the width
+   * @throws IllegalArgumentException if the row is out of bounds or the array is too short
+   */
+  default void getPixelRow(int row, int[] dest) throws IllegalArgumentException {
+    if (dest == null || dest.length < this.getWidth()) {
+      throw new IllegalArgumentException("Row array is too short.");
+    }
+    for (int col = 0; col < this.getWidth(); col += 1) {
+      dest[col] = this.getPixelAt(row, col);
+    }
+  }
+
+  /**
+   * Copies the channels of a whole row of the image into the given array, as red, green, and blue
+   * for each pixel in turn. Unlike packed pixels, this is exact for any max value.
+   *
+   * @param row  the row to copy
+   * @param dest the array to copy the channels into, at least 3 times as long as the width
+   * @throws IllegalArgumentException if the row is out of bounds or the array is too short
+   */
+  default void getChannelRow(int row, int[] dest) throws IllegalArgumentException {
+    if (dest == null || dest.length < this.getWidth() * 3) {
+      throw new IllegalArgumentException("Row array is too short.");
+    }
+    for (int col = 0; col < this.getWidth(); col += 1) {
+      Color c = this.getColorAt(row, col);
+      dest[col * 3] = c.getRed();
+      dest[col * 3 + 1] = c.getGreen();
+      dest[col * 3 + 2] = c.getBlue();
+    }
+  }
+
   /**
    * Checks if two images are same. It first checks if the two objects have the same reference and
    * returns true if they do. If they don't then it checks if it's an instance of the ImageState
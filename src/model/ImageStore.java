@@ -0,0 +1,489 @@
+package model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Holds the images of a model by name, keeping the pixels of at most a given number of bytes of
+ * them on the heap. Once the images held go over the budget, the least recently used ones are
+ * written to temporary files and dropped from memory, and are read back the next time they are
+ * asked for. A file is deleted as soon as its image is replaced or removed, and any files left
+ * are deleted when the program exits. Images never change, so the file of an image that is read
+ * back is kept until the image is replaced or removed, and dropping it again costs nothing. The
+ * image used most recently is always kept in memory, even if it alone is over the budget.
+ *
+ * <p>Packed images are written with three bytes per pixel (as binary PPM files are), and deeper
+ * images with four bytes per channel. Note that the memory of a dropped image is only freed if
+ * nothing else (such as an image that is a flip or crop of it, or that shares pages with it, see
+ * {@link Image}) still holds its pixels, and that the budget counts every image as if it held
+ * all of its pixels alone. Images mapped from files (see {@link MappedImage}) keep their pixels in
+ * their files, so they take none of the budget and are never written out.</p>
+ */
+public final class ImageStore {
+  // The size of the buffer that spilled images are written and read through
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  // The temporary directory that every store writes its files to, once one has been made
+  private static Path spillDirectory;
+
+  // INVARIANT: Is positive
+  private final long budget;
+  // The images by name, from least to most recently used
+  // INVARIANT: keys cannot be null
+  // INVARIANT: values cannot be null
+  private final LinkedHashMap<String, Entry> images;
+  // The number of bytes of the images held in memory
+  // INVARIANT: Is the sum of the bytes of every entry with an image
+  private long heldBytes;
+  // The number of bytes of the images being written to files, to be dropped once they are
+  // INVARIANT: Is the sum of the bytes of every entry being written
+  private long spilling;
+  private long hits;
+  private long misses;
+  private long spills;
+  private long bytesWritten;
+  private long bytesRead;
+
+  /**
+   * Constructs a store with no images that keeps every image in memory.
+   */
+  public ImageStore() {
+    this(Long.MAX_VALUE);
+  }
+
+  /**
+   * Constructs a store with no images that keeps at most the given number of bytes of images in
+   * memory.
+   *
+   * @param budget the number of bytes
+   * @throws IllegalArgumentException if the budget is not positive
+   */
+  public ImageStore(long budget) throws IllegalArgumentException {
+    if (budget < 1) {
+      throw new IllegalArgumentException("Budget must be positive.");
+    }
+    this.budget = budget;
+    this.images = new LinkedHashMap<>(16, 0.75f, true);
+  }
+
+  // An image held by the store, in memory or in a file or both
+  private static class Entry {
+    private final int height;
+    private final int width;
+    private final int maxValue;
+    private final long bytes;
+    // INVARIANT: At least one of image and file is not null, unless the entry was forgotten
+    private ImageTransform image;
+    // INVARIANT: Is never changed once set, until the entry is forgotten
+    private Path file;
+    private long fileBytes;
+    // Whether the image was replaced or removed from the store
+    private boolean forgotten;
+    // The number of threads reading or writing the file of the entry, which is only deleted once
+    // none are
+    // INVARIANT: Is non-negative
+    private int busy;
+    // Whether a thread is writing the image to a file
+    private boolean writing;
+
+    Entry(ImageTransform image) {
+      this.height = image.getHeight();
+      this.width = image.getWidth();
+      this.maxValue = image.getMaxValue();
+      // (the pixels of a mapped image are in its file, and are never spilled)
+      this.bytes = image instanceof MappedImage ? 0
+          : (long) height * width * (Pixels.isPackable(maxValue) ? 4 : 12);
+      this.image = image;
+    }
+  }
+
+  /**
+   * Gets the image with the given name, reading it back from its file if it is not in memory.
+   * Files are read and written without holding the store, so that other images can be used
+   * meanwhile, and an image that several threads ask for is still only read back once.
+   *
+   * @param name the name of the image
+   * @return the image, or null if there is no image with the name
+   * @throws IllegalStateException if the image cannot be read back
+   */
+  public ImageTransform get(String name) throws IllegalStateException {
+    Entry entry;
+    synchronized (this) {
+      entry = name == null ? null : this.images.get(name);
+      if (entry == null) {
+        return null;
+      }
+      if (entry.image != null) {
+        this.hits += 1;
+        return entry.image;
+      }
+      entry.busy += 1;
+    }
+    ImageTransform image = null;
+    try {
+      // (only one thread reads an entry back at a time, and the others wait for its image)
+      synchronized (entry) {
+        synchronized (this) {
+          image = entry.image;
+          if (image == null) {
+            this.misses += 1;
+          }
+        }
+        if (image == null) {
+          image = this.read(entry);
+          synchronized (this) {
+            this.bytesRead += entry.fileBytes;
+            if (!entry.forgotten) {
+              entry.image = image;
+              this.heldBytes += entry.bytes;
+            }
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to read back image.", e);
+    } finally {
+      this.release(entry);
+    }
+    this.spill();
+    return image;
+  }
+
+  /**
+   * Gives the image the name, replacing any image that had it.
+   *
+   * @param name  the name of the image
+   * @param image the image
+   * @throws IllegalArgumentException if the name or image is null
+   */
+  public void put(String name, ImageTransform image) throws IllegalArgumentException {
+    if (name == null) {
+      throw new IllegalArgumentException("String name cannot be null.");
+    }
+    if (image == null) {
+      throw new IllegalArgumentException("Image cannot be null.");
+    }
+    Entry entry = new Entry(image);
+    Path stale;
+    synchronized (this) {
+      stale = this.forget(this.images.put(name, entry));
+      this.heldBytes += entry.bytes;
+    }
+    delete(stale);
+    this.spill();
+  }
+
+  /**
+   * Forgets the image with the given name, if there is one.
+   *
+   * @param name the name of the image
+   */
+  public void remove(String name) {
+    if (name != null) {
+      Path stale;
+      synchronized (this) {
+        stale = this.forget(this.images.remove(name));
+      }
+      delete(stale);
+    }
+  }
+
+  /**
+   * Checks if there is an image with the given name, in memory or not.
+   *
+   * @param name the name of the image
+   * @return true if there is an image with the name
+   */
+  public synchronized boolean contains(String name) {
+    return name != null && this.images.containsKey(name);
+  }
+
+  /**
+   * Gets the images that are in memory, without reading back any that are not, or counting as
+   * using them.
+   *
+   * @return the images by name, from least to most recently used
+   */
+  public synchronized Map<String, ImageTransform> getHeldImages() {
+    Map<String, ImageTransform> held = new LinkedHashMap<>();
+    for (Map.Entry<String, Entry> entry : this.images.entrySet()) {
+      if (entry.getValue().image != null) {
+        held.put(entry.getKey(), entry.getValue().image);
+      }
+    }
+    return held;
+  }
+
+  /**
+   * Describes how many images are in memory and how often they have been dropped and read back.
+   *
+   * @return the lines of the description
+   */
+  public synchronized List<String> summary() {
+    long held = this.images.values().stream().filter(entry -> entry.image != null).count();
+    List<String> lines = new ArrayList<>();
+    lines.add(String.format(Locale.ROOT, "%d of %d images in memory (%.1f MB%s)", held,
+        this.images.size(), this.heldBytes / 1e6, this.budget == Long.MAX_VALUE ? ""
+            : String.format(Locale.ROOT, " of %.1f MB", this.budget / 1e6)));
+    lines.add(String.format(Locale.ROOT, "%d hits, %d misses (%.1f MB read back)", this.hits,
+        this.misses, this.bytesRead / 1e6));
+    lines.add(String.format(Locale.ROOT, "%d spills (%.1f MB written)", this.spills,
+        this.bytesWritten / 1e6));
+    return lines;
+  }
+
+  /**
+   * Gets the number of times an image was asked for while in memory.
+   *
+   * @return the number of hits
+   */
+  public synchronized long getHits() {
+    return this.hits;
+  }
+
+  /**
+   * Gets the number of times an image was asked for while not in memory, and was read back.
+   *
+   * @return the number of misses
+   */
+  public synchronized long getMisses() {
+    return this.misses;
+  }
+
+  /**
+   * Gets the number of times an image was dropped from memory.
+   *
+   * @return the number of spills
+   */
+  public synchronized long getSpills() {
+    return this.spills;
+  }
+
+  /**
+   * Gets the number of bytes of the images in memory (as the size of their pixels).
+   *
+   * @return the number of bytes
+   */
+  public synchronized long getHeldBytes() {
+    return this.heldBytes;
+  }
+
+  // drops the least recently used images from memory until the rest fit in the budget, keeping
+  // the most recently used image (images are written to their files without holding the store)
+  private void spill() {
+    // the entries that could not be written, which are kept in memory rather than lost
+    List<Entry> failed = new ArrayList<>();
+    while (true) {
+      Entry entry;
+      ImageTransform image;
+      synchronized (this) {
+        entry = this.nextToSpill(failed);
+        if (entry == null) {
+          return;
+        }
+        if (entry.file != null) {
+          // it was written before, so it can be dropped straight away
+          this.drop(entry);
+          continue;
+        }
+        image = entry.image;
+        entry.writing = true;
+        entry.busy += 1;
+        this.spilling += entry.bytes;
+      }
+      Path file = null;
+      try {
+        file = this.write(entry, image);
+      } catch (IOException e) {
+        failed.add(entry);
+      }
+      synchronized (this) {
+        entry.writing = false;
+        this.spilling -= entry.bytes;
+        if (file != null) {
+          entry.file = file;
+          this.bytesWritten += entry.fileBytes;
+          // (it is kept if it was removed, or has since become the most recently used image)
+          if (entry.image != null && !entry.forgotten && entry != this.mostRecent()) {
+            this.drop(entry);
+          }
+        }
+      }
+      this.release(entry);
+    }
+  }
+
+  // the least recently used image in memory that can be dropped, if the images in memory (less
+  // those being written out) are over the budget, or null otherwise
+  private Entry nextToSpill(List<Entry> failed) {
+    Iterator<Entry> entries = this.images.values().iterator();
+    int left = this.images.size();
+    while (this.heldBytes - this.spilling > this.budget && left > 1) {
+      Entry entry = entries.next();
+      left -= 1;
+      if (entry.image != null && !(entry.image instanceof MappedImage) && !entry.writing
+          && !failed.contains(entry)) {
+        return entry;
+      }
+    }
+    return null;
+  }
+
+  // the most recently used image
+  private Entry mostRecent() {
+    Entry last = null;
+    for (Entry entry : this.images.values()) {
+      last = entry;
+    }
+    return last;
+  }
+
+  // drops the image of the entry from memory, keeping its file
+  private void drop(Entry entry) {
+    entry.image = null;
+    this.heldBytes -= entry.bytes;
+    this.spills += 1;
+  }
+
+  // marks the entry as no longer held, giving the file to delete once no thread is reading or
+  // writing it (or null if there is none yet)
+  private Path forget(Entry entry) {
+    if (entry == null) {
+      return null;
+    }
+    entry.forgotten = true;
+    if (entry.image != null) {
+      this.heldBytes -= entry.bytes;
+      entry.image = null;
+    }
+    return entry.busy == 0 ? entry.file : null;
+  }
+
+  // ends a read or write of the file of the entry, deleting the file if the entry was forgotten
+  // meanwhile and no other thread is using it
+  private void release(Entry entry) {
+    Path stale;
+    synchronized (this) {
+      entry.busy -= 1;
+      stale = entry.forgotten && entry.busy == 0 ? entry.file : null;
+    }
+    delete(stale);
+  }
+
+  // deletes the file, if there is one
+  private static void delete(Path file) {
+    if (file != null) {
+      try {
+        Files.deleteIfExists(file);
+      } catch (IOException e) {
+        // it is deleted with the spill directory on exit instead
+      }
+    }
+  }
+
+  // writes the pixels of the image of the entry, a row at a time, to a new temporary file
+  private Path write(Entry entry, ImageTransform image) throws IOException {
+    Path path = Files.createTempFile(spillDirectory(), "image", ".spill");
+    boolean packed = Pixels.isPackable(entry.maxValue);
+    int[] row = new int[entry.width * 3];
+    ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+      for (int r = 0; r < entry.height; r += 1) {
+        if (packed) {
+          image.getPixelRow(r, row);
+          for (int c = 0; c < entry.width; c += 1) {
+            if (buffer.remaining() < 3) {
+              drain(buffer, channel);
+            }
+            buffer.put((byte) Pixels.red(row[c])).put((byte) Pixels.green(row[c]))
+                .put((byte) Pixels.blue(row[c]));
+          }
+        } else {
+          image.getChannelRow(r, row);
+          for (int c = 0; c < entry.width * 3; c += 1) {
+            if (buffer.remaining() < 4) {
+              drain(buffer, channel);
+            }
+            buffer.putInt(row[c]);
+          }
+        }
+      }
+      drain(buffer, channel);
+      entry.fileBytes = channel.size();
+    } catch (IOException e) {
+      Files.deleteIfExists(path);
+      throw e;
+    }
+    return path;
+  }
+
+  // reads the pixels of the image of the entry back from its file
+  private ImageTransform read(Entry entry) throws IOException {
+    boolean packed = Pixels.isPackable(entry.maxValue);
+    int[][] pages = Image.newPages(entry.height, entry.width, entry.maxValue);
+    ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    buffer.flip();
+    try (FileChannel channel = FileChannel.open(entry.file, StandardOpenOption.READ)) {
+      for (int[] page : pages) {
+        for (int i = 0; i < page.length; i += 1) {
+          if (buffer.remaining() < (packed ? 3 : 4)) {
+            buffer.compact();
+            while (buffer.position() < (packed ? 3 : 4)) {
+              if (channel.read(buffer) < 0) {
+                throw new IOException("Spilled image is too short.");
+              }
+            }
+            buffer.flip();
+          }
+          page[i] = packed ? Pixels.rgb(buffer.get() & 0xff, buffer.get() & 0xff,
+              buffer.get() & 0xff) : buffer.getInt();
+        }
+      }
+    }
+    return Image.fromPages(pages, entry.height, entry.width, entry.maxValue);
+  }
+
+  // the temporary directory to write files to, made the first time it is needed and deleted
+  // (along with any files left in it) when the program exits, so that the program only keeps one
+  // path to delete rather than one for every file
+  private static synchronized Path spillDirectory() throws IOException {
+    if (spillDirectory == null || !Files.isDirectory(spillDirectory)) {
+      Path directory = Files.createTempDirectory("images");
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> deleteDirectory(directory)));
+      spillDirectory = directory;
+    }
+    return spillDirectory;
+  }
+
+  // deletes the directory and the files in it, as far as it can
+  private static void deleteDirectory(Path directory) {
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+      for (Path file : files) {
+        Files.deleteIfExists(file);
+      }
+      Files.deleteIfExists(directory);
+    } catch (IOException e) {
+      // the operating system cleans up temporary files in the end
+    }
+  }
+
+  // writes everything in the buffer to the channel, leaving the buffer empty
+  private static void drain(ByteBuffer buffer, FileChannel channel) throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+}
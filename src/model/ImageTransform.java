@@ -14,4 +14,64 @@ public interface ImageTransform extends ImageState {
    *                                  value or below 0.
    */
   ImageTransform transform(ColorFunction map) throws IllegalArgumentException;
+
+  /**
+   * To transform the image we currently have into a new image, working on packed pixels rather
+   * than colors. This is only supported by images whose pixels can be packed.
+   *
+   * @param map the function that we wish to change this image with
+   * @return a new image with the necessary changes
+   * @throws IllegalArgumentException if the function is null or the max value of this image is
+   *                                  above {@link Pixels#MAX_PACKED}
+   */
+  ImageTransform transformPixels(PixelFunction map) throws IllegalArgumentException;
+
+  /**
+   * To create a new image of the same size by computing bands of its rows at once, as packed
+   * pixels. This is only supported by images whose pixels can be packed.
+   *
+   * @param map the function that computes the rows of the new image
+   * @return a new image with the computed rows
+   * @throws IllegalArgumentException if the function is null or the max value of this image is
+   *                                  above {@link Pixels#MAX_PACKED}
+   */
+  ImageTransform transformRows(RowsFunction map) throws IllegalArgumentException;
+
+  /**
+   * To get this image flipped horizontally (its mirror image). The new image may share the pixels
+   * of this image rather than copying them.
+   *
+   * @return the flipped image
+   */
+  ImageTransform flipHorizontal();
+
+  /**
+   * To get this image flipped vertically (upside down). The new image may share the pixels of
+   * this image rather than copying them.
+   *
+   * @return the flipped image
+   */
+  ImageTransform flipVertical();
+
+  /**
+   * To get this image rotated clockwise by a number of quarter turns (negative for
+   * counterclockwise). The new image may share the pixels of this image rather than copying them.
+   *
+   * @param quarterTurns the number of 90 degree turns clockwise
+   * @return the rotated image
+   */
+  ImageTransform rotate(int quarterTurns);
+
+  /**
+   * To get a rectangular region of this image. The new image may share the pixels of this image
+   * rather than copying them.
+   *
+   * @param row    the row of the top left corner of the region
+   * @param col    the column of the top left corner of the region
+   * @param height the height of the region
+   * @param width  the width of the region
+   * @return the region of the image
+   * @throws IllegalArgumentException if the region is not within the image
+   */
+  ImageTransform crop(int row, int col, int height, int width) throws IllegalArgumentException;
 }
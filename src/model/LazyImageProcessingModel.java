@@ -0,0 +1,237 @@
+package model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import model.macros.Macro;
+import model.macros.MacroChain;
+import model.macros.MaskRegion;
+import model.macros.PixelOperation;
+
+/**
+ * An implementation of the ImageProcessingModel that defers running macros. Running a command
+ * only records a recipe (the macro and the image it runs on), and the pixels of an image are
+ * worked out the first time the image is asked for, along with whichever images it is made from
+ * that have not been worked out yet. Images that are never asked for (or that nothing asked for
+ * is made from) are never worked out. Each recipe is worked out at most once, and running the
+ * same macro on the same image again shares the recipe that is already there, so shared steps of
+ * a script only run once.
+ *
+ * <p>Images that have no name any more (they were removed, or their name was given to another
+ * image) and that only one other image is made from are never built when they only look at each
+ * pixel on its own: consecutive commands like sepia, a matrix transformation and brighten, whose
+ * results in between are named over, run in a single pass over the image (see
+ * {@link MacroChain}).</p>
+ *
+ * <p>Since macros run late, a macro that fails does so when its image is first asked for, rather
+ * than when its command is run. Commands and images may be run and asked for from several threads
+ * at once, and an image that several threads ask for is still only worked out once.</p>
+ */
+public class LazyImageProcessingModel implements ImageProcessingModel {
+  // INVARIANT: keys cannot be null
+  // INVARIANT: values cannot be null
+  private final Map<String, Recipe> images;
+
+  /**
+   * The constructor for the model. Start with no images saved.
+   */
+  public LazyImageProcessingModel() {
+    this.images = new HashMap<>();
+  }
+
+  // How an image is made: either it was given to the model, or it is a macro run on another image
+  private static class Recipe {
+    private final Macro macro;
+    // The recipe the macro runs on, until the image has been worked out (so that the image of the
+    // source can be freed once nothing else uses it)
+    // INVARIANT: Is null if the image has been worked out, and set otherwise
+    private volatile Recipe source;
+    // The recipes made from the same source as this one, that this one is kept in for sharing
+    // (null for images given to the model)
+    private final Map<Macro, Recipe> siblings;
+    // The image, once it has been worked out (always set for images given to the model)
+    private volatile ImageTransform image;
+    // The recipes made by running a macro on this image, by macro
+    private final Map<Macro, Recipe> derived;
+    // The number of names the recipe has in the model
+    private int names;
+    // The pixels the image selects as a mask, once they have been worked out
+    private volatile MaskRegion mask;
+
+    Recipe(Macro macro, Recipe source, ImageTransform image) {
+      this.macro = macro;
+      this.source = source;
+      this.siblings = source == null ? null : source.derived;
+      this.image = image;
+      this.derived = new HashMap<>();
+    }
+  }
+
+  @Override
+  public synchronized void createImage(Color[][] colors, String name, int maxValue)
+      throws IllegalArgumentException {
+    if (name == null) {
+      throw new IllegalArgumentException("String name cannot be null.");
+    }
+    this.name(name, new Recipe(null, null, new Image(colors, maxValue)));
+  }
+
+  @Override
+  public synchronized void addImage(ImageTransform image, String name)
+      throws IllegalArgumentException {
+    if (image == null) {
+      throw new IllegalArgumentException("Image cannot be null.");
+    }
+    if (name == null) {
+      throw new IllegalArgumentException("String name cannot be null.");
+    }
+    this.name(name, new Recipe(null, null, image));
+  }
+
+  @Override
+  public synchronized void runCommand(Macro command, String target, String newName) {
+    if (command == null) {
+      throw new IllegalArgumentException("Macro cannot be null.");
+    }
+    if (target == null) {
+      throw new IllegalArgumentException("String target cannot be null.");
+    }
+    if (newName == null) {
+      throw new IllegalArgumentException("New String name cannot be null.");
+    }
+    if (!this.images.containsKey(target)) {
+      throw new IllegalArgumentException("Unknown image.");
+    }
+    Recipe source = this.images.get(target);
+    this.name(newName,
+        source.derived.computeIfAbsent(command, macro -> new Recipe(macro, source, null)));
+  }
+
+  /**
+   * Forgets the image with the given name. Once no name is left for a recipe, running its macro
+   * on its source again makes a new recipe rather than sharing it, so that it can be freed.
+   *
+   * @param name the name of the image
+   */
+  @Override
+  public synchronized void removeImage(String name) {
+    this.name(name, null);
+  }
+
+  // gives the recipe the name (or takes the name away, if the recipe is null), dropping the recipe
+  // that had the name from the recipes shared with it if no other name is left for it
+  private void name(String name, Recipe recipe) {
+    if (recipe != null) {
+      recipe.names += 1;
+    }
+    Recipe old = recipe == null ? this.images.remove(name) : this.images.put(name, recipe);
+    if (old != null) {
+      old.names -= 1;
+      if (old.names == 0 && old.siblings != null) {
+        old.siblings.remove(old.macro, old);
+      }
+    }
+  }
+
+  @Override
+  public ImageState getImage(String name) {
+    // the lock is not held while macros run, so other images can be run and asked for meanwhile
+    return new ObservableImage(this.materialize(this.recipe(name)));
+  }
+
+  // keeps the mask with the recipe, so it is worked out again only when the name is given to
+  // another recipe
+  @Override
+  public MaskRegion getMaskRegion(String name) throws IllegalArgumentException {
+    Recipe recipe = this.recipe(name);
+    MaskRegion mask = recipe.mask;
+    if (mask == null) {
+      mask = MaskRegion.of(this.materialize(recipe));
+      recipe.mask = mask;
+    }
+    return mask;
+  }
+
+  // gets the recipe with the name
+  private synchronized Recipe recipe(String name) throws IllegalArgumentException {
+    Recipe recipe = name == null ? null : this.images.get(name);
+    if (recipe == null) {
+      throw new IllegalArgumentException("Unknown image.");
+    }
+    return recipe;
+  }
+
+  /**
+   * Checks if the pixels of the image with the given name have been worked out yet.
+   *
+   * @param name the name of the image
+   * @return true if the image has been worked out
+   * @throws IllegalArgumentException if there is no image with the name
+   */
+  public synchronized boolean isMaterialized(String name) throws IllegalArgumentException {
+    if (name == null || !this.images.containsKey(name)) {
+      throw new IllegalArgumentException("Unknown image.");
+    }
+    return this.images.get(name).image != null;
+  }
+
+  // works out the image of the recipe, and of every recipe it is made from that is not worked out
+  // yet, starting from the closest image that is (so long scripts do not recurse deeply)
+  private ImageTransform materialize(Recipe recipe) {
+    Deque<Recipe> pending = new ArrayDeque<>();
+    // (a source is only null here if another thread has just worked out the image it made)
+    for (Recipe next = recipe; next != null && next.image == null; next = next.source) {
+      pending.push(next);
+    }
+    // the macros of the recipes skipped so far, to run along with the next recipe, and the recipe
+    // whose image the first of them runs on
+    List<Macro> fused = new ArrayList<>();
+    Recipe start = null;
+    while (!pending.isEmpty()) {
+      Recipe next = pending.pop();
+      synchronized (next) {
+        // another thread may have worked it out while this one waited for it
+        if (next.image != null) {
+          fused.clear();
+          continue;
+        }
+        if (!pending.isEmpty() && this.canFuse(next, pending.peek())) {
+          if (fused.isEmpty()) {
+            start = next.source;
+          }
+          fused.add(next.macro);
+          continue;
+        }
+        ImageTransform result;
+        if (fused.isEmpty()) {
+          result = next.macro.execute(next.source.image);
+        } else {
+          fused.add(next.macro);
+          result = new MacroChain(fused.toArray(new Macro[0])).execute(start.image);
+          fused.clear();
+        }
+        if (result == null) {
+          throw new IllegalArgumentException("Macro did not return an image");
+        }
+        next.image = result;
+        next.source = null;
+      }
+    }
+    return recipe.image;
+  }
+
+  // whether the recipe is only worked out to make the one after it (it has no name, and nothing
+  // else is made from it), and both only look at each pixel on its own, so that they can be run
+  // in a single pass without building the image of the recipe (once a recipe has no name it never
+  // gets one again, so this stays true)
+  private synchronized boolean canFuse(Recipe recipe, Recipe after) {
+    return recipe.names == 0 && recipe.macro instanceof PixelOperation
+        && after.macro instanceof PixelOperation
+        && (recipe.derived.isEmpty()
+        || (recipe.derived.size() == 1 && recipe.derived.containsValue(after)));
+  }
+}
@@ -0,0 +1,205 @@
+package model;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import model.macros.Macro;
+
+/**
+ * Remembers the results of running macros on images, so that running an equal macro (see the
+ * equals method of each macro) on the same image again gives back the same result rather than
+ * running the macro again. Images never change, so the same image object always gives the same
+ * result. Results are shared, which is safe since they never change either.
+ *
+ * <p>At most a given number of bytes of results are kept, forgetting the least recently used
+ * results first. The images the results were made from are not kept alive by the cache: once
+ * nothing else uses an image, its results are forgotten too. Macros that do not define equality
+ * are only equal to themselves, so running the same macro object again still finds its result.
+ * </p>
+ */
+public final class MacroCache {
+  // The default share of the largest heap the results may take
+  private static final int DEFAULT_HEAP_SHARE = 8;
+
+  // INVARIANT: Is non-negative
+  private final long budget;
+  // The results by image and macro, from least to most recently used
+  // INVARIANT: keys cannot be null
+  // INVARIANT: values cannot be null
+  private final LinkedHashMap<Key, ImageTransform> results;
+  // The keys whose images are no longer used anywhere else
+  private final ReferenceQueue<ImageTransform> unused;
+  // The number of bytes of the results kept
+  // INVARIANT: Is the sum of the bytes of every result
+  private long heldBytes;
+  private long hits;
+  private long misses;
+
+  /**
+   * Constructs a cache with no results, that keeps results up to an eighth of the largest heap.
+   */
+  public MacroCache() {
+    this(Runtime.getRuntime().maxMemory() / DEFAULT_HEAP_SHARE);
+  }
+
+  /**
+   * Constructs a cache with no results, that keeps at most the given number of bytes of results.
+   *
+   * @param budget the number of bytes (0 to keep no results)
+   * @throws IllegalArgumentException if the budget is negative
+   */
+  public MacroCache(long budget) throws IllegalArgumentException {
+    if (budget < 0) {
+      throw new IllegalArgumentException("Budget cannot be negative.");
+    }
+    this.budget = budget;
+    this.results = new LinkedHashMap<>(16, 0.75f, true);
+    this.unused = new ReferenceQueue<>();
+  }
+
+  // A macro run on an image, holding the image weakly
+  private static class Key extends WeakReference<ImageTransform> {
+    private final Macro macro;
+    private final int hash;
+
+    Key(ImageTransform image, Macro macro, ReferenceQueue<ImageTransform> queue) {
+      super(image, queue);
+      this.macro = macro;
+      this.hash = 31 * System.identityHashCode(image) + macro.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (obj == this) {
+        return true;
+      }
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key that = (Key) obj;
+      ImageTransform image = this.get();
+      return image != null && image == that.get() && this.macro.equals(that.macro);
+    }
+
+    @Override
+    public int hashCode() {
+      return this.hash;
+    }
+  }
+
+  /**
+   * Runs the macro on the image, or gives back the result of an equal macro run on the same image
+   * before.
+   *
+   * @param macro the macro
+   * @param image the image to run it on
+   * @return the result of the macro (which may be null, if the macro gives null)
+   * @throws IllegalArgumentException if the macro or image is null, or the macro fails
+   */
+  public ImageTransform run(Macro macro, ImageTransform image) throws IllegalArgumentException {
+    if (macro == null) {
+      throw new IllegalArgumentException("Macro cannot be null.");
+    }
+    if (image == null) {
+      throw new IllegalArgumentException("Image cannot be null.");
+    }
+    Key key = new Key(image, macro, null);
+    synchronized (this) {
+      this.expunge();
+      ImageTransform result = this.results.get(key);
+      if (result != null) {
+        this.hits += 1;
+        return result;
+      }
+      this.misses += 1;
+    }
+    // the lock is not held while the macro runs (so two threads may both run it, which is only
+    // wasted work)
+    ImageTransform result = macro.execute(image);
+    long bytes = result == null ? 0 : bytes(result);
+    if (result != null && bytes <= this.budget) {
+      synchronized (this) {
+        ImageTransform old = this.results.put(new Key(image, macro, this.unused), result);
+        this.heldBytes += bytes - (old == null ? 0 : bytes(old));
+        this.evict();
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Describes how many results are kept and how often they were found.
+   *
+   * @return the lines of the description
+   */
+  public synchronized List<String> summary() {
+    this.expunge();
+    List<String> lines = new ArrayList<>();
+    lines.add(String.format(Locale.ROOT, "%d macro results cached (%.1f MB of %.1f MB)",
+        this.results.size(), this.heldBytes / 1e6, this.budget / 1e6));
+    lines.add(String.format(Locale.ROOT, "%d macro hits, %d macro misses", this.hits,
+        this.misses));
+    return lines;
+  }
+
+  /**
+   * Gets the number of times a result was found rather than run.
+   *
+   * @return the number of hits
+   */
+  public synchronized long getHits() {
+    return this.hits;
+  }
+
+  /**
+   * Gets the number of times a macro was run as no result was found.
+   *
+   * @return the number of misses
+   */
+  public synchronized long getMisses() {
+    return this.misses;
+  }
+
+  /**
+   * Gets the number of results kept.
+   *
+   * @return the number of results
+   */
+  public synchronized int size() {
+    this.expunge();
+    return this.results.size();
+  }
+
+  // forgets the least recently used results until the rest fit in the budget
+  private void evict() {
+    Iterator<Map.Entry<Key, ImageTransform>> entries = this.results.entrySet().iterator();
+    while (this.heldBytes > this.budget && entries.hasNext()) {
+      this.heldBytes -= bytes(entries.next().getValue());
+      entries.remove();
+    }
+  }
+
+  // forgets the results of images that are no longer used anywhere else
+  private void expunge() {
+    for (Reference<?> key = this.unused.poll(); key != null; key = this.unused.poll()) {
+      // the key is only equal to itself now, so it is found by identity
+      ImageTransform result = this.results.remove(key);
+      if (result != null) {
+        this.heldBytes -= bytes(result);
+      }
+    }
+  }
+
+  // the number of bytes the pixels of the image take (as images store them)
+  private static long bytes(ImageTransform image) {
+    return (long) image.getHeight() * image.getWidth()
+        * (Pixels.isPackable(image.getMaxValue()) ? 4 : 12);
+  }
+}
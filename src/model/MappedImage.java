@@ -0,0 +1,350 @@
+package model;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * An immutable image whose pixels are read straight from a buffer of ints rather than copied onto
+ * the heap, such as a buffer mapped from an image file (see {@code controller.io.IPRFile}). Making
+ * one takes no time however large the image, and the operating system only reads the parts of the
+ * file that are used, when they are first used. The pixels are laid out the way {@link Image}
+ * stores them: packed into one int each (see {@link Pixels}) for max values up to 255, and as
+ * three ints (red, green, blue) otherwise, a row at a time from the top.
+ *
+ * <p>The pixels are clamped to the max value as they are read, so a buffer holding channels out
+ * of range cannot give an invalid image. Flips, rotations, and crops share the buffer like those
+ * of an {@link Image} do, and transforming the image gives an {@link Image} with its own pixels.
+ * The buffer must not change while the image is in use.</p>
+ */
+public final class MappedImage implements ImageTransform {
+  // INVARIANT: Is a non-negative integer
+  private final int height;
+  // INVARIANT: Is a non-negative integer
+  private final int width;
+  // INVARIANT: Is a positive integer
+  private final int maxValue;
+  // The pixels, with a pixel in every int if packed, and in every 3 ints otherwise
+  // INVARIANT: Non-null, and is never changed through this image
+  private final IntBuffer pixels;
+  // INVARIANT: Is Pixels.isPackable(maxValue)
+  private final boolean packed;
+  // The pixel at (row, col) is pixel number offset + row * rowStride + col * colStride in pixels
+  // INVARIANT: Every row and column of the image is within pixels
+  private final int offset;
+  private final int rowStride;
+  private final int colStride;
+
+  /**
+   * Constructs an image that reads its pixels from the buffer, from its position to its limit.
+   *
+   * @param pixels   the pixels of the image
+   * @param height   the height of the image
+   * @param width    the width of the image
+   * @param maxValue the max value for the channels
+   * @throws IllegalArgumentException if the pixels are null or do not have the length of the
+   *                                  image, the dimensions are negative, or the maxValue is not
+   *                                  positive
+   */
+  public MappedImage(IntBuffer pixels, int height, int width, int maxValue)
+      throws IllegalArgumentException {
+    if (pixels == null) {
+      throw new IllegalArgumentException("Pixel buffer cannot be null.");
+    }
+    if (height < 0 || width < 0) {
+      throw new IllegalArgumentException("Invalid image dimensions.");
+    }
+    if (maxValue < 1) {
+      throw new IllegalArgumentException("Invalid max value.");
+    }
+    if (pixels.remaining() != (long) height * width * (Pixels.isPackable(maxValue) ? 1 : 3)) {
+      throw new IllegalArgumentException("Pixel buffer does not match the image dimensions.");
+    }
+    this.height = height;
+    this.width = width;
+    this.maxValue = maxValue;
+    this.pixels = pixels.slice();
+    this.packed = Pixels.isPackable(maxValue);
+    this.offset = 0;
+    this.rowStride = width;
+    this.colStride = 1;
+  }
+
+  // Shares the pixels of another image, laid out as given
+  private MappedImage(IntBuffer pixels, int height, int width, int maxValue, int offset,
+                      int rowStride, int colStride) {
+    this.height = height;
+    this.width = width;
+    this.maxValue = maxValue;
+    this.pixels = pixels;
+    this.packed = Pixels.isPackable(maxValue);
+    this.offset = offset;
+    this.rowStride = rowStride;
+    this.colStride = colStride;
+  }
+
+  @Override
+  public int getMaxValue() {
+    return maxValue;
+  }
+
+  @Override
+  public int getHeight() {
+    return height;
+  }
+
+  @Override
+  public int getWidth() {
+    return width;
+  }
+
+  @Override
+  public Color getColorAt(int row, int col) throws IllegalArgumentException {
+    if (row < 0 || col < 0 || row >= height || col >= width) {
+      throw new IllegalArgumentException("Cannot get color from invalid location.");
+    }
+    return this.load(this.index(row, col));
+  }
+
+  @Override
+  public int getPixelAt(int row, int col) throws IllegalArgumentException {
+    if (row < 0 || col < 0 || row >= height || col >= width) {
+      throw new IllegalArgumentException("Cannot get color from invalid location.");
+    }
+    int index = this.index(row, col);
+    if (packed) {
+      return this.pixel(index);
+    }
+    return Pixels.rgb(this.channel(index, 0), this.channel(index, 1), this.channel(index, 2));
+  }
+
+  @Override
+  public void getPixelRow(int row, int[] dest) throws IllegalArgumentException {
+    if (!packed) {
+      ImageTransform.super.getPixelRow(row, dest);
+      return;
+    }
+    if (row < 0 || row >= height) {
+      throw new IllegalArgumentException("Cannot get color from invalid location.");
+    }
+    if (dest == null || dest.length < width) {
+      throw new IllegalArgumentException("Row array is too short.");
+    }
+    if (colStride == 1) {
+      this.copyOut(this.index(row, 0), dest, width);
+      for (int col = 0; col < width; col += 1) {
+        dest[col] = Pixels.clamp(dest[col], maxValue);
+      }
+      return;
+    }
+    for (int col = 0, i = this.index(row, 0); col < width; col += 1, i += colStride) {
+      dest[col] = this.pixel(i);
+    }
+  }
+
+  @Override
+  public void getChannelRow(int row, int[] dest) throws IllegalArgumentException {
+    if (row < 0 || row >= height) {
+      throw new IllegalArgumentException("Cannot get color from invalid location.");
+    }
+    if (dest == null || dest.length < width * 3) {
+      throw new IllegalArgumentException("Row array is too short.");
+    }
+    if (!packed && colStride == 1) {
+      this.copyOut(this.index(row, 0) * 3, dest, width * 3);
+      for (int i = 0; i < width * 3; i += 1) {
+        dest[i] = this.clamp(dest[i]);
+      }
+      return;
+    }
+    for (int col = 0, i = this.index(row, 0); col < width; col += 1, i += colStride) {
+      if (packed) {
+        int pixel = this.pixel(i);
+        dest[col * 3] = Pixels.red(pixel);
+        dest[col * 3 + 1] = Pixels.green(pixel);
+        dest[col * 3 + 2] = Pixels.blue(pixel);
+      } else {
+        dest[col * 3] = this.channel(i, 0);
+        dest[col * 3 + 1] = this.channel(i, 1);
+        dest[col * 3 + 2] = this.channel(i, 2);
+      }
+    }
+  }
+
+  @Override
+  public ImageTransform transform(ColorFunction map) throws IllegalArgumentException {
+    if (map == null) {
+      throw new IllegalArgumentException("Function cannot be null.");
+    }
+    return Image.fromRows(height, width, maxValue, (fromRow, toRow, dest) -> {
+      int[] line = new int[width * (packed ? 1 : 3)];
+      for (int row = fromRow; row < toRow; row += 1) {
+        for (int col = 0; col < width; col += 1) {
+          Color c = map.apply(this.load(this.index(row, col)), row, col);
+          if (c == null) {
+            throw new IllegalArgumentException("Pixel color cannot be null.");
+          }
+          if (packed) {
+            line[col] = Pixels.rgb(c.getRed(), c.getGreen(), c.getBlue());
+          } else {
+            line[col * 3] = c.getRed();
+            line[col * 3 + 1] = c.getGreen();
+            line[col * 3 + 2] = c.getBlue();
+          }
+        }
+        dest.write(row, line);
+      }
+    }, null);
+  }
+
+  @Override
+  public ImageTransform transformPixels(PixelFunction map) throws IllegalArgumentException {
+    if (map == null) {
+      throw new IllegalArgumentException("Function cannot be null.");
+    }
+    if (!packed) {
+      throw new IllegalArgumentException("Image pixels cannot be packed.");
+    }
+    return Image.fromRows(height, width, maxValue, (fromRow, toRow, dest) -> {
+      int[] line = new int[width];
+      for (int row = fromRow; row < toRow; row += 1) {
+        this.getPixelRow(row, line);
+        for (int col = 0; col < width; col += 1) {
+          line[col] = map.apply(line[col], row, col);
+        }
+        dest.write(row, line);
+      }
+    }, null);
+  }
+
+  @Override
+  public ImageTransform transformRows(RowsFunction map) throws IllegalArgumentException {
+    if (map == null) {
+      throw new IllegalArgumentException("Function cannot be null.");
+    }
+    if (!packed) {
+      throw new IllegalArgumentException("Image pixels cannot be packed.");
+    }
+    return Image.fromRows(height, width, maxValue, map, null);
+  }
+
+  @Override
+  public ImageTransform flipHorizontal() {
+    return new MappedImage(pixels, height, width, maxValue, this.index(0, width - 1), rowStride,
+        -colStride);
+  }
+
+  @Override
+  public ImageTransform flipVertical() {
+    return new MappedImage(pixels, height, width, maxValue, this.index(height - 1, 0),
+        -rowStride, colStride);
+  }
+
+  @Override
+  public ImageTransform rotate(int quarterTurns) {
+    switch (Math.floorMod(quarterTurns, 4)) {
+      case 1:
+        // the first row is the first column read from the bottom up
+        return new MappedImage(pixels, width, height, maxValue, this.index(height - 1, 0),
+            colStride, -rowStride);
+      case 2:
+        return new MappedImage(pixels, height, width, maxValue,
+            this.index(height - 1, width - 1), -rowStride, -colStride);
+      case 3:
+        // the first row is the last column read from the top down
+        return new MappedImage(pixels, width, height, maxValue, this.index(0, width - 1),
+            -colStride, rowStride);
+      default:
+        return this;
+    }
+  }
+
+  @Override
+  public ImageTransform crop(int row, int col, int height, int width)
+      throws IllegalArgumentException {
+    if (row < 0 || col < 0 || height < 0 || width < 0
+        || row > this.height - height || col > this.width - width) {
+      throw new IllegalArgumentException("Crop region must be within the image.");
+    }
+    return new MappedImage(pixels, height, width, maxValue, this.index(row, col), rowStride,
+        colStride);
+  }
+
+  // the number of the pixel at the row and column in pixels
+  private int index(int row, int col) {
+    return offset + row * rowStride + col * colStride;
+  }
+
+  // the clamped packed pixel with the given number in pixels
+  private int pixel(int index) {
+    return Pixels.clamp(pixels.get(index), maxValue);
+  }
+
+  // the clamped channel (0 for red, 1 for green, 2 for blue) of the pixel with the given number
+  private int channel(int index, int channel) {
+    return this.clamp(pixels.get(index * 3 + channel));
+  }
+
+  // copies the given number of ints of pixels, from the given int on, to the start of dest
+  private void copyOut(int from, int[] dest, int count) {
+    // (a duplicate has its own position, so rows can be read on several threads at once)
+    IntBuffer source = pixels.duplicate();
+    source.position(from);
+    source.get(dest, 0, count);
+  }
+
+  // the color of the pixel with the given number in pixels
+  private Color load(int index) {
+    if (packed) {
+      return Pixels.toColor(this.pixel(index));
+    }
+    return new RGBColor(this.channel(index, 0), this.channel(index, 1), this.channel(index, 2));
+  }
+
+  private int clamp(int n) {
+    return Math.max(Math.min(n, maxValue), 0);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (obj == this) {
+      return true;
+    }
+    if (!(obj instanceof ImageState)) {
+      return false;
+    }
+    ImageState that = (ImageState) obj;
+    if (!(this.height == that.getHeight()
+        && this.width == that.getWidth()
+        && this.maxValue == that.getMaxValue())) {
+      return false;
+    }
+    int[] row = new int[width * 3];
+    int[] other = new int[width * 3];
+    for (int r = 0; r < height; r += 1) {
+      this.getChannelRow(r, row);
+      that.getChannelRow(r, other);
+      if (!Arrays.equals(row, other)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    // the same as that of an Image with the same pixels
+    int gridHash = 1;
+    int[] row = new int[width * 3];
+    for (int r = 0; r < height; r += 1) {
+      this.getChannelRow(r, row);
+      int rowHash = 1;
+      for (int col = 0; col < width; col += 1) {
+        rowHash = 31 * rowHash + Objects.hash(row[col * 3], row[col * 3 + 1], row[col * 3 + 2],
+            255);
+      }
+      gridHash = 31 * gridHash + rowHash;
+    }
+    return Objects.hash(height, width, maxValue, gridHash);
+  }
+}
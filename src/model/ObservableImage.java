@@ -40,6 +40,21 @@ public class ObservableImage implements ImageState {
     return this.state.getColorAt(row, col);
   }
 
+  @Override
+  public int getPixelAt(int row, int col) throws IllegalArgumentException {
+    return this.state.getPixelAt(row, col);
+  }
+
+  @Override
+  public void getPixelRow(int row, int[] dest) throws IllegalArgumentException {
+    this.state.getPixelRow(row, dest);
+  }
+
+  @Override
+  public void getChannelRow(int row, int[] dest) throws IllegalArgumentException {
+    state.getChannelRow(row, dest);
+  }
+
   @Override
   public boolean equals(Object obj) {
     return this.state.equals(obj);
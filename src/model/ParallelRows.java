@@ -0,0 +1,181 @@
+package model;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs work over the rows of an image, splitting the rows into bands that are run in parallel on a
+ * fork-join pool. Images smaller than the threshold (in pixels) are always run on the calling
+ * thread. The same configuration is shared by every image, and defaults to one thread per
+ * available processor.
+ */
+public final class ParallelRows {
+  /**
+   * The default number of pixels below which rows are not split any further.
+   */
+  public static final int DEFAULT_THRESHOLD = 1 << 16;
+  // The most threads that a fork-join pool can have
+  private static final int MAX_PARALLELISM = 0x7fff;
+  // The number of bands we try to give each thread, so that uneven bands still balance out
+  private static final int BANDS_PER_THREAD = 4;
+
+  // The number of pixels run through bands so far, by every configuration
+  private static final LongAdder PIXELS_PROCESSED = new LongAdder();
+
+  private static volatile ParallelRows current =
+      new ParallelRows(Runtime.getRuntime().availableProcessors(), DEFAULT_THRESHOLD);
+
+  // INVARIANT: Is a positive integer
+  private final int parallelism;
+  // INVARIANT: Is a positive integer
+  private final int threshold;
+  // INVARIANT: Is null if and only if the parallelism is 1
+  private final ForkJoinPool pool;
+
+  /**
+   * Work on a band of rows of an image.
+   */
+  public interface RowBand {
+    /**
+     * Runs the work on the rows from the first row (inclusive) to the last row (exclusive).
+     *
+     * @param fromRow the first row of the band
+     * @param toRow   the row after the last row of the band
+     */
+    void apply(int fromRow, int toRow);
+  }
+
+  private ParallelRows(int parallelism, int threshold) {
+    this.parallelism = parallelism;
+    this.threshold = threshold;
+    this.pool = parallelism == 1 ? null : new ForkJoinPool(parallelism);
+  }
+
+  /**
+   * Sets how many threads are used to run rows in parallel, and the number of pixels that an image
+   * must have more than before its rows are split into bands.
+   *
+   * @param parallelism the number of threads (1 to always run on the calling thread)
+   * @param threshold   the number of pixels below which rows are run on one thread
+   * @throws IllegalArgumentException if either number is not positive, or the parallelism is more
+   *                                  than a fork-join pool can have
+   */
+  public static synchronized void configure(int parallelism, int threshold)
+      throws IllegalArgumentException {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Parallelism must be positive.");
+    }
+    if (parallelism > MAX_PARALLELISM) {
+      throw new IllegalArgumentException("Parallelism is too large.");
+    }
+    if (threshold < 1) {
+      throw new IllegalArgumentException("Threshold must be positive.");
+    }
+    // the old pool is not shut down, as other threads may be about to run work on it: once they
+    // are done its threads go idle, and end on their own
+    current = new ParallelRows(parallelism, threshold);
+  }
+
+  /**
+   * Get the number of threads that rows are run on.
+   *
+   * @return the parallelism
+   */
+  public static int getParallelism() {
+    return current.parallelism;
+  }
+
+  /**
+   * Get the number of pixels below which rows are run on one thread.
+   *
+   * @return the threshold
+   */
+  public static int getThreshold() {
+    return current.threshold;
+  }
+
+  /**
+   * Get the number of pixels that work has been run over so far (the height times the width of
+   * every image passed to {@link #forEachBand}), to measure how much work is being done.
+   *
+   * @return the number of pixels processed
+   */
+  public static long getPixelsProcessed() {
+    return PIXELS_PROCESSED.sum();
+  }
+
+  /**
+   * Runs the work over every row of an image with the given dimensions, in bands that may run
+   * in parallel. Bands never overlap, and together they cover every row exactly once.
+   *
+   * @param height the number of rows
+   * @param width  the number of pixels in each row
+   * @param band   the work to run on each band of rows
+   * @throws IllegalArgumentException if the band is null
+   * @throws RuntimeException         the first exception thrown by the work, if any
+   */
+  public static void forEachBand(int height, int width, RowBand band) {
+    if (band == null) {
+      throw new IllegalArgumentException("Row band cannot be null.");
+    }
+    PIXELS_PROCESSED.add((long) height * width);
+    current.run(height, width, band);
+  }
+
+  private void run(int height, int width, RowBand band) {
+    if (pool == null || height < 2 || (long) height * width <= threshold) {
+      band.apply(0, height);
+      return;
+    }
+    int minRows = Math.max(1, height / (parallelism * BANDS_PER_THREAD));
+    AtomicReference<RuntimeException> failure = new AtomicReference<>();
+    pool.invoke(new BandTask(band, 0, height, width, minRows, failure));
+    // rethrow the original exception, rather than the copy the pool would make of it
+    if (failure.get() != null) {
+      throw failure.get();
+    }
+  }
+
+  // Splits the band of rows in half until it is small enough to run
+  private class BandTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final RowBand band;
+    private final int fromRow;
+    private final int toRow;
+    private final int width;
+    private final int minRows;
+    private final AtomicReference<RuntimeException> failure;
+
+    BandTask(RowBand band, int fromRow, int toRow, int width, int minRows,
+             AtomicReference<RuntimeException> failure) {
+      this.band = band;
+      this.fromRow = fromRow;
+      this.toRow = toRow;
+      this.width = width;
+      this.minRows = minRows;
+      this.failure = failure;
+    }
+
+    @Override
+    protected void compute() {
+      int rows = toRow - fromRow;
+      if (rows > minRows && (long) rows * width > threshold) {
+        int middle = fromRow + rows / 2;
+        invokeAll(new BandTask(band, fromRow, middle, width, minRows, failure),
+            new BandTask(band, middle, toRow, width, minRows, failure));
+        return;
+      }
+      if (failure.get() != null) {
+        return;
+      }
+      try {
+        band.apply(fromRow, toRow);
+      } catch (RuntimeException e) {
+        failure.compareAndSet(null, e);
+      }
+    }
+  }
+}
@@ -0,0 +1,19 @@
+package model;
+
+/**
+ * A function with 3 inputs (a packed pixel, row, and column) and one output (a packed pixel).
+ * This is the primitive counterpart of {@link ColorFunction}: pixels are packed as described by
+ * {@link Pixels}, so applying it does not need to allocate any colors.
+ */
+public interface PixelFunction {
+
+  /**
+   * Applies this function to the given pixel with that row and column (in the image).
+   *
+   * @param pixel the packed pixel of the image
+   * @param row   the row that the pixel is in
+   * @param col   the column that the pixel is in
+   * @return the packed pixel that this pixel should be mapped to
+   */
+  int apply(int pixel, int row, int col);
+}
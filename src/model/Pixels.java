@@ -0,0 +1,189 @@
+package model;
+
+/**
+ * Helpers for working with colors packed into a single int as 0xAARRGGBB (8 bits per channel).
+ * This is the representation images use to store their pixels when the max value of the image
+ * fits in 8 bits, so that a pixel costs 4 bytes rather than a whole color object.
+ */
+public final class Pixels {
+  /**
+   * The largest max value an image may have for its pixels to be stored packed.
+   */
+  public static final int MAX_PACKED = 255;
+
+  // Fully opaque alpha channel, which every pixel of an image has
+  private static final int OPAQUE = 0xff000000;
+  // The weighted part of each channel in the luma, for every 8 bit value
+  private static final double[] LUMA_RED = lumaTable(0.2126);
+  private static final double[] LUMA_GREEN = lumaTable(0.7152);
+  private static final double[] LUMA_BLUE = lumaTable(0.0722);
+
+  private Pixels() {
+    // static helpers only
+  }
+
+  /**
+   * Checks if images with the given max value store their pixels packed.
+   *
+   * @param maxValue the max value of the image
+   * @return true if each channel fits in 8 bits
+   */
+  public static boolean isPackable(int maxValue) {
+    return maxValue <= MAX_PACKED;
+  }
+
+  /**
+   * Packs the channels into an opaque pixel, saturating each channel to [0, 255].
+   *
+   * @param red   the red channel
+   * @param green the green channel
+   * @param blue  the blue channel
+   * @return the packed pixel
+   */
+  public static int rgb(int red, int green, int blue) {
+    return OPAQUE | (saturate(red) << 16) | (saturate(green) << 8) | saturate(blue);
+  }
+
+  /**
+   * Makes the packed pixel fully opaque.
+   *
+   * @param pixel the packed pixel
+   * @return the same pixel with an alpha of 255
+   */
+  public static int opaque(int pixel) {
+    return pixel | OPAQUE;
+  }
+
+  /**
+   * Clamps every channel of the packed pixel to the max value, making it opaque.
+   *
+   * @param pixel    the packed pixel
+   * @param maxValue the max value of the image the pixel belongs to
+   * @return the clamped pixel
+   */
+  public static int clamp(int pixel, int maxValue) {
+    if (maxValue >= MAX_PACKED) {
+      return opaque(pixel);
+    }
+    return rgb(Math.min(red(pixel), maxValue), Math.min(green(pixel), maxValue),
+        Math.min(blue(pixel), maxValue));
+  }
+
+  /**
+   * Packs a color into a pixel, saturating each channel to [0, 255].
+   *
+   * @param color the color to pack
+   * @return the packed pixel (keeping the alpha of the color)
+   */
+  public static int argb(Color color) {
+    return (saturate(color.getAlpha()) << 24) | (saturate(color.getRed()) << 16)
+        | (saturate(color.getGreen()) << 8) | saturate(color.getBlue());
+  }
+
+  /**
+   * Get the alpha channel of a packed pixel.
+   *
+   * @param pixel the packed pixel
+   * @return the alpha channel
+   */
+  public static int alpha(int pixel) {
+    return pixel >>> 24;
+  }
+
+  /**
+   * Get the red channel of a packed pixel.
+   *
+   * @param pixel the packed pixel
+   * @return the red channel
+   */
+  public static int red(int pixel) {
+    return (pixel >> 16) & 0xff;
+  }
+
+  /**
+   * Get the green channel of a packed pixel.
+   *
+   * @param pixel the packed pixel
+   * @return the green channel
+   */
+  public static int green(int pixel) {
+    return (pixel >> 8) & 0xff;
+  }
+
+  /**
+   * Get the blue channel of a packed pixel.
+   *
+   * @param pixel the packed pixel
+   * @return the blue channel
+   */
+  public static int blue(int pixel) {
+    return pixel & 0xff;
+  }
+
+  /**
+   * Get the largest channel of a packed pixel.
+   *
+   * @param pixel the packed pixel
+   * @return the largest channel
+   */
+  public static int value(int pixel) {
+    return Math.max(Math.max(red(pixel), green(pixel)), blue(pixel));
+  }
+
+  /**
+   * Get the intensity of a packed pixel (average of the channels).
+   *
+   * @param pixel the packed pixel
+   * @return the intensity of the pixel
+   */
+  public static int intensity(int pixel) {
+    return (red(pixel) + green(pixel) + blue(pixel)) / 3;
+  }
+
+  /**
+   * Get the weighted sum of the channels of a packed pixel.
+   *
+   * @param pixel the packed pixel
+   * @return the luminescence of the pixel
+   */
+  public static int luma(int pixel) {
+    return (int) (LUMA_RED[red(pixel)] + LUMA_GREEN[green(pixel)] + LUMA_BLUE[blue(pixel)]);
+  }
+
+  /**
+   * Get the weighted sum of the channels, looking up the weighted channels when they fit in 8 bits.
+   *
+   * @param red   the red channel
+   * @param green the green channel
+   * @param blue  the blue channel
+   * @return the luminescence of the channels
+   */
+  public static int luma(int red, int green, int blue) {
+    if ((red | green | blue) >>> 8 == 0) {
+      return (int) (LUMA_RED[red] + LUMA_GREEN[green] + LUMA_BLUE[blue]);
+    }
+    return (int) (0.2126 * red + 0.7152 * green + 0.0722 * blue);
+  }
+
+  /**
+   * Unpacks a pixel into a color object.
+   *
+   * @param pixel the packed pixel
+   * @return the color that the pixel represents
+   */
+  public static Color toColor(int pixel) {
+    return new RGBColor(red(pixel), green(pixel), blue(pixel), alpha(pixel));
+  }
+
+  private static double[] lumaTable(double weight) {
+    double[] table = new double[MAX_PACKED + 1];
+    for (int value = 0; value <= MAX_PACKED; value += 1) {
+      table[value] = weight * value;
+    }
+    return table;
+  }
+
+  private static int saturate(int channel) {
+    return Math.max(Math.min(channel, 255), 0);
+  }
+}
@@ -82,7 +82,7 @@ public class RGBColor implements Color {
 
   @Override
   public int getLuma() {
-    return (int) (0.2126 * this.getRed() + 0.7152 * this.getGreen() + 0.0722 * this.getBlue());
+    return Pixels.luma(this.getRed(), this.getGreen(), this.getBlue());
   }
 
   @Override
@@ -0,0 +1,20 @@
+package model;
+
+/**
+ * Takes the rows of a new image as a {@link RowsFunction} computes them, and stores them in the
+ * new image.
+ */
+public interface RowWriter {
+
+  /**
+   * Writes a whole row of the new image: as packed pixels (see {@link Pixels}) if the pixels of
+   * the image can be packed, or as the channels of its pixels (red, green, blue, like
+   * {@link ImageState#getChannelRow}) otherwise. Channels are clamped to the max value. The array
+   * is copied, so it can be used again for the next row.
+   *
+   * @param row    the row to write, which must be in the band being computed
+   * @param pixels the pixels of the row
+   * @throws IllegalArgumentException if the row is not in the band, or the array is too short
+   */
+  void write(int row, int[] pixels) throws IllegalArgumentException;
+}
@@ -0,0 +1,19 @@
+package model;
+
+/**
+ * A function that computes whole rows of a new image at once. It is given a band of rows to
+ * compute, so that work can be shared between neighbouring rows of the band (like keeping a window
+ * of rows around for a convolution).
+ */
+public interface RowsFunction {
+
+  /**
+   * Computes the rows from the first row (inclusive) to the last row (exclusive) of the new image,
+   * writing each of them (in any order) to the writer. No other rows may be written.
+   *
+   * @param fromRow the first row to compute
+   * @param toRow   the row after the last row to compute
+   * @param dest    the writer that stores the rows in the new image
+   */
+  void apply(int fromRow, int toRow, RowWriter dest);
+}
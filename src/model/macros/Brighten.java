@@ -1,13 +1,12 @@
 package model.macros;
 
-import model.ImageTransform;
-import model.RGBColor;
+import java.util.Objects;
 
 /**
  * The macro that transforms an image's brightness by adding or subtracting a value from each of its
- * channels.
+ * channels. (Which is a lookup per channel, see {@link PointOperation})
  */
-public class Brighten implements Macro {
+public class Brighten extends PointOperation {
   private final int n;
 
   /**
@@ -20,19 +19,18 @@ public class Brighten implements Macro {
     this.n = n;
   }
 
-  /**
-   * Brightens or darkens all pixels by the increment.
-   *
-   * @param img the image that we're working on
-   * @return a new image that has undergone the transformation
-   * @throws IllegalArgumentException if the image passed in is null
-   */
   @Override
-  public ImageTransform execute(ImageTransform img) throws IllegalArgumentException {
-    if (img == null) {
-      throw new IllegalArgumentException("Image cannot be null.");
-    }
-    return img.transform((c, y, x)
-        -> new RGBColor(c.getRed() + n, c.getGreen() + n, c.getBlue() + n));
+  protected int apply(int channel, int value, int maxValue) {
+    return value + n;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return obj instanceof Brighten && ((Brighten) obj).n == this.n;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(Brighten.class, n);
   }
 }
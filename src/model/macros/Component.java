@@ -1,16 +1,24 @@
 package model.macros;
 
+import java.util.Objects;
 import java.util.function.Function;
+import java.util.function.IntUnaryOperator;
 
 import model.Color;
 import model.ImageTransform;
+import model.Pixels;
 import model.RGBColor;
 
 /**
  * The macro that transforms an image to its grayscale. (representing a channel or factor)
  */
-public class Component implements Macro {
+public class Component implements PixelOperation {
   private final Function<Color, Integer> getChannel;
+  // The same channel, read from a packed pixel (null if only the color function is known)
+  private final IntUnaryOperator getPixelChannel;
+  // The name of the channel (null if only the functions are known, and the macro is only the same
+  // as itself)
+  private final String name;
 
   /**
    * Constructs the Grayscale Macro.
@@ -19,10 +27,72 @@ public class Component implements Macro {
    * @throws IllegalArgumentException if inputted function is null
    */
   public Component(Function<Color, Integer> getChannel) throws IllegalArgumentException {
+    this(getChannel, null, null);
+  }
+
+  // Constructs the macro with the same named channel for both colors and packed pixels
+  private Component(Function<Color, Integer> getChannel, IntUnaryOperator getPixelChannel,
+                    String name) throws IllegalArgumentException {
     if (getChannel == null) {
       throw new IllegalArgumentException("Get channel function cannot be null.");
     }
     this.getChannel = getChannel;
+    this.getPixelChannel = getPixelChannel;
+    this.name = name;
+  }
+
+  /**
+   * Constructs the macro for the red component.
+   *
+   * @return the red component macro
+   */
+  public static Component red() {
+    return new Component(Color::getRed, Pixels::red, "red");
+  }
+
+  /**
+   * Constructs the macro for the green component.
+   *
+   * @return the green component macro
+   */
+  public static Component green() {
+    return new Component(Color::getGreen, Pixels::green, "green");
+  }
+
+  /**
+   * Constructs the macro for the blue component.
+   *
+   * @return the blue component macro
+   */
+  public static Component blue() {
+    return new Component(Color::getBlue, Pixels::blue, "blue");
+  }
+
+  /**
+   * Constructs the macro for the value component.
+   *
+   * @return the value component macro
+   */
+  public static Component value() {
+    return new Component(Color::getValue, Pixels::value, "value");
+  }
+
+  /**
+   * Constructs the macro for the intensity component.
+   *
+   * @return the intensity component macro
+   */
+  public static Component intensity() {
+    return new Component(Color::getIntensity, Pixels::intensity, "intensity");
+  }
+
+  /**
+   * Constructs the macro for the luma component.
+   *
+   * @return the luma component macro
+   */
+  public static Component luma() {
+    return new Component(Color::getLuma, Pixels::luma, "luma");
   }
 
   /**
@@ -37,8 +107,40 @@ public class Component implements Macro {
     if (img == null) {
       throw new IllegalArgumentException("Image cannot be null.");
     }
-    return img.transform((c, y, x)
-        -> new RGBColor(getChannel.apply(c), getChannel.apply(c), getChannel.apply(c),
-        c.getAlpha()));
+    if (getPixelChannel == null || !Pixels.isPackable(img.getMaxValue())) {
+      return img.transform((c, y, x)
+          -> new RGBColor(getChannel.apply(c), getChannel.apply(c), getChannel.apply(c),
+          c.getAlpha()));
+    }
+    IntUnaryOperator operation = this.pixelOperation(img.getMaxValue());
+    return img.transformPixels((p, y, x) -> operation.applyAsInt(p));
+  }
+
+  @Override
+  public IntUnaryOperator pixelOperation(int maxValue) {
+    if (getPixelChannel == null) {
+      return p -> {
+        int channel = getChannel.apply(Pixels.toColor(p));
+        return Pixels.rgb(channel, channel, channel);
+      };
+    }
+    return p -> {
+      int channel = getPixelChannel.applyAsInt(p);
+      return Pixels.rgb(channel, channel, channel);
+    };
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (obj == this) {
+      return true;
+    }
+    return obj instanceof Component && this.name != null
+        && this.name.equals(((Component) obj).name);
+  }
+
+  @Override
+  public int hashCode() {
+    return this.name == null ? System.identityHashCode(this) : Objects.hash(Component.class, name);
   }
 }
@@ -1,15 +1,27 @@
 package model.macros;
 
+import java.util.Arrays;
+import java.util.Objects;
+
 import model.Color;
 import model.ImageTransform;
+import model.Pixels;
 import model.RGBColor;
 
 /**
  * Represents a convolution, filtering an image based on a kernel. It is used to change an image
- * by changing each pixel based on the surrounding pixels.
+ * by changing each pixel based on the surrounding pixels. Separable kernels (a column times a row,
+ * like blurring) are run as a horizontal pass followed by a vertical pass, which only costs 2k
+ * rather than k * k operations per pixel for a k by k kernel.
  */
-public class Convolve implements Macro {
+public class Convolve implements LocalOperation {
+  // How far a kernel can be from the product of its factors and still count as separable
+  private static final double SEPARABLE_TOLERANCE = 1e-12;
+
   private final double[][] kernel;
+  // INVARIANT: Both null, or both the length of the kernel with kernel[i][j] = column[i] * row[j]
+  private final double[] columnFactors;
+  private final double[] rowFactors;
 
   /**
    * Construct a convolution function from the given kernel.
@@ -32,7 +44,89 @@ public class Convolve implements Macro {
         throw new IllegalArgumentException("Kernel must be square.");
       }
     }
-    this.kernel = kernel;
+    this.kernel = new double[kernel.length][];
+    for (int row = 0; row < kernel.length; row += 1) {
+      this.kernel[row] = kernel[row].clone();
+    }
+
+    // factor the kernel around its largest entry
+    int pivotRow = 0;
+    int pivotCol = 0;
+    for (int row = 0; row < kernel.length; row += 1) {
+      for (int col = 0; col < kernel.length; col += 1) {
+        if (Math.abs(kernel[row][col]) > Math.abs(kernel[pivotRow][pivotCol])) {
+          pivotRow = row;
+          pivotCol = col;
+        }
+      }
+    }
+    double pivot = this.kernel[pivotRow][pivotCol];
+    double[] column = new double[kernel.length];
+    double[] row = new double[kernel.length];
+    double[] scaledColumn = new double[kernel.length];
+    double[] scaledRow = new double[kernel.length];
+    for (int i = 0; i < kernel.length; i += 1) {
+      column[i] = this.kernel[i][pivotCol];
+      row[i] = this.kernel[pivotRow][i];
+      scaledColumn[i] = pivot == 0 ? 0 : column[i] / pivot;
+      scaledRow[i] = pivot == 0 ? 0 : row[i] / pivot;
+    }
+    // the pivot can be divided out of either factor, so prefer dividing the one where it is exact
+    boolean divideColumn = this.isExactQuotient(scaledColumn, column, pivot);
+    double[] columnFactors = divideColumn ? scaledColumn : column;
+    double[] rowFactors = divideColumn ? row : scaledRow;
+    if (pivot != 0 && this.isProduct(columnFactors, rowFactors,
+        Math.abs(pivot) * SEPARABLE_TOLERANCE)) {
+      this.columnFactors = columnFactors;
+      this.rowFactors = rowFactors;
+    } else {
+      this.columnFactors = null;
+      this.rowFactors = null;
+    }
+  }
+
+  // checks if every quotient is exactly the original divided by the divisor (with no rounding)
+  private boolean isExactQuotient(double[] quotients, double[] originals, double divisor) {
+    for (int i = 0; i < quotients.length; i += 1) {
+      if (Math.fma(quotients[i], divisor, -originals[i]) != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // checks if every entry of the kernel is the product of its column and row factor
+  private boolean isProduct(double[] column, double[] row, double tolerance) {
+    for (int i = 0; i < kernel.length; i += 1) {
+      for (int j = 0; j < kernel.length; j += 1) {
+        if (Math.abs(kernel[i][j] - column[i] * row[j]) > tolerance) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Checks if the kernel is separable, meaning it is the product of a column and a row, so that
+   * it can be run as two one-dimensional passes. The passes sum in a different order than the
+   * whole kernel would, so kernels whose factors are not exact in binary (unlike blurring or
+   * integer kernels) can round a channel differently by one.
+   *
+   * @return true if the kernel is separable
+   */
+  public boolean isSeparable() {
+    return rowFactors != null;
+  }
+
+  /**
+   * Gets how far the kernel reaches from its centre.
+   *
+   * @return half the size of the kernel
+   */
+  @Override
+  public int radius() {
+    return kernel.length / 2;
   }
 
   /**
@@ -51,25 +145,217 @@ public class Convolve implements Macro {
     int imgHeight = img.getHeight();
     int imgWidth = img.getWidth();
 
-    return img.transform((c, y, x) -> {
-      double r = 0;
-      double g = 0;
-      double b = 0;
-      for (int row = -kernelCentre; row < kernelCentre + 1; row += 1) {
-        for (int col = -kernelCentre; col < kernelCentre + 1; col += 1) {
-          int sumR = y + row;
-          int sumC = x + col;
-          if (sumR >= 0 && sumR < imgHeight && sumC >= 0 && sumC < imgWidth) {
-            Color sumColor = img.getColorAt(sumR, sumC);
-            double value = kernel[row + kernelCentre][col + kernelCentre];
-            r += sumColor.getRed() * value;
-            g += sumColor.getGreen() * value;
-            b += sumColor.getBlue() * value;
+    if (!Pixels.isPackable(img.getMaxValue())) {
+      return img.transform((c, y, x) -> {
+        double r = 0;
+        double g = 0;
+        double b = 0;
+        for (int row = -kernelCentre; row < kernelCentre + 1; row += 1) {
+          for (int col = -kernelCentre; col < kernelCentre + 1; col += 1) {
+            int sumR = y + row;
+            int sumC = x + col;
+            if (sumR >= 0 && sumR < imgHeight && sumC >= 0 && sumC < imgWidth) {
+              Color sumColor = img.getColorAt(sumR, sumC);
+              double value = kernel[row + kernelCentre][col + kernelCentre];
+              r += sumColor.getRed() * value;
+              g += sumColor.getGreen() * value;
+              b += sumColor.getBlue() * value;
+            }
           }
         }
+
+        return new RGBColor((int) r, (int) g, (int) b, c.getAlpha());
+      });
+    }
+
+    if (this.isSeparable()) {
+      return this.executeSeparable(img);
+    }
+
+    return this.executeDirect(img);
+  }
+
+  // Runs the whole kernel over each pixel. Source rows are split into channels and kept in a
+  // window as tall as the kernel. The interior of the image, where every tap is inside the image,
+  // is run one tap at a time across the whole row with no bounds checks. Only the border band
+  // (as wide as half the kernel) checks which taps are inside the image, and leaves the rest out
+  // as if they were black. Either way every pixel sums its taps in the same order.
+  private ImageTransform executeDirect(ImageTransform img) {
+    int size = kernel.length;
+    int kernelCentre = size / 2;
+    int imgHeight = img.getHeight();
+    int imgWidth = img.getWidth();
+
+    return img.transformRows((fromRow, toRow, dest) -> {
+      // source row n is kept in slot n % size
+      double[][] reds = new double[size][imgWidth];
+      double[][] greens = new double[size][imgWidth];
+      double[][] blues = new double[size][imgWidth];
+      double[] sumR = new double[imgWidth];
+      double[] sumG = new double[imgWidth];
+      double[] sumB = new double[imgWidth];
+      int[] line = new int[imgWidth];
+      int[] out = new int[imgWidth];
+      int nextRow = Math.max(0, fromRow - kernelCentre);
+
+      for (int y = fromRow; y < toRow; y += 1) {
+        // read the rows that come into the window of this row
+        while (nextRow <= Math.min(imgHeight - 1, y + kernelCentre)) {
+          img.getPixelRow(nextRow, line);
+          int slot = nextRow % size;
+          for (int x = 0; x < imgWidth; x += 1) {
+            reds[slot][x] = Pixels.red(line[x]);
+            greens[slot][x] = Pixels.green(line[x]);
+            blues[slot][x] = Pixels.blue(line[x]);
+          }
+          nextRow += 1;
+        }
+
+        // the columns of this row where every tap is inside the image (if any)
+        boolean interiorRow = y >= kernelCentre && y < imgHeight - kernelCentre;
+        int interiorFrom = kernelCentre;
+        int interiorTo = interiorRow ? imgWidth - kernelCentre : kernelCentre;
+        if (interiorFrom < interiorTo) {
+          Arrays.fill(sumR, 0);
+          Arrays.fill(sumG, 0);
+          Arrays.fill(sumB, 0);
+          for (int row = 0; row < size; row += 1) {
+            int slot = (y - kernelCentre + row) % size;
+            double[] r = reds[slot];
+            double[] g = greens[slot];
+            double[] b = blues[slot];
+            for (int col = 0; col < size; col += 1) {
+              double value = kernel[row][col];
+              int shift = col - kernelCentre;
+              for (int x = interiorFrom; x < interiorTo; x += 1) {
+                sumR[x] += r[x + shift] * value;
+                sumG[x] += g[x + shift] * value;
+                sumB[x] += b[x + shift] * value;
+              }
+            }
+          }
+        }
+
+        for (int x = 0; x < imgWidth; x += 1) {
+          if (x >= interiorFrom && x < interiorTo) {
+            out[x] = Pixels.rgb((int) sumR[x], (int) sumG[x], (int) sumB[x]);
+          } else {
+            out[x] = this.convolveBorder(reds, greens, blues, y, x, imgHeight, imgWidth);
+          }
+        }
+        dest.write(y, out);
       }
+    });
+  }
+
+  // convolves a single pixel near the border, leaving out the taps outside the image
+  private int convolveBorder(double[][] reds, double[][] greens, double[][] blues, int y, int x,
+                             int imgHeight, int imgWidth) {
+    int size = kernel.length;
+    int kernelCentre = size / 2;
+    double r = 0;
+    double g = 0;
+    double b = 0;
+    for (int row = Math.max(-kernelCentre, -y);
+         row <= Math.min(kernelCentre, imgHeight - 1 - y); row += 1) {
+      int slot = (y + row) % size;
+      for (int col = Math.max(-kernelCentre, -x);
+           col <= Math.min(kernelCentre, imgWidth - 1 - x); col += 1) {
+        double value = kernel[row + kernelCentre][col + kernelCentre];
+        r += reds[slot][x + col] * value;
+        g += greens[slot][x + col] * value;
+        b += blues[slot][x + col] * value;
+      }
+    }
+    return Pixels.rgb((int) r, (int) g, (int) b);
+  }
+
+  // Filters every row with the row factors, then filters the columns of those with the column
+  // factors. Each band of rows only keeps a window of as many filtered rows as the kernel is tall.
+  // Taps outside the image count as black in both passes, just like in the two-dimensional
+  // convolution.
+  private ImageTransform executeSeparable(ImageTransform img) {
+    int size = kernel.length;
+    int kernelCentre = size / 2;
+    int imgHeight = img.getHeight();
+    int imgWidth = img.getWidth();
+
+    return img.transformRows((fromRow, toRow, dest) -> {
+      // filtered row n is kept in slot n % size
+      double[][] reds = new double[size][imgWidth];
+      double[][] greens = new double[size][imgWidth];
+      double[][] blues = new double[size][imgWidth];
+      double[] sumR = new double[imgWidth];
+      double[] sumG = new double[imgWidth];
+      double[] sumB = new double[imgWidth];
+      int[] line = new int[imgWidth];
+      int[] out = new int[imgWidth];
+      int nextRow = Math.max(0, fromRow - kernelCentre);
 
-      return new RGBColor((int) r, (int) g, (int) b, c.getAlpha());
+      for (int y = fromRow; y < toRow; y += 1) {
+        // filter the rows that come into the window of this row
+        while (nextRow <= Math.min(imgHeight - 1, y + kernelCentre)) {
+          img.getPixelRow(nextRow, line);
+          int slot = nextRow % size;
+          this.filterRow(line, reds[slot], greens[slot], blues[slot]);
+          nextRow += 1;
+        }
+
+        Arrays.fill(sumR, 0);
+        Arrays.fill(sumG, 0);
+        Arrays.fill(sumB, 0);
+        for (int row = Math.max(-kernelCentre, -y);
+             row <= Math.min(kernelCentre, imgHeight - 1 - y); row += 1) {
+          int slot = (y + row) % size;
+          double value = columnFactors[row + kernelCentre];
+          double[] r = reds[slot];
+          double[] g = greens[slot];
+          double[] b = blues[slot];
+          for (int x = 0; x < imgWidth; x += 1) {
+            sumR[x] += r[x] * value;
+            sumG[x] += g[x] * value;
+            sumB[x] += b[x] * value;
+          }
+        }
+
+        for (int x = 0; x < imgWidth; x += 1) {
+          out[x] = Pixels.rgb((int) sumR[x], (int) sumG[x], (int) sumB[x]);
+        }
+        dest.write(y, out);
+      }
     });
   }
+
+  // filters a row of packed pixels with the row factors into the channel rows
+  private void filterRow(int[] line, double[] reds, double[] greens, double[] blues) {
+    int kernelCentre = rowFactors.length / 2;
+    int width = line.length;
+    for (int x = 0; x < width; x += 1) {
+      double r = 0;
+      double g = 0;
+      double b = 0;
+      for (int col = Math.max(-kernelCentre, -x);
+           col <= Math.min(kernelCentre, width - 1 - x); col += 1) {
+        int pixel = line[x + col];
+        double value = rowFactors[col + kernelCentre];
+        r += Pixels.red(pixel) * value;
+        g += Pixels.green(pixel) * value;
+        b += Pixels.blue(pixel) * value;
+      }
+      reds[x] = r;
+      greens[x] = g;
+      blues[x] = b;
+    }
+  }
+
+  // convolutions with the same kernel are the same (whichever subclass they are)
+  @Override
+  public boolean equals(Object obj) {
+    return obj instanceof Convolve && Arrays.deepEquals(((Convolve) obj).kernel, this.kernel);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(Convolve.class, Arrays.deepHashCode(kernel));
+  }
 }
@@ -0,0 +1,68 @@
+package model.macros;
+
+import java.util.Objects;
+
+import model.ImageTransform;
+
+/**
+ * The macro that transforms an image by cropping it to a rectangular region.
+ */
+public class Crop implements Macro {
+  // INVARIANT: Non-negative integer
+  private final int row;
+  // INVARIANT: Non-negative integer
+  private final int col;
+  // INVARIANT: Non-negative integer
+  private final int height;
+  // INVARIANT: Non-negative integer
+  private final int width;
+
+  /**
+   * Constructs the crop macro.
+   *
+   * @param row    the row of the top left corner of the region
+   * @param col    the column of the top left corner of the region
+   * @param height the height of the region
+   * @param width  the width of the region
+   * @throws IllegalArgumentException if any of the numbers are negative
+   */
+  public Crop(int row, int col, int height, int width) throws IllegalArgumentException {
+    if (row < 0 || col < 0 || height < 0 || width < 0) {
+      throw new IllegalArgumentException("Cannot crop to a negative region.");
+    }
+    this.row = row;
+    this.col = col;
+    this.height = height;
+    this.width = width;
+  }
+
+  /**
+   * Crops the given image to the region constructed with.
+   *
+   * @param img the image that we're working on
+   * @return the region of the image
+   * @throws IllegalArgumentException if the image is null, or the region is not within the image
+   */
+  @Override
+  public ImageTransform execute(ImageTransform img) throws IllegalArgumentException {
+    if (img == null) {
+      throw new IllegalArgumentException("Image cannot be null.");
+    }
+    return img.crop(row, col, height, width);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof Crop)) {
+      return false;
+    }
+    Crop that = (Crop) obj;
+    return this.row == that.row && this.col == that.col && this.height == that.height
+        && this.width == that.width;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(Crop.class, row, col, height, width);
+  }
+}
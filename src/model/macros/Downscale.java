@@ -1,11 +1,13 @@
 package model.macros;
 
+import java.util.Objects;
 import java.util.function.Function;
 
 import model.Color;
 import model.Image;
 import model.ImageState;
 import model.ImageTransform;
+import model.Pixels;
 import model.RGBColor;
 
 /**
@@ -49,30 +51,40 @@ public class Downscale implements Macro {
       throw new IllegalArgumentException("Dest-image's height and width must be " +
           "less than or equal to the original's.");
     }
-    ImageTransform newImage = new Image(this.emptyImage(this.height, this.width),
-        img.getMaxValue());
-
-    return newImage.transform((c, y, x) -> {
-      double row = (y * img.getHeight()) / (double) (this.height);
-      double col = (x * img.getWidth()) / (double) (this.width);
-      int r = this.channelCalculation(row, col, img, Color::getRed);
-      int g = this.channelCalculation(row, col, img, Color::getGreen);
-      int b = this.channelCalculation(row, col, img, Color::getBlue);
-      return new RGBColor(r, g, b);
-    });
-  }
+    ImageTransform newImage = new Image(this.height, this.width, img.getMaxValue());
+    int imgHeight = img.getHeight();
+    int imgWidth = img.getWidth();
 
-  private Color[][] emptyImage(int height, int width) {
-    Color[][] colorArr = new Color[height][width];
-    Color black = new RGBColor(0, 0, 0);
-
-    for (int row = 0; row < height; row += 1) {
-      for (int col = 0; col < width; col += 1) {
-        colorArr[row][col] = black;
-      }
+    if (!Pixels.isPackable(img.getMaxValue())) {
+      return newImage.transform((c, y, x) -> {
+        double row = (y * imgHeight) / (double) (this.height);
+        double col = (x * imgWidth) / (double) (this.width);
+        int r = this.channelCalculation(row, col, img, Color::getRed);
+        int g = this.channelCalculation(row, col, img, Color::getGreen);
+        int b = this.channelCalculation(row, col, img, Color::getBlue);
+        return new RGBColor(r, g, b);
+      });
     }
 
-    return colorArr;
+    return newImage.transformPixels((p, y, x) -> {
+      double row = (y * imgHeight) / (double) (this.height);
+      double col = (x * imgWidth) / (double) (this.width);
+      int top = this.floor(row);
+      int bottom = this.ceiling(row, imgHeight - 1);
+      int left = this.floor(col);
+      int right = this.ceiling(col, imgWidth - 1);
+      int pA = img.getPixelAt(top, left);
+      int pB = img.getPixelAt(top, right);
+      int pC = img.getPixelAt(bottom, left);
+      int pD = img.getPixelAt(bottom, right);
+      return Pixels.rgb(
+          this.interpolate(row, col, Pixels.red(pA), Pixels.red(pB),
+              Pixels.red(pC), Pixels.red(pD)),
+          this.interpolate(row, col, Pixels.green(pA), Pixels.green(pB),
+              Pixels.green(pC), Pixels.green(pD)),
+          this.interpolate(row, col, Pixels.blue(pA), Pixels.blue(pB),
+              Pixels.blue(pC), Pixels.blue(pD)));
+    });
   }
 
   private int floor(double a) {
@@ -98,9 +110,28 @@ public class Downscale implements Macro {
     int cD = getChannel.apply(img.getColorAt(this.ceiling(y, img.getHeight() - 1),
         this.ceiling(x, img.getWidth() - 1)));
 
+    return this.interpolate(y, x, cA, cB, cC, cD);
+  }
+
+  // bilinear interpolation of the channel between the four surrounding pixels
+  private int interpolate(double y, double x, int cA, int cB, int cC, int cD) {
     double m = (cB * (x - this.floor(x)) + cA * (this.ceiling(x) - x));
     double n = (cD * (x - this.floor(x)) + cC * (this.ceiling(x) - x));
 
     return (int) (n * (y - this.floor(y)) + m * (this.ceiling(y) - y));
   }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof Downscale)) {
+      return false;
+    }
+    Downscale that = (Downscale) obj;
+    return this.height == that.height && this.width == that.width;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(Downscale.class, height, width);
+  }
 }
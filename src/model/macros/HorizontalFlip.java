@@ -18,7 +18,16 @@ public class HorizontalFlip implements Macro {
     if (img == null) {
       throw new IllegalArgumentException("Image cannot be null.");
     }
-    return img.transform((c, y, x)
-        -> img.getColorAt(y, img.getWidth() - x - 1));
+    return img.flipHorizontal();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return obj instanceof HorizontalFlip;
+  }
+
+  @Override
+  public int hashCode() {
+    return HorizontalFlip.class.hashCode();
   }
 }
@@ -0,0 +1,68 @@
+package model.macros;
+
+import java.util.Objects;
+
+/**
+ * The macro that adjusts the levels of an image: channels at or below the black point become 0,
+ * channels at or above the white point become the max value, and channels in between are stretched
+ * over the whole range and then bent by the gamma. (Which is a lookup per channel, see
+ * {@link PointOperation})
+ */
+public class Levels extends PointOperation {
+  // INVARIANT: Is between 0 (inclusive) and the white point (exclusive)
+  private final double black;
+  // INVARIANT: Is a positive number
+  private final double gamma;
+  // INVARIANT: Is between the black point (exclusive) and 1 (inclusive)
+  private final double white;
+
+  /**
+   * Constructs the macro that will adjust the levels of the image. The black and white points are
+   * fractions of the max value of the image, so the same macro works on any image.
+   *
+   * @param black the fraction of the max value at or below which channels become 0
+   * @param gamma the gamma to bend the channels in between by (1 to leave them straight, more
+   *              than 1 to brighten the midtones, less than 1 to darken them)
+   * @param white the fraction of the max value at or above which channels become the max value
+   * @throws IllegalArgumentException if the black and white points are not in [0, 1], the black
+   *                                  point is not below the white point, or the gamma is not
+   *                                  positive
+   */
+  public Levels(double black, double gamma, double white) throws IllegalArgumentException {
+    if (!(black >= 0 && white <= 1)) {
+      throw new IllegalArgumentException("Black and white points must be between 0 and 1.");
+    }
+    if (!(black < white)) {
+      throw new IllegalArgumentException("Black point must be below the white point.");
+    }
+    if (!(gamma > 0) || Double.isInfinite(gamma)) {
+      throw new IllegalArgumentException("Gamma must be positive.");
+    }
+    this.black = black;
+    this.gamma = gamma;
+    this.white = white;
+  }
+
+  @Override
+  protected int apply(int channel, int value, int maxValue) {
+    double level = ((double) value / maxValue - black) / (white - black);
+    level = Math.max(Math.min(level, 1), 0);
+    return (int) Math.round(maxValue * Math.pow(level, 1 / gamma));
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof Levels)) {
+      return false;
+    }
+    Levels that = (Levels) obj;
+    return Double.compare(this.black, that.black) == 0
+        && Double.compare(this.gamma, that.gamma) == 0
+        && Double.compare(this.white, that.white) == 0;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(Levels.class, black, gamma, white);
+  }
+}
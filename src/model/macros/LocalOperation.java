@@ -0,0 +1,16 @@
+package model.macros;
+
+/**
+ * A macro whose new value for a pixel depends only on the pixels within a fixed distance of it
+ * (treating pixels outside of the image as missing), and that keeps the size of the image. So it
+ * can be run on part of an image by running it on that part, with a margin as wide as the distance
+ * around it, and keeping only the part (see {@link Mask}).
+ */
+public interface LocalOperation extends Macro {
+  /**
+   * Gets how far (in rows or columns) from a pixel the pixels its new value depends on can be.
+   *
+   * @return the distance, which is not negative
+   */
+  int radius();
+}
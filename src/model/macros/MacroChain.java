@@ -0,0 +1,117 @@
+package model.macros;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.IntUnaryOperator;
+
+import model.ImageTransform;
+import model.Pixels;
+
+/**
+ * The macro that runs other macros one after the other. Consecutive macros that only look at each
+ * pixel on its own (see {@link PixelOperation}), such as matrix transformations, components, and
+ * point operations, are fused into a single pass over the image, rather than building an image
+ * after each of them.
+ *
+ * <p>The result is always the same as running the macros one after the other: each fused macro
+ * still truncates and clamps its channels to the max value before the next one reads them, so
+ * matrices are run in turn on each pixel rather than multiplied together. Consecutive point
+ * operations are composed into a single lookup table per channel. Images that cannot be packed
+ * are run through each macro in turn. (The lazy model runs chains of commands whose results in
+ * between are not kept this way, see {@code model.LazyImageProcessingModel}.)
+ */
+public class MacroChain implements Macro {
+  // INVARIANT: Contains no null macros
+  private final List<Macro> macros;
+
+  /**
+   * Constructs the macro that runs the given macros in order.
+   *
+   * @param macros the macros to run, in order
+   * @throws IllegalArgumentException if the macros are or contain null
+   */
+  public MacroChain(Macro... macros) throws IllegalArgumentException {
+    if (macros == null) {
+      throw new IllegalArgumentException("Macros cannot be null.");
+    }
+    for (Macro macro : macros) {
+      if (macro == null) {
+        throw new IllegalArgumentException("Macro cannot be null.");
+      }
+    }
+    this.macros = new ArrayList<>(Arrays.asList(macros));
+  }
+
+  /**
+   * Runs every macro on the image, in order.
+   *
+   * @param img the image that we're working on
+   * @return a new image that has undergone every transformation
+   * @throws IllegalArgumentException if the image passed in is null
+   */
+  @Override
+  public ImageTransform execute(ImageTransform img) throws IllegalArgumentException {
+    if (img == null) {
+      throw new IllegalArgumentException("Image cannot be null.");
+    }
+    int maxValue = img.getMaxValue();
+    int i = 0;
+    while (i < macros.size()) {
+      // find the run of pixel operations starting here
+      int end = i;
+      while (Pixels.isPackable(maxValue) && end < macros.size()
+          && macros.get(end) instanceof PixelOperation) {
+        end += 1;
+      }
+      if (end - i < 2) {
+        img = macros.get(i).execute(img);
+        i += 1;
+        continue;
+      }
+      IntUnaryOperator operation = this.fuse(macros.subList(i, end), maxValue);
+      img = img.transformPixels((p, y, x) -> operation.applyAsInt(p));
+      i = end;
+    }
+    return img;
+  }
+
+  // fuses the pixel operations into one function, clamping the pixel between each of them
+  private IntUnaryOperator fuse(List<Macro> run, int maxValue) {
+    List<IntUnaryOperator> steps = new ArrayList<>();
+    List<PointOperation> points = new ArrayList<>();
+    for (Macro macro : run) {
+      if (macro instanceof PointOperation) {
+        points.add((PointOperation) macro);
+        continue;
+      }
+      if (!points.isEmpty()) {
+        steps.add(PointOperation.composed(points, maxValue));
+        points = new ArrayList<>();
+      }
+      steps.add(((PixelOperation) macro).pixelOperation(maxValue));
+    }
+    if (!points.isEmpty()) {
+      steps.add(PointOperation.composed(points, maxValue));
+    }
+
+    IntUnaryOperator[] operations = steps.toArray(new IntUnaryOperator[0]);
+    return p -> {
+      for (IntUnaryOperator operation : operations) {
+        p = Pixels.clamp(operation.applyAsInt(p), maxValue);
+      }
+      return p;
+    };
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return obj instanceof MacroChain && ((MacroChain) obj).macros.equals(this.macros);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(MacroChain.class, macros);
+  }
+}
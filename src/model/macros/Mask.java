@@ -1,16 +1,34 @@
 package model.macros;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.IntUnaryOperator;
+
+import model.Image;
 import model.ImageState;
 import model.ImageTransform;
-import model.RGBColor;
+import model.ParallelRows;
+import model.Pixels;
 
 /**
  * This macro can perform any operation on only a select number of pixels (based on the mask).
  * The operations are only performed on the pixels where the mask counterpart has a black pixel.
+ *
+ * <p>The mask is compiled once into the runs of black pixels in each row (see
+ * {@link MaskRegion}), and only those pixels are worked out: pixel operations are run on each
+ * selected pixel alone, and other local operations (like convolutions, see
+ * {@link LocalOperation}) on the rectangle around every selected pixel, or on each tile of the
+ * image that holds any selected pixels (whichever is less work), with a margin as wide as they
+ * reach around it. Other macros (or masks that select most of the image) run the
+ * macro on the whole image and keep the selected pixels of the result. The result shares the
+ * storage of the image wherever none of its pixels are selected (see {@link Image}).</p>
  */
 public class Mask implements Macro {
   private final Macro macro;
-  private final ImageState maskImg;
+  // The pixels the mask selects
+  private final MaskRegion region;
 
   /**
    * Constructs a mask macro.
@@ -19,14 +37,25 @@ public class Mask implements Macro {
    * @param maskImg the mask that we will decide how to operate with
    */
   public Mask(Macro macro, ImageState maskImg) {
-    if (maskImg == null) {
+    this(macro, maskImg == null ? null : MaskRegion.of(maskImg));
+  }
+
+  /**
+   * Constructs a mask macro from a mask that has already been worked out, so that masks made from
+   * the same mask image can share it.
+   *
+   * @param macro  the operation that we wish to perform on the selection
+   * @param region the pixels of the mask image that the operation is performed on
+   */
+  public Mask(Macro macro, MaskRegion region) {
+    if (region == null) {
       throw new IllegalArgumentException("Mask image cannot be null.");
     }
     if (macro == null) {
       throw new IllegalArgumentException("Macro cannot be null.");
     }
     this.macro = macro;
-    this.maskImg = maskImg;
+    this.region = region;
   }
 
   /**
@@ -43,28 +72,193 @@ public class Mask implements Macro {
     if (img == null) {
       throw new IllegalArgumentException("Image cannot be null.");
     }
-    if (img.getHeight() != maskImg.getHeight() || img.getWidth() != maskImg.getWidth()) {
+    if (img.getHeight() != region.getHeight() || img.getWidth() != region.getWidth()) {
       throw new IllegalArgumentException("Mask image dimensions must be the same " +
           "as image dimensions.");
     }
+    int height = img.getHeight();
+    int width = img.getWidth();
+    int maxValue = img.getMaxValue();
+    int stride = Pixels.isPackable(maxValue) ? 1 : 3;
+
+    if (macro instanceof PixelOperation && stride == 1) {
+      IntUnaryOperator operation = ((PixelOperation) macro).pixelOperation(maxValue);
+      return Image.fromRows(height, width, maxValue, (fromRow, toRow, dest) -> {
+        int[] line = new int[width];
+        for (int y = fromRow; y < toRow; y += 1) {
+          img.getPixelRow(y, line);
+          int[] runs = region.runs(y);
+          for (int i = 0; i < runs.length; i += 2) {
+            for (int x = runs[i]; x < runs[i + 1]; x += 1) {
+              line[x] = operation.applyAsInt(line[x]);
+            }
+          }
+          dest.write(y, line);
+        }
+      }, img);
+    }
+
+    // the edited rectangles, by the rows of tiles they are in
+    int tileRows = (height + MaskRegion.TILE_SIZE - 1) / MaskRegion.TILE_SIZE;
+    Patch[][] patches = new Patch[tileRows][];
+    if (macro instanceof LocalOperation && this.boundsCost() < this.tilesCost()
+        && this.boundsCost() < (long) height * width) {
+      // every selected pixel is close together, so run the macro once around all of them
+      int[] bounds = region.getBounds();
+      Patch patch = region.getSelectedPixels() == 0 ? null
+          : this.patch(img, bounds[0], bounds[2], bounds[1], bounds[3]);
+      for (int tileRow = 0; tileRow < tileRows; tileRow += 1) {
+        patches[tileRow] = patch == null || tileRow < bounds[0] / MaskRegion.TILE_SIZE
+            || tileRow > (bounds[2] - 1) / MaskRegion.TILE_SIZE ? new Patch[0]
+            : new Patch[]{patch};
+      }
+    } else if (macro instanceof LocalOperation && this.tilesCost() < (long) height * width) {
+      int tileCols = (width + MaskRegion.TILE_SIZE - 1) / MaskRegion.TILE_SIZE;
+      ParallelRows.forEachBand(tileRows, width * MaskRegion.TILE_SIZE, (fromTile, toTile) -> {
+        for (int tileRow = fromTile; tileRow < toTile; tileRow += 1) {
+          int top = tileRow * MaskRegion.TILE_SIZE;
+          int bottom = Math.min(height, top + MaskRegion.TILE_SIZE);
+          List<Patch> row = new ArrayList<>();
+          for (int tileCol = 0; tileCol < tileCols; tileCol += 1) {
+            if (region.isTileSelected(tileRow, tileCol)) {
+              row.add(this.patch(img, top, bottom, tileCol * MaskRegion.TILE_SIZE,
+                  Math.min(width, (tileCol + 1) * MaskRegion.TILE_SIZE)));
+            }
+          }
+          patches[tileRow] = row.toArray(new Patch[0]);
+        }
+      });
+    } else {
+      // new edited image
+      ImageTransform editedImage = macro.execute(img);
+      if (editedImage == null || editedImage.getHeight() != height
+          || editedImage.getWidth() != width) {
+        throw new IllegalArgumentException("Resulting image dimensions must be the same " +
+            "as image dimensions.");
+      }
+      Patch patch = new Patch(editedImage, 0, height, 0, width, 0, 0);
+      Arrays.fill(patches, new Patch[]{patch});
+    }
+
+    // the result shares the pages of the image that hold no selected pixels
+    return Image.fromRows(height, width, maxValue, (fromRow, toRow, dest) -> {
+      int[] line = new int[width * stride];
+      int[] edited = new int[width * stride];
+      for (int y = fromRow; y < toRow; y += 1) {
+        readRow(img, y, line, stride);
+        int[] runs = region.runs(y);
+        if (runs.length > 0) {
+          for (Patch patch : patches[y / MaskRegion.TILE_SIZE]) {
+            patch.copySelected(y, runs, edited, line, stride);
+          }
+        }
+        dest.write(y, line);
+      }
+    }, img);
+  }
+
+  // the number of pixels the local macro is run on, if it is run on the selected tiles (with the
+  // margins it reaches around them)
+  private long tilesCost() {
+    long tile = MaskRegion.TILE_SIZE + 2L * ((LocalOperation) macro).radius();
+    return region.getSelectedTiles() * tile * tile;
+  }
+
+  // the number of pixels the local macro is run on, if it is run once on the rectangle around
+  // every selected pixel (with the margin it reaches around it)
+  private long boundsCost() {
+    if (region.getSelectedPixels() == 0) {
+      return 0;
+    }
+    int[] bounds = region.getBounds();
+    int radius = ((LocalOperation) macro).radius();
+    return (bounds[2] - bounds[0] + 2L * radius) * (bounds[3] - bounds[1] + 2L * radius);
+  }
 
-    // new edited image
-    ImageTransform editedImage = macro.execute(img);
-    if (editedImage == null || editedImage.getHeight() != maskImg.getHeight()
-        || editedImage.getWidth() != maskImg.getWidth()) {
+  // runs the local macro on the rectangle (and the margin the macro reaches around it)
+  private Patch patch(ImageTransform img, int top, int bottom, int left, int right) {
+    int radius = ((LocalOperation) macro).radius();
+    int cropTop = Math.max(0, top - radius);
+    int cropLeft = Math.max(0, left - radius);
+    int cropHeight = Math.min(img.getHeight(), bottom + radius) - cropTop;
+    int cropWidth = Math.min(img.getWidth(), right + radius) - cropLeft;
+    ImageTransform edited = macro.execute(img.crop(cropTop, cropLeft, cropHeight, cropWidth));
+    if (edited == null || edited.getHeight() != cropHeight || edited.getWidth() != cropWidth) {
       throw new IllegalArgumentException("Resulting image dimensions must be the same " +
           "as image dimensions.");
     }
+    return new Patch(edited, top, bottom, left, right, cropTop, cropLeft);
+  }
 
-    return img.transform((c, y, x) -> {
-      // if mask is black then
-      if (new RGBColor(0, 0, 0).equals(maskImg.getColorAt(y, x))) {
-        // choose the color from the edited image
-        return editedImage.getColorAt(y, x);
-      } else {
-        // stick to the original color
-        return img.getColorAt(y, x);
+  // The edited pixels of a rectangle of the image, which are used for its selected pixels
+  private static class Patch {
+    // The edited image, whose top left corner is at (cropTop, cropLeft) of the image
+    private final ImageTransform edited;
+    // The rectangle of the image the patch is used for, as its first row and column and the row
+    // and column after its last ones
+    // INVARIANT: Is within the edited image
+    private final int top;
+    private final int bottom;
+    private final int left;
+    private final int right;
+    private final int cropTop;
+    private final int cropLeft;
+
+    Patch(ImageTransform edited, int top, int bottom, int left, int right, int cropTop,
+          int cropLeft) {
+      this.edited = edited;
+      this.top = top;
+      this.bottom = bottom;
+      this.left = left;
+      this.right = right;
+      this.cropTop = cropTop;
+      this.cropLeft = cropLeft;
+    }
+
+    // copies the edited pixels of the runs (see MaskRegion) of the row that are in the rectangle
+    // to the line, reading the edited row through the given array
+    void copySelected(int y, int[] runs, int[] row, int[] line, int stride) {
+      if (y < top || y >= bottom) {
+        return;
+      }
+      boolean read = false;
+      for (int i = 0; i < runs.length; i += 2) {
+        int from = Math.max(left, runs[i]);
+        int to = Math.min(right, runs[i + 1]);
+        if (from >= to) {
+          continue;
+        }
+        if (!read) {
+          readRow(edited, y - cropTop, row, stride);
+          read = true;
+        }
+        System.arraycopy(row, (from - cropLeft) * stride, line, from * stride,
+            (to - from) * stride);
       }
-    });
+    }
+  }
+
+  // reads a row of the image into the line, as packed pixels (or as channels if the stride is 3)
+  private static void readRow(ImageState img, int row, int[] line, int stride) {
+    if (stride == 1) {
+      img.getPixelRow(row, line);
+    } else {
+      img.getChannelRow(row, line);
+    }
+  }
+
+  // masks of the same macro selecting the same pixels are the same
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof Mask)) {
+      return false;
+    }
+    Mask that = (Mask) obj;
+    return this.macro.equals(that.macro) && this.region.equals(that.region);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(Mask.class, macro, region);
   }
 }
@@ -0,0 +1,218 @@
+package model.macros;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import model.ImageState;
+
+/**
+ * The pixels a mask image selects (its black pixels), compiled into the runs of selected pixels in
+ * each row. It also keeps which square tiles of the image hold any selected pixels, so that work
+ * can be skipped for tiles that hold none, and the smallest rectangle holding every selected pixel.
+ * It is worked out once from the mask image, and never changes, so it can be shared by every
+ * macro masked by the same image (see {@link model.ImageProcessingModel#getMaskRegion}).
+ */
+public final class MaskRegion {
+  /**
+   * The width and height of the tiles the image is split into.
+   */
+  public static final int TILE_SIZE = 64;
+
+  private final int height;
+  private final int width;
+  // The runs of selected pixels of each row, as the column of the first pixel of each run followed
+  // by the column after its last pixel, in order
+  // INVARIANT: Runs do not overlap or touch, and are within the width
+  private final int[][] runs;
+  // Whether each tile (by tile row, then tile column) holds any selected pixels
+  private final boolean[] tiles;
+  private final int tileColumns;
+  private final long selectedPixels;
+  private final int selectedTiles;
+  // The smallest rectangle holding every selected pixel, as its first row and column and the row
+  // and column after its last ones (all 0 if no pixel is selected)
+  private final int top;
+  private final int left;
+  private final int bottom;
+  private final int right;
+
+  private MaskRegion(int height, int width, int[][] runs) {
+    this.height = height;
+    this.width = width;
+    this.runs = runs;
+    this.tileColumns = (width + TILE_SIZE - 1) / TILE_SIZE;
+    this.tiles = new boolean[(height + TILE_SIZE - 1) / TILE_SIZE * tileColumns];
+    long selected = 0;
+    int top = height;
+    int left = width;
+    int bottom = 0;
+    int right = 0;
+    for (int row = 0; row < height; row += 1) {
+      int[] rowRuns = runs[row];
+      if (rowRuns.length > 0) {
+        top = Math.min(top, row);
+        bottom = row + 1;
+        left = Math.min(left, rowRuns[0]);
+        right = Math.max(right, rowRuns[rowRuns.length - 1]);
+      }
+      for (int i = 0; i < rowRuns.length; i += 2) {
+        selected += rowRuns[i + 1] - rowRuns[i];
+        for (int tile = rowRuns[i] / TILE_SIZE; tile <= (rowRuns[i + 1] - 1) / TILE_SIZE;
+             tile += 1) {
+          tiles[row / TILE_SIZE * tileColumns + tile] = true;
+        }
+      }
+    }
+    int selectedTiles = 0;
+    for (boolean tile : tiles) {
+      selectedTiles += tile ? 1 : 0;
+    }
+    this.selectedPixels = selected;
+    this.selectedTiles = selectedTiles;
+    boolean empty = selected == 0;
+    this.top = empty ? 0 : top;
+    this.left = empty ? 0 : left;
+    this.bottom = empty ? 0 : bottom;
+    this.right = empty ? 0 : right;
+  }
+
+  /**
+   * Works out the pixels the mask image selects, which are those whose every channel is 0.
+   *
+   * @param mask the mask image
+   * @return the selected pixels
+   * @throws IllegalArgumentException if the mask image is null
+   */
+  public static MaskRegion of(ImageState mask) throws IllegalArgumentException {
+    if (mask == null) {
+      throw new IllegalArgumentException("Mask image cannot be null.");
+    }
+    int height = mask.getHeight();
+    int width = mask.getWidth();
+    int[][] runs = new int[height][];
+    int[] channels = new int[width * 3];
+    int[] rowRuns = new int[width + 1];
+    for (int row = 0; row < height; row += 1) {
+      mask.getChannelRow(row, channels);
+      int count = 0;
+      boolean inRun = false;
+      for (int col = 0; col < width; col += 1) {
+        boolean black = (channels[col * 3] | channels[col * 3 + 1] | channels[col * 3 + 2]) == 0;
+        if (black != inRun) {
+          rowRuns[count] = col;
+          count += 1;
+          inRun = black;
+        }
+      }
+      if (inRun) {
+        rowRuns[count] = width;
+        count += 1;
+      }
+      runs[row] = Arrays.copyOf(rowRuns, count);
+    }
+    return new MaskRegion(height, width, runs);
+  }
+
+  /**
+   * Gets the height of the mask.
+   *
+   * @return the number of rows
+   */
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * Gets the width of the mask.
+   *
+   * @return the number of columns
+   */
+  public int getWidth() {
+    return width;
+  }
+
+  /**
+   * Checks if the pixel at the row and column is selected.
+   *
+   * @param row the row of the pixel
+   * @param col the column of the pixel
+   * @return true if the pixel is selected
+   * @throws IllegalArgumentException if the pixel is not within the mask
+   */
+  public boolean isSelected(int row, int col) throws IllegalArgumentException {
+    if (row < 0 || col < 0 || row >= height || col >= width) {
+      throw new IllegalArgumentException("Cannot get color from invalid location.");
+    }
+    int[] rowRuns = runs[row];
+    // the number of run boundaries at or before the column is odd inside a run
+    int boundaries = Arrays.binarySearch(rowRuns, col);
+    boundaries = boundaries >= 0 ? boundaries + 1 : -boundaries - 1;
+    return boundaries % 2 == 1;
+  }
+
+  /**
+   * Gets the number of selected pixels.
+   *
+   * @return the number of pixels
+   */
+  public long getSelectedPixels() {
+    return selectedPixels;
+  }
+
+  /**
+   * Gets the share of the pixels that are selected.
+   *
+   * @return the share, from 0 to 1 (0 for an empty mask)
+   */
+  public double getCoverage() {
+    long pixels = (long) height * width;
+    return pixels == 0 ? 0 : (double) selectedPixels / pixels;
+  }
+
+  /**
+   * Gets the smallest rectangle holding every selected pixel.
+   *
+   * @return the first row, the first column, the row after the last row, and the column after
+   *         the last column of the rectangle (all 0 if no pixel is selected)
+   */
+  public int[] getBounds() {
+    return new int[]{top, left, bottom, right};
+  }
+
+  /**
+   * Gets the number of tiles that hold any selected pixels.
+   *
+   * @return the number of tiles
+   */
+  public int getSelectedTiles() {
+    return selectedTiles;
+  }
+
+  // the runs of the row (see runs), which must not be changed
+  int[] runs(int row) {
+    return runs[row];
+  }
+
+  // checks if the tile at the tile row and tile column holds any selected pixels
+  boolean isTileSelected(int tileRow, int tileCol) {
+    return tiles[tileRow * tileColumns + tileCol];
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (obj == this) {
+      return true;
+    }
+    if (!(obj instanceof MaskRegion)) {
+      return false;
+    }
+    MaskRegion that = (MaskRegion) obj;
+    return this.height == that.height && this.width == that.width
+        && this.selectedPixels == that.selectedPixels && Arrays.deepEquals(this.runs, that.runs);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(height, width, selectedPixels, top, left, bottom, right);
+  }
+}
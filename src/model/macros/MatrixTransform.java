@@ -1,15 +1,23 @@
 package model.macros;
 
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.IntUnaryOperator;
+
 import model.Color;
 import model.ImageTransform;
+import model.Pixels;
 import model.RGBColor;
 
 /**
  * The macro that transforms an image based on a matrix. This can be used to change the colors in
- * an image (to produce a greyscale or sepia image).
+ * an image (to produce a greyscale or sepia image). An offset may also be added to each channel
+ * after the matrix, making the transformation affine.
  */
-public class MatrixTransform implements Macro {
+public class MatrixTransform implements PixelOperation {
   private final double[][] matrix;
+  // INVARIANT: Has a length of 3 (one offset per channel)
+  private final double[] offset;
 
   /**
    * Constructs a matrix transformation macro with a 3x3 matrix.
@@ -18,6 +26,19 @@ public class MatrixTransform implements Macro {
    * @throws IllegalArgumentException if the matrix is or contains null, or is not a 3x3
    */
   public MatrixTransform(double[][] matrix) throws IllegalArgumentException {
+    this(matrix, new double[3]);
+  }
+
+  /**
+   * Constructs an affine transformation macro with a 3x3 matrix, and an offset added to each
+   * channel after the matrix.
+   *
+   * @param matrix a 3x3 matrix that we transform each pixel with
+   * @param offset the offsets added to the red, green, and blue channels
+   * @throws IllegalArgumentException if the matrix is or contains null, or is not a 3x3, or the
+   *                                  offset is null or does not have 3 values
+   */
+  public MatrixTransform(double[][] matrix, double[] offset) throws IllegalArgumentException {
     if (matrix == null) {
       throw new IllegalArgumentException("Matrix cannot be null.");
     }
@@ -32,7 +53,17 @@ public class MatrixTransform implements Macro {
         throw new IllegalArgumentException("Matrix width must be 3.");
       }
     }
-    this.matrix = matrix;
+    if (offset == null) {
+      throw new IllegalArgumentException("Offset cannot be null.");
+    }
+    if (offset.length != 3) {
+      throw new IllegalArgumentException("Offset length must be 3.");
+    }
+    this.matrix = new double[3][];
+    for (int row = 0; row < 3; row += 1) {
+      this.matrix[row] = matrix[row].clone();
+    }
+    this.offset = offset.clone();
   }
 
   /**
@@ -47,15 +78,53 @@ public class MatrixTransform implements Macro {
     if (img == null) {
       throw new IllegalArgumentException("Image cannot be null.");
     }
-    return img.transform((c, y, x)
-        -> new RGBColor(calcChannel(matrix[0], c), // r'
-        calcChannel(matrix[1], c), // g'
-        calcChannel(matrix[2], c), // b'
-        c.getAlpha()));
+    if (!Pixels.isPackable(img.getMaxValue())) {
+      return img.transform((c, y, x)
+          -> new RGBColor(calcChannel(0, c), // r'
+          calcChannel(1, c), // g'
+          calcChannel(2, c), // b'
+          c.getAlpha()));
+    }
+    IntUnaryOperator operation = this.pixelOperation(img.getMaxValue());
+    return img.transformPixels((p, y, x) -> operation.applyAsInt(p));
+  }
+
+  @Override
+  public IntUnaryOperator pixelOperation(int maxValue) {
+    return p -> {
+      int r = Pixels.red(p);
+      int g = Pixels.green(p);
+      int b = Pixels.blue(p);
+      return Pixels.rgb(calcChannel(0, r, g, b), // r'
+          calcChannel(1, r, g, b), // g'
+          calcChannel(2, r, g, b)); // b'
+    };
+  }
+
+  // calculates the value for a specific channel
+  private int calcChannel(int channel, Color c) {
+    return calcChannel(channel, c.getRed(), c.getGreen(), c.getBlue());
   }
 
   // calculates the value for a specific channel
-  private int calcChannel(double[] row, Color c) {
-    return (int) (row[0] * c.getRed() + row[1] * c.getGreen() + row[2] * c.getBlue());
+  private int calcChannel(int channel, int r, int g, int b) {
+    double[] row = matrix[channel];
+    return (int) (row[0] * r + row[1] * g + row[2] * b + offset[channel]);
+  }
+
+  // transformations with the same matrix and offset are the same (whichever subclass they are)
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof MatrixTransform)) {
+      return false;
+    }
+    MatrixTransform that = (MatrixTransform) obj;
+    return Arrays.deepEquals(this.matrix, that.matrix) && Arrays.equals(this.offset, that.offset);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(MatrixTransform.class, Arrays.deepHashCode(matrix),
+        Arrays.hashCode(offset));
   }
 }
@@ -0,0 +1,24 @@
+package model.macros;
+
+import java.util.function.IntUnaryOperator;
+
+/**
+ * A macro whose new value for a pixel depends only on that pixel (not its position or
+ * neighbours). Such macros can be run one after the other on each pixel in a single pass, without
+ * building the image in between (see {@link MacroChain}).
+ */
+public interface PixelOperation extends LocalOperation {
+  /**
+   * Gets the function this macro runs on each packed pixel of an image with the given max value.
+   * The function may return channels outside of the max value, which the image clamps after.
+   *
+   * @param maxValue the max value of the image, which must be packable
+   * @return the function from a packed pixel to its new packed pixel
+   */
+  IntUnaryOperator pixelOperation(int maxValue);
+
+  @Override
+  default int radius() {
+    return 0;
+  }
+}
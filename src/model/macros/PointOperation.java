@@ -0,0 +1,150 @@
+package model.macros;
+
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+
+import model.ImageTransform;
+import model.Pixels;
+import model.RGBColor;
+
+/**
+ * A macro that changes each channel of each pixel on its own, based only on the value of that
+ * channel. Rather than working out the new value for every pixel, a lookup table with an entry
+ * for every possible value (0 to the max value of the image) is built once per channel, so running
+ * the macro is a table lookup per channel. Values are clamped to the max value in the tables.
+ */
+public abstract class PointOperation implements PixelOperation {
+  // The largest max value that tables are built for, larger ones work out every channel instead
+  private static final int MAX_TABLE_VALUE = 1 << 16;
+
+  // The tables for the last max value that this was run with (reused by the next run)
+  private volatile Tables lastTables;
+
+  /**
+   * Works out the new value for a value of a channel.
+   *
+   * @param channel  the channel (0 for red, 1 for green, and 2 for blue)
+   * @param value    the value of the channel, between 0 and the max value
+   * @param maxValue the max value of the image
+   * @return the new value of the channel (which is clamped to the range of the image after)
+   */
+  protected abstract int apply(int channel, int value, int maxValue);
+
+  /**
+   * Changes every channel of every pixel of the image.
+   *
+   * @param img the image that we're working on
+   * @return a new image that has undergone the transformation
+   * @throws IllegalArgumentException if the image passed in is null
+   */
+  @Override
+  public ImageTransform execute(ImageTransform img) throws IllegalArgumentException {
+    if (img == null) {
+      throw new IllegalArgumentException("Image cannot be null.");
+    }
+    int maxValue = img.getMaxValue();
+    if (maxValue > MAX_TABLE_VALUE) {
+      return img.transform((c, y, x) -> new RGBColor(this.clamped(0, c.getRed(), maxValue),
+          this.clamped(1, c.getGreen(), maxValue), this.clamped(2, c.getBlue(), maxValue)));
+    }
+
+    Tables tables = this.tables(maxValue);
+    if (!Pixels.isPackable(maxValue)) {
+      return img.transform((c, y, x) -> new RGBColor(tables.reds[c.getRed()],
+          tables.greens[c.getGreen()], tables.blues[c.getBlue()]));
+    }
+
+    IntUnaryOperator lookup = this.pixelOperation(maxValue);
+    return img.transformPixels((p, y, x) -> lookup.applyAsInt(p));
+  }
+
+  @Override
+  public IntUnaryOperator pixelOperation(int maxValue) {
+    Tables tables = this.tables(maxValue);
+    return lookup(tables.packedReds, tables.packedGreens, tables.packedBlues);
+  }
+
+  /**
+   * Gets the function running each of the point operations in turn on a packed pixel, as a single
+   * table lookup per channel. Each operation still clamps its channels before the next one reads
+   * them, so the result is the same as running them one after the other.
+   *
+   * @param operations the point operations, in the order they are run
+   * @param maxValue   the max value of the image, which must be packable
+   * @return the function from a packed pixel to its new packed pixel
+   */
+  static IntUnaryOperator composed(List<PointOperation> operations, int maxValue) {
+    int[] reds = new int[maxValue + 1];
+    int[] greens = new int[maxValue + 1];
+    int[] blues = new int[maxValue + 1];
+    for (int value = 0; value <= maxValue; value += 1) {
+      int r = value;
+      int g = value;
+      int b = value;
+      for (PointOperation operation : operations) {
+        Tables tables = operation.tables(maxValue);
+        r = tables.reds[r];
+        g = tables.greens[g];
+        b = tables.blues[b];
+      }
+      reds[value] = Pixels.rgb(r, 0, 0);
+      greens[value] = Pixels.rgb(0, g, 0);
+      blues[value] = Pixels.rgb(0, 0, b);
+    }
+    return lookup(reds, greens, blues);
+  }
+
+  // looks up each channel of a pixel in the tables of packed entries, or-ing them together
+  private static IntUnaryOperator lookup(int[] reds, int[] greens, int[] blues) {
+    return p -> reds[Pixels.red(p)] | greens[Pixels.green(p)] | blues[Pixels.blue(p)];
+  }
+
+  // gets the tables for the max value, building them if the last run had another max value
+  private Tables tables(int maxValue) {
+    Tables tables = this.lastTables;
+    if (tables == null || tables.maxValue != maxValue) {
+      tables = new Tables(maxValue);
+      this.lastTables = tables;
+    }
+    return tables;
+  }
+
+  private int clamped(int channel, int value, int maxValue) {
+    return Math.max(Math.min(this.apply(channel, value, maxValue), maxValue), 0);
+  }
+
+  // The lookup tables of every channel for a max value
+  private class Tables {
+    private final int maxValue;
+    private final int[] reds;
+    private final int[] greens;
+    private final int[] blues;
+    // The same tables with the entries already packed into place (if the max value is packable),
+    // so that a pixel can be looked up by or-ing an entry of each
+    private final int[] packedReds;
+    private final int[] packedGreens;
+    private final int[] packedBlues;
+
+    Tables(int maxValue) {
+      this.maxValue = maxValue;
+      this.reds = new int[maxValue + 1];
+      this.greens = new int[maxValue + 1];
+      this.blues = new int[maxValue + 1];
+      for (int value = 0; value <= maxValue; value += 1) {
+        reds[value] = clamped(0, value, maxValue);
+        greens[value] = clamped(1, value, maxValue);
+        blues[value] = clamped(2, value, maxValue);
+      }
+
+      boolean packable = Pixels.isPackable(maxValue);
+      this.packedReds = packable ? new int[maxValue + 1] : null;
+      this.packedGreens = packable ? new int[maxValue + 1] : null;
+      this.packedBlues = packable ? new int[maxValue + 1] : null;
+      for (int value = 0; packable && value <= maxValue; value += 1) {
+        packedReds[value] = Pixels.rgb(reds[value], 0, 0);
+        packedGreens[value] = Pixels.rgb(0, greens[value], 0);
+        packedBlues[value] = Pixels.rgb(0, 0, blues[value]);
+      }
+    }
+  }
+}
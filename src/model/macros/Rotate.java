@@ -0,0 +1,48 @@
+package model.macros;
+
+import java.util.Objects;
+
+import model.ImageTransform;
+
+/**
+ * The macro that transforms an image by rotating it by a number of quarter turns.
+ */
+public class Rotate implements Macro {
+  private final int quarterTurns;
+
+  /**
+   * Constructs the macro that rotates images clockwise by the number of quarter turns provided.
+   *
+   * @param quarterTurns the number of 90 degree turns clockwise (negative for counterclockwise)
+   */
+  public Rotate(int quarterTurns) {
+    this.quarterTurns = quarterTurns;
+  }
+
+  /**
+   * Transforms images to their rotated counterpart.
+   *
+   * @param img the image that we're working on
+   * @return a new image that has undergone the transformation
+   * @throws IllegalArgumentException if the image passed in is null
+   */
+  @Override
+  public ImageTransform execute(ImageTransform img) throws IllegalArgumentException {
+    if (img == null) {
+      throw new IllegalArgumentException("Image cannot be null.");
+    }
+    return img.rotate(quarterTurns);
+  }
+
+  // rotations by the same number of turns modulo 4 are the same
+  @Override
+  public boolean equals(Object obj) {
+    return obj instanceof Rotate
+        && Math.floorMod(((Rotate) obj).quarterTurns, 4) == Math.floorMod(this.quarterTurns, 4);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(Rotate.class, Math.floorMod(quarterTurns, 4));
+  }
+}
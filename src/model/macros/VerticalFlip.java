@@ -18,7 +18,16 @@ public class VerticalFlip implements Macro {
     if (img == null) {
       throw new IllegalArgumentException("Image cannot be null.");
     }
-    return img.transform((c, y, x)
-        -> img.getColorAt(img.getHeight() - y - 1, x));
+    return img.flipVertical();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return obj instanceof VerticalFlip;
+  }
+
+  @Override
+  public int hashCode() {
+    return VerticalFlip.class.hashCode();
   }
 }
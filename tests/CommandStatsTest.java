@@ -0,0 +1,92 @@
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.regex.Pattern;
+
+import controller.CommandStats;
+import controller.ImageProcessingControllerImpl;
+import model.ImageProcessingModelImpl;
+import view.ImageProcessingViewImpl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for the stats recorded about each command.
+ */
+public class CommandStatsTest {
+  @Test
+  public void testSummary() {
+    CommandStats stats = new CommandStats();
+    assertEquals(Collections.singletonList("No commands have been run."), stats.summary());
+
+    for (int i = 1; i <= 10; i += 1) {
+      stats.record("blur", i * 1_000_000L, 2_000_000, 4_000_000);
+    }
+    stats.record("brighten", 500_000_000, 1_000_000, -1);
+    assertEquals(Arrays.asList(
+        "blur: 10 runs, p50 5.0 ms, p90 9.0 ms, p99 10.0 ms, max 10.0 ms, 363.6 MP/s, "
+            + "4.0 MB allocated per run",
+        "brighten: 1 run, p50 500.0 ms, p90 500.0 ms, p99 500.0 ms, max 500.0 ms, 2.0 MP/s, "
+            + "unknown allocation"), stats.summary());
+  }
+
+  @Test
+  public void testJson() {
+    CommandStats stats = new CommandStats();
+    assertEquals("{\"commands\": [" + System.lineSeparator() + "]}" + System.lineSeparator(),
+        stats.toJson());
+
+    stats.record("load \"x\"", 2_000_000, 1000, 64);
+    stats.record("load \"x\"", 4_000_000, 3000, 128);
+    assertEquals("{\"commands\": [" + System.lineSeparator()
+        + "  {\"name\": \"load \\\"x\\\"\", \"runs\": 2, \"p50Ms\": 2.000, \"p90Ms\": 4.000, "
+        + "\"p99Ms\": 4.000, \"maxMs\": 4.000, \"megapixelsPerSecond\": 0.667, "
+        + "\"bytesAllocatedPerRun\": 96, \"samples\": ["
+        + "{\"timeMs\": 2.000, \"pixels\": 1000, \"bytesAllocated\": 64}, "
+        + "{\"timeMs\": 4.000, \"pixels\": 3000, \"bytesAllocated\": 128}]}"
+        + System.lineSeparator() + "]}" + System.lineSeparator(), stats.toJson());
+  }
+
+  @Test
+  public void testNullName() {
+    try {
+      new CommandStats().record(null, 1, 1, 1);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("Command name cannot be null.", e.getMessage());
+    }
+  }
+
+  // The controller records every command that succeeds, and writes them out when quitting
+  @Test
+  public void testControllerStats() throws IOException {
+    Path json = TestHelper.tempFile(".json");
+    StringBuilder log = new StringBuilder();
+    ImageProcessingControllerImpl controller = new ImageProcessingControllerImpl(
+        new ImageProcessingModelImpl(), new ImageProcessingViewImpl(log),
+        new StringReader("load res/img1.ppm img\nbrighten 10 img bright\n"
+            + "brighten -10 bright dark\nbrighten 10 nothing none\nstats\nq\n"));
+    controller.setStatsFile(json.toString());
+    controller.control();
+
+    String output = log.toString();
+    assertTrue(output.contains("Command stats: "));
+    // the image has 6 pixels, which are loaded and then processed by each brighten
+    assertTrue(Pattern.compile(" ➤ brighten: 2 runs, p50 [0-9.]+ ms, p90 [0-9.]+ ms, "
+        + "p99 [0-9.]+ ms, max [0-9.]+ ms, [0-9.]+ MP/s, [0-9.]+ MB allocated per run")
+        .matcher(output).find());
+    assertTrue(output.contains(" ➤ load: 1 run, "));
+
+    String written = new String(Files.readAllBytes(json));
+    assertTrue(written.contains("{\"name\": \"brighten\", \"runs\": 2, "));
+    assertTrue(written.contains("\"pixels\": 6, "));
+    assertTrue(written.contains("{\"name\": \"load\", \"runs\": 1, "));
+  }
+}
@@ -0,0 +1,142 @@
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import controller.ImageProcessingControllerImpl;
+import controller.io.IPRFile;
+import controller.io.ImageLoader;
+import model.Image;
+import model.ImageProcessingModel;
+import model.ImageProcessingModelImpl;
+import model.ImageTransform;
+import model.MappedImage;
+import model.RGBColor;
+import view.ImageProcessingViewImpl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for reading and writing the uncompressed IPR format.
+ */
+public class IPRFileTest {
+  @Test
+  public void testRoundTrip() throws IOException {
+    Path file = TestHelper.tempFile(".ipr");
+    for (int maxValue : new int[]{255, 100, 65535}) {
+      ImageTransform img = TestHelper.patternImage(61, 43, maxValue);
+      IPRFile.write(img, file);
+      MappedImage mapped = IPRFile.read(file);
+      assertEquals(img, mapped);
+      assertEquals(16 + 61 * 43 * (maxValue > 255 ? 12 : 4), Files.size(file));
+      assertEquals(img, new ImageLoader().load(file));
+      IPRFile.write(img.rotate(1).crop(2, 3, 10, 20), file);
+      assertEquals(img.rotate(1).crop(2, 3, 10, 20), IPRFile.read(file));
+    }
+    IPRFile.write(new Image(0, 5, 255), file);
+    assertEquals(new Image(0, 5, 255), IPRFile.read(file));
+  }
+
+  // Writing a file replaces it, so that images mapped from the old file keep their pixels
+  @Test
+  public void testReplaceMapped() throws IOException {
+    Path file = TestHelper.tempFile(".ipr");
+    ImageTransform first = new Image(40, 30, 255).transform((c, y, x) -> new RGBColor(y, x, 9));
+    IPRFile.write(first, file);
+    MappedImage mapped = IPRFile.read(file);
+    IPRFile.write(new Image(2, 2, 255), file);
+    assertEquals(first, mapped);
+    IPRFile.write(mapped.flipVertical(), file);
+    assertEquals(first.flipVertical(), IPRFile.read(file));
+    assertEquals(first, mapped);
+  }
+
+  @Test
+  public void testInvalidFiles() throws IOException {
+    Path file = TestHelper.tempFile(".ipr");
+    byte[][] invalid = new byte[][]{
+        {},
+        {'I', 'P', 'R', '1', 0, 0, 0, 1},
+        {'I', 'P', 'R', '2', 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1},
+        {'I', 'P', 'R', '1', 0, 0, 0, 1, 0, 0, 0, 1, 0, 0, 0, 0, 0, 0, 0, 0},
+        {'I', 'P', 'R', '1', 0, 0, 0, 1, 0, 0, 0, 1, 0, 0, 0, 1, 0, 0, 0}};
+    for (byte[] bytes : invalid) {
+      Files.write(file, bytes);
+      try {
+        IPRFile.read(file);
+        fail();
+      } catch (IllegalArgumentException e) {
+        assertEquals("Invalid file format.", e.getMessage());
+      }
+    }
+    Files.write(file, new byte[]{'I', 'P', 'R', '1', 0, 1, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0});
+    try {
+      IPRFile.read(file);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("Invalid file format.", e.getMessage());
+    }
+    try {
+      IPRFile.write(null, file);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("Cannot write a null image or path.", e.getMessage());
+    }
+  }
+
+  // The controller saves and loads .ipr files, mapping the images it loads
+  @Test
+  public void testController() throws IOException {
+    Path file = TestHelper.tempFile(".ipr");
+    ImageProcessingModel model = new ImageProcessingModelImpl();
+    StringBuilder log = new StringBuilder();
+    new ImageProcessingControllerImpl(model, new ImageProcessingViewImpl(log),
+        new StringReader("load res/img1.ppm img\nsave " + file + " img\n"
+            + "load " + file + " raw\nvertical-flip raw flipped\nsave " + file + " flipped\n"
+            + "load " + file + " again\nq\n")).control();
+    assertEquals(model.getImage("img"), model.getImage("raw"));
+    assertEquals(model.getImage("flipped"), model.getImage("again"));
+    assertTrue(log.toString().contains("File is saved."));
+    assertEquals(0, ((ImageProcessingModelImpl) model).getUniqueBytes("raw"));
+    byte[] magic = new byte[4];
+    System.arraycopy(Files.readAllBytes(file), 0, magic, 0, 4);
+    assertArrayEquals(new byte[]{'I', 'P', 'R', '1'}, magic);
+  }
+
+  // Writing a file gives it the permissions of a new file, or keeps those of the file it replaces
+  @Test
+  public void testPermissions() throws IOException {
+    Path dir = Files.createTempDirectory("test");
+    try {
+      if (Files.getFileAttributeView(dir, PosixFileAttributeView.class) == null) {
+        return;
+      }
+      Path file = dir.resolve("image.ipr");
+      IPRFile.write(new Image(2, 3, 255), file);
+      assertEquals(Files.getPosixFilePermissions(Files.createFile(dir.resolve("plain"))),
+          Files.getPosixFilePermissions(file));
+      Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rw-r-----");
+      Files.setPosixFilePermissions(file, permissions);
+      IPRFile.write(new Image(4, 5, 255), file);
+      assertEquals(permissions, Files.getPosixFilePermissions(file));
+      assertEquals(new Image(4, 5, 255), IPRFile.read(file));
+    } finally {
+      try (Stream<Path> files = Files.list(dir)) {
+        for (Path file : (Iterable<Path>) files::iterator) {
+          Files.delete(file);
+        }
+      }
+      Files.delete(dir);
+    }
+  }
+}
@@ -0,0 +1,81 @@
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import javax.imageio.ImageIO;
+
+import controller.io.ImageLoader;
+import controller.io.PPMReader;
+import controller.io.Rasters;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for loading images of any format by the first bytes of the file.
+ */
+public class ImageLoaderTest {
+  // Every format loads the same image as ImageIO (or PPMReader) does, even when loaded again
+  @Test
+  public void testFormats() throws IOException {
+    ImageLoader loader = new ImageLoader();
+    for (int i = 0; i < 2; i += 1) {
+      assertEquals(PPMReader.read(Paths.get("res/img1.ppm")),
+          loader.load(Paths.get("res/img1.ppm")));
+      for (String file : new String[]{"res/img1.png", "res/img1.jpg", "res/img1.bmp",
+          "res/arjunSmall.png"}) {
+        assertEquals(Rasters.fromBufferedImage(ImageIO.read(new File(file))),
+            loader.load(Paths.get(file)));
+      }
+    }
+  }
+
+  // Formats without a known magic number are still found by asking every ImageIO reader
+  @Test
+  public void testOtherFormats() throws IOException {
+    Path gif = TestHelper.tempFile(".gif");
+    Path tiff = TestHelper.tempFile(".tiff");
+    BufferedImage img = ImageIO.read(new File("res/img1.png"));
+    BufferedImage rgb = new BufferedImage(img.getWidth(), img.getHeight(),
+        BufferedImage.TYPE_INT_RGB);
+    rgb.getGraphics().drawImage(img, 0, 0, null);
+    ImageIO.write(rgb, "gif", gif.toFile());
+    ImageIO.write(rgb, "tiff", tiff.toFile());
+
+    ImageLoader loader = new ImageLoader();
+    assertEquals(Rasters.fromBufferedImage(ImageIO.read(gif.toFile())), loader.load(gif));
+    assertEquals(Rasters.fromBufferedImage(ImageIO.read(tiff.toFile())), loader.load(tiff));
+  }
+
+  @Test
+  public void testInvalidFiles() throws IOException {
+    Path empty = TestHelper.tempFile(".ppm");
+    ImageLoader loader = new ImageLoader();
+    for (Path file : new Path[]{Paths.get("tests/ColorTest.java"), empty}) {
+      try {
+        loader.load(file);
+        fail();
+      } catch (IllegalArgumentException e) {
+        assertEquals("Invalid file format.", e.getMessage());
+      }
+    }
+    try {
+      loader.load(null);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("Path cannot be null.", e.getMessage());
+    }
+    Path missing = Files.createTempDirectory("test").resolve("missing.png");
+    try {
+      loader.load(missing);
+      fail();
+    } catch (IOException e) {
+      // the file cannot be opened
+    }
+  }
+}
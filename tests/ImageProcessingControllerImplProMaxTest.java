@@ -239,7 +239,9 @@ public class ImageProcessingControllerImplProMaxTest extends AbstractControllerT
         prints("method: renderMessage"),
         prints("method: renderMessage"), // type input
         inputs("menu"),
-        prints("method: renderMessage"), // 23 menu options
+        prints("method: renderMessage"), // 25 menu options
+        prints("method: renderMessage"),
+        prints("method: renderMessage"),
         prints("method: renderMessage"),
         prints("method: renderMessage"),
         prints("method: renderMessage"),
@@ -1061,9 +1063,10 @@ public class ImageProcessingControllerImplProMaxTest extends AbstractControllerT
         " ➤ load image-path image-name "
             + "(Loads an image from the specified path and refers to it henceforth in the program "
             + "by the given name)",
-        " ➤ save image-path image-name "
+        " ➤ save image-path image-name [P3|P5|P6] "
             + "(Saves the image with the given name to the specified path which includes "
-            + "the name of the file)",
+            + "the name of the file - a PPM file may be given the format to save in, which is "
+            + "otherwise P3 for .ppm files and P5 for .pgm files)",
         " ➤ (component name)-component image-name dest-image-name "
             + "(Create a greyscale image with the (component name) component of the image with "
             + "the given name."
@@ -1119,7 +1122,11 @@ public class ImageProcessingControllerImplProMaxTest extends AbstractControllerT
             + "(Find the partially sepia version of an image to create a new image, "
             + "referred to henceforth by the given destination name)",
         " ➤ size image-name " + "(get the dimensions of an image)",
+        " ➤ stream image-path dest-image-path [P3|P5|P6] command... "
+            + "(Run commands - each given by its name and any numbers, like blur or brighten 10 - "
+            + "on a PPM file a strip at a time, and save the result to the destination PPM file)",
         " ➤ menu (Print supported instruction list)",
+        " ➤ stats (Print how long each command has taken so far)",
         " ➤ q or quit (quit the program)"};
   }
 
@@ -146,7 +146,8 @@ public class ImageProcessingControllerImplProTest extends AbstractControllerTest
         prints("method: renderMessage"),
         prints("method: renderMessage"), // type input
         inputs("menu"),
-        prints("method: renderMessage"), // 13 menu options
+        prints("method: renderMessage"), // 14 menu options
+        prints("method: renderMessage"),
         prints("method: renderMessage"),
         prints("method: renderMessage"),
         prints("method: renderMessage"),
@@ -910,9 +911,10 @@ public class ImageProcessingControllerImplProTest extends AbstractControllerTest
         " ➤ load image-path image-name "
             + "(Loads an image from the specified path and refers to it henceforth in the program "
             + "by the given name)",
-        " ➤ save image-path image-name "
+        " ➤ save image-path image-name [P3|P5|P6] "
             + "(Saves the image with the given name to the specified path which includes "
-            + "the name of the file)",
+            + "the name of the file - a PPM file may be given the format to save in, which is "
+            + "otherwise P3 for .ppm files and P5 for .pgm files)",
         " ➤ (component name)-component image-name dest-image-name "
             + "(Create a greyscale image with the (component name) component of the image with "
             + "the given name."
@@ -940,6 +942,7 @@ public class ImageProcessingControllerImplProTest extends AbstractControllerTest
             + "(Find the sepia version of an image to create a new image, "
             + "referred to henceforth by the given destination name)",
         " ➤ menu (Print supported instruction list)",
+        " ➤ stats (Print how long each command has taken so far)",
         " ➤ q or quit (quit the program)"};
   }
 
@@ -122,7 +122,8 @@ public class ImageProcessingControllerImplTest extends AbstractControllerTest {
         prints("method: renderMessage"),
         prints("method: renderMessage"), // type input
         inputs("menu"),
-        prints("method: renderMessage"), // 9 menu options
+        prints("method: renderMessage"), // 10 menu options
+        prints("method: renderMessage"),
         prints("method: renderMessage"),
         prints("method: renderMessage"),
         prints("method: renderMessage"),
@@ -870,9 +871,10 @@ public class ImageProcessingControllerImplTest extends AbstractControllerTest {
         " ➤ load image-path image-name "
             + "(Loads an image from the specified path and refers to it henceforth in the program "
             + "by the given name)",
-        " ➤ save image-path image-name "
+        " ➤ save image-path image-name [P3|P5|P6] "
             + "(Saves the image with the given name to the specified path which includes "
-            + "the name of the file)",
+            + "the name of the file - a PPM file may be given the format to save in, which is "
+            + "otherwise P3 for .ppm files and P5 for .pgm files)",
         " ➤ (component name)-component image-name dest-image-name "
             + "(Create a greyscale image with the (component name) component of the image with "
             + "the given name."
@@ -888,6 +890,7 @@ public class ImageProcessingControllerImplTest extends AbstractControllerTest {
             + "henceforth by the given destination name - the increment may be positive "
             + "(brightening) or negative (darkening))",
         " ➤ menu (Print supported instruction list)",
+        " ➤ stats (Print how long each command has taken so far)",
         " ➤ q or quit (quit the program)"};
   }
 
@@ -4,6 +4,7 @@ import java.util.function.Function;
 
 import model.Color;
 import model.Image;
+import model.ImageProcessingModelImpl;
 import model.ImageState;
 import model.ImageTransform;
 import model.RGBColor;
@@ -15,6 +16,7 @@ import model.macros.Greyscale;
 import model.macros.HorizontalFlip;
 import model.macros.Macro;
 import model.macros.Mask;
+import model.macros.MaskRegion;
 import model.macros.Sepia;
 import model.macros.Sharpen;
 import model.macros.VerticalFlip;
@@ -22,6 +24,8 @@ import model.macros.VerticalFlip;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 /**
@@ -415,4 +419,83 @@ public class ImageProcessingModelImplTest extends TestHelper {
       assertEquals("Unknown image.", e.getMessage());
     }
   }
+
+  @Test
+  public void testRemoveImage() {
+    model.createImage(img1arr, "twoByThree", 255);
+    model.runCommand(new Brighten(1), "twoByThree", "brighter");
+    model.removeImage("twoByThree");
+    model.removeImage("missing");
+    model.removeImage(null);
+    assertEquals(new Brighten(1).execute(img1), model.getImage("brighter"));
+    try {
+      model.getImage("twoByThree");
+      fail("Removed image still found.");
+    } catch (IllegalArgumentException e) {
+      assertEquals("Unknown image.", e.getMessage());
+    }
+  }
+
+  // The mask of an image is only worked out again once the name has another image
+  @Test
+  public void testMaskRegion() {
+    model.createImage(img1arr, "mask", 255);
+    MaskRegion region = model.getMaskRegion("mask");
+    assertEquals(MaskRegion.of(img1), region);
+    assertSame(region, model.getMaskRegion("mask"));
+    model.runCommand(new Brighten(-255), "mask", "mask");
+    assertEquals(6, model.getMaskRegion("mask").getSelectedPixels());
+    try {
+      model.getMaskRegion("missing");
+      fail("Invalid command run as valid.");
+    } catch (IllegalArgumentException e) {
+      assertEquals("Unknown image.", e.getMessage());
+    }
+  }
+
+  // Images made from others share the pages of pixels that did not change
+  @Test
+  public void testSharedStorage() {
+    ImageProcessingModelImpl images = new ImageProcessingModelImpl();
+    int size = 100;
+    Color[][] grid = new Color[size][size];
+    Color[][] maskGrid = new Color[size][size];
+    for (int row = 0; row < size; row += 1) {
+      for (int col = 0; col < size; col += 1) {
+        grid[row][col] = new RGBColor(row, col, (row * col) % 256);
+        // only the first page holds selected pixels
+        maskGrid[row][col] = row < 10 && col < 10 ? new RGBColor(0, 0, 0)
+            : new RGBColor(255, 255, 255);
+      }
+    }
+    images.createImage(grid, "a", 255);
+    images.createImage(maskGrid, "mask", 255);
+    long bytes = 4L * size * size;
+    assertEquals(bytes, images.getUniqueBytes("a"));
+    assertEquals(0, images.getSharedBytes("a"));
+
+    images.runCommand(new Brighten(0), "a", "same");
+    assertEquals(images.getImage("a"), images.getImage("same"));
+    assertEquals(0, images.getUniqueBytes("same"));
+    assertEquals(bytes, images.getSharedBytes("same"));
+    assertEquals(bytes, images.getSharedBytes("a"));
+
+    images.runCommand(new Mask(new Blur(), images.getMaskRegion("mask")), "a", "masked");
+    long page = 4L * Image.PAGE_PIXELS;
+    assertEquals(page, images.getUniqueBytes("masked"));
+    assertEquals(bytes - page, images.getSharedBytes("masked"));
+    assertEquals(new Mask(new Blur(), images.getImage("mask")).execute(new Image(grid)),
+        images.getImage("masked"));
+
+    images.removeImage("same");
+    images.removeImage("masked");
+    assertEquals(bytes, images.getUniqueBytes("a"));
+    assertTrue(images.storageSummary().contains("a: 0.0 MB unique, 0.0 MB shared"));
+    try {
+      images.getSharedBytes("same");
+      fail("Invalid command run as valid.");
+    } catch (IllegalArgumentException e) {
+      assertEquals("Unknown image.", e.getMessage());
+    }
+  }
 }
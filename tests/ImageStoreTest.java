@@ -0,0 +1,180 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import model.Image;
+import model.ImageProcessingModelImpl;
+import model.ImageStore;
+import model.ImageTransform;
+import model.macros.Brighten;
+import model.macros.MaskRegion;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for keeping images within a memory budget, which must not change the images (every test
+ * of the eager model is run again with a budget too small to hold more than one image).
+ */
+public class ImageStoreTest extends ImageProcessingModelImplTest {
+  private ImageStore store;
+
+  @Before
+  public void initStore() {
+    this.store = new ImageStore(1);
+    this.model = new ImageProcessingModelImpl(this.store);
+  }
+
+  // The least recently used images are dropped and read back, and only written once
+  @Test
+  public void testSpills() {
+    ImageStore images = new ImageStore(2 * 6 * 4);
+    images.put("a", img1);
+    images.put("b", img2);
+    assertEquals(0, images.getSpills());
+    assertSame(img1, images.get("a"));
+    images.put("c", img1);
+    assertEquals(1, images.getSpills());
+    assertEquals(48, images.getHeldBytes());
+
+    assertEquals(img2, images.get("b"));
+    assertEquals(1, images.getMisses());
+    assertEquals(2, images.getSpills());
+    ImageTransform b = images.get("b");
+    assertSame(b, images.get("b"));
+    assertEquals(img1, images.get("a"));
+    assertEquals(2, images.getMisses());
+    assertEquals(3, images.getHits());
+    assertEquals(3, images.getSpills());
+    assertEquals("2 of 3 images in memory (0.0 MB of 0.0 MB)", images.summary().get(0));
+
+    images.remove("a");
+    images.remove("missing");
+    images.remove(null);
+    assertNull(images.get("a"));
+    assertNull(images.get(null));
+    assertEquals(img2, images.get("b"));
+    assertEquals(img1, images.get("c"));
+  }
+
+  // Images deeper than packed pixels, and empty images, are read back the same
+  @Test
+  public void testOtherImages() {
+    ImageStore images = new ImageStore(1);
+    ImageTransform deep = new Brighten(700).execute(new Image(img1arr, 1000));
+    ImageTransform empty = new Image(0, 0, 255);
+    ImageTransform large = new Brighten(3).execute(new Image(300, 400, 255));
+    images.put("deep", deep);
+    images.put("empty", empty);
+    images.put("large", large);
+    images.put("flipped", large.flipHorizontal().crop(10, 20, 30, 40));
+    assertEquals(deep, images.get("deep"));
+    assertEquals(empty, images.get("empty"));
+    assertEquals(large, images.get("large"));
+    assertEquals(large.flipHorizontal().crop(10, 20, 30, 40), images.get("flipped"));
+    assertEquals(7, images.getSpills());
+  }
+
+  // Images can be used from several threads at once, while others are written out and read back
+  @Test
+  public void testThreads() throws InterruptedException {
+    ImageStore images = new ImageStore(300 * 400 * 4);
+    ImageTransform[] originals = new ImageTransform[8];
+    for (int i = 0; i < originals.length; i += 1) {
+      originals[i] = new Brighten(i).execute(new Image(300, 400, 255));
+      images.put("img" + i, originals[i]);
+    }
+    List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 4; t += 1) {
+      int first = t;
+      threads.add(new Thread(() -> {
+        try {
+          for (int i = 0; i < 50; i += 1) {
+            int n = (first + i * 3) % originals.length;
+            assertEquals(originals[n], images.get("img" + n));
+            if (i % 10 == 0) {
+              images.put("img" + n, originals[n]);
+            }
+          }
+        } catch (Throwable e) {
+          failures.add(e);
+        }
+      }));
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(Collections.emptyList(), failures);
+    for (int i = 0; i < originals.length; i += 1) {
+      assertEquals(originals[i], images.get("img" + i));
+    }
+    assertTrue(images.getHeldBytes() <= 300 * 400 * 4);
+  }
+
+  // A mask worked out from an image does not keep the image in memory once it is spilled
+  @Test
+  public void testSpilledMask() {
+    WeakReference<ImageTransform> mask = new WeakReference<>(this.addMask());
+    MaskRegion region = model.getMaskRegion("mask");
+    model.createImage(img2arr, "other", 255);
+    assertEquals(1, this.store.getSpills());
+    for (int i = 0; i < 3 && mask.get() != null; i += 1) {
+      System.gc();
+    }
+    assertNull(mask.get());
+
+    // the mask is not worked out again from the image read back
+    assertSame(region, model.getMaskRegion("mask"));
+    assertEquals(1, this.store.getMisses());
+    model.runCommand(new Brighten(-255), "mask", "mask");
+    assertEquals(6, model.getMaskRegion("mask").getSelectedPixels());
+  }
+
+  // adds a mask image that nothing else refers to
+  private ImageTransform addMask() {
+    ImageTransform image = new Image(img1arr, 255);
+    model.addImage(image, "mask");
+    return image;
+  }
+
+  @Test
+  public void testInvalidStores() {
+    for (long budget : new long[]{0, -1}) {
+      try {
+        new ImageStore(budget);
+        fail();
+      } catch (IllegalArgumentException e) {
+        assertEquals("Budget must be positive.", e.getMessage());
+      }
+    }
+    try {
+      new ImageProcessingModelImpl(null);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("Image store cannot be null.", e.getMessage());
+    }
+    try {
+      new ImageStore().put(null, img1);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("String name cannot be null.", e.getMessage());
+    }
+    try {
+      new ImageStore().put("a", null);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("Image cannot be null.", e.getMessage());
+    }
+  }
+}
@@ -1,19 +1,39 @@
 import org.junit.Test;
 
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
 import model.Color;
 import model.Image;
 import model.ImageState;
 import model.ImageTransform;
+import model.ObservableImage;
+import model.Pixels;
 import model.RGBColor;
+import model.macros.Blur;
+import model.macros.Brighten;
 import model.macros.Component;
 import model.macros.Convolve;
+import model.macros.Crop;
+import model.macros.Downscale;
+import model.macros.Greyscale;
+import model.macros.HorizontalFlip;
+import model.macros.Levels;
 import model.macros.Macro;
+import model.macros.MacroChain;
+import model.macros.Mask;
 import model.macros.MatrixTransform;
+import model.macros.Rotate;
+import model.macros.Sepia;
+import model.macros.Sharpen;
+import model.macros.VerticalFlip;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 /**
@@ -239,6 +259,75 @@ public class ImageTest extends TestHelper {
       assertEquals("Matrix width must be 3.", e.getMessage());
     }
 
+    // offset null
+    try {
+      Macro matrixTransform = new MatrixTransform(new double[3][3], null);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("Offset cannot be null.", e.getMessage());
+    }
+    // offset length 2
+    try {
+      Macro matrixTransform = new MatrixTransform(new double[3][3], new double[2]);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("Offset length must be 3.", e.getMessage());
+    }
+    // Macro Chain
+    // null macros
+    try {
+      Macro chain = new MacroChain((Macro[]) null);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("Macros cannot be null.", e.getMessage());
+    }
+    // null in macros
+    try {
+      Macro chain = new MacroChain(new Sepia(), null);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("Macro cannot be null.", e.getMessage());
+    }
+
+    // Crop
+    // negative region
+    try {
+      Macro crop = new Crop(0, -1, 1, 1);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("Cannot crop to a negative region.", e.getMessage());
+    }
+    // region outside of the image
+    try {
+      new Crop(1, 1, 2, 2).execute(new Image(2, 3, 255));
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("Crop region must be within the image.", e.getMessage());
+    }
+
+    // Levels
+    // black point below 0
+    try {
+      Macro levels = new Levels(-0.1, 1, 1);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("Black and white points must be between 0 and 1.", e.getMessage());
+    }
+    // black point above white point
+    try {
+      Macro levels = new Levels(0.6, 1, 0.4);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("Black point must be below the white point.", e.getMessage());
+    }
+    // gamma not positive
+    try {
+      Macro levels = new Levels(0, 0, 1);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("Gamma must be positive.", e.getMessage());
+    }
+
   }
 
 
@@ -261,4 +350,439 @@ public class ImageTest extends TestHelper {
     assertEquals(-494666157, img1.hashCode());
     assertEquals(-559592278, img2.hashCode());
   }
+
+  /**
+   * Comparing the heap used by an image to the heap used by the grid of colors it is made from
+   * (which is how images used to store their pixels).
+   */
+  @Test
+  public void testHeapFootprint() {
+    int size = 1000;
+    long baseline = this.usedHeap();
+    Color[][] grid = new Color[size][size];
+    for (int row = 0; row < size; row += 1) {
+      for (int col = 0; col < size; col += 1) {
+        grid[row][col] = new RGBColor(row % 256, col % 256, (row + col) % 256);
+      }
+    }
+    long gridBytes = this.usedHeap() - baseline;
+
+    ImageTransform img = new Image(grid);
+    grid = null;
+    long imageBytes = this.usedHeap() - baseline;
+
+    assertEquals(size, img.getHeight());
+    assertNull(grid);
+    // 4 bytes per pixel, allowing for some noise in the measurement
+    assertTrue(imageBytes < 6L * size * size);
+    // while the grid of colors costs an object and a reference per pixel
+    assertTrue(imageBytes * 4 < gridBytes);
+  }
+
+  // Approximates the amount of heap that is reachable
+  private long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i += 1) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  @Test
+  public void transformPixels() {
+    try {
+      ImageTransform nullImage = img0.transformPixels(null);
+      fail("We operated with a null???");
+    } catch (IllegalArgumentException e) {
+      assertEquals("Function cannot be null.", e.getMessage());
+    }
+
+    // the same as transforming the colors
+    assertEquals(img1.transform((c, y, x) -> new RGBColor(c.getValue(), c.getValue(),
+            c.getValue())),
+        img1.transformPixels((p, y, x)
+            -> Pixels.rgb(Pixels.value(p), Pixels.value(p), Pixels.value(p))));
+    assertEquals(this.imageHorizontal(img1), img1.transformPixels((p, y, x)
+        -> img1.getPixelAt(y, img1.getWidth() - x - 1)));
+
+    // channels are clamped to the max value and the pixels are opaque
+    ImageTransform capped = new Image(img1arr, 50).transformPixels((p, y, x) -> 0x00ff0000);
+    assertEquals(new RGBColor(50, 0, 0), capped.getColorAt(0, 0));
+
+    // pixels of deep images cannot be packed
+    try {
+      ImageTransform deep = new Image(img1arr, 1000).transformPixels((p, y, x) -> p);
+      fail("We packed a deep image.");
+    } catch (IllegalArgumentException e) {
+      assertEquals("Image pixels cannot be packed.", e.getMessage());
+    }
+  }
+
+  @Test
+  public void getPixelAt() {
+    assertEquals(Pixels.argb(c2), img1.getPixelAt(0, 1));
+    assertEquals(Pixels.argb(c6), img2.getPixelAt(1, 2));
+    assertEquals(0xff000000, img1.getPixelAt(0, 0));
+    try {
+      img1.getPixelAt(3, 0);
+      fail("We should not be able to get this pixel.");
+    } catch (IllegalArgumentException e) {
+      assertEquals("Cannot get color from invalid location.", e.getMessage());
+    }
+  }
+
+  // Macros on deep images work on colors, and keep all of their precision
+  @Test
+  public void testDeepImageMacros() {
+    Color deep = new RGBColor(700, 300, 1000);
+    ImageTransform deepImg = new Image(new Color[][]{{deep, c2}}, 1000);
+    assertEquals(deep, deepImg.getColorAt(0, 0));
+    assertEquals(new RGBColor(710, 310, 1000),
+        new Brighten(10).execute(deepImg).getColorAt(0, 0));
+    assertEquals(new RGBColor(1000, 1000, 1000),
+        Component.value().execute(deepImg).getColorAt(0, 0));
+    assertEquals(deep, new HorizontalFlip().execute(deepImg).getColorAt(0, 1));
+  }
+
+  // Point operations give the same channels through their tables as working each one out
+  @Test
+  public void testPointOperations() {
+    ImageTransform img = patternImage(37, 23, 255);
+    ImageTransform brighter = new Brighten(40).execute(img);
+    ImageTransform levels = new Levels(0.2, 2, 0.8).execute(img);
+    for (int y = 0; y < img.getHeight(); y += 1) {
+      for (int x = 0; x < img.getWidth(); x += 1) {
+        Color c = img.getColorAt(y, x);
+        assertEquals(new RGBColor(Math.min(c.getRed() + 40, 255),
+            Math.min(c.getGreen() + 40, 255), Math.min(c.getBlue() + 40, 255)),
+            brighter.getColorAt(y, x));
+        assertEquals(new RGBColor(this.level(c.getRed()), this.level(c.getGreen()),
+            this.level(c.getBlue())), levels.getColorAt(y, x));
+      }
+    }
+
+    // the tables follow the max value of the image
+    ImageTransform small = new Image(new Color[][]{{new RGBColor(45, 0, 10)}}, 50);
+    assertEquals(new RGBColor(50, 5, 15), new Brighten(5).execute(small).getColorAt(0, 0));
+    assertEquals(new RGBColor(0, 0, 0), new Brighten(-50).execute(small).getColorAt(0, 0));
+    ImageTransform deep = new Image(new Color[][]{{new RGBColor(200, 500, 1000)}}, 1000);
+    assertEquals(new RGBColor(0, 500, 1000),
+        new Levels(0.2, 1, 0.8).execute(deep).getColorAt(0, 0));
+    ImageTransform huge = new Image(new Color[][]{{new RGBColor(0, 99990, 100000)}}, 100000);
+    assertEquals(new RGBColor(20, 100000, 100000),
+        new Brighten(20).execute(huge).getColorAt(0, 0));
+
+    // luma is the same through its tables
+    for (int v = 0; v < 256; v += 1) {
+      assertEquals((int) (0.2126 * v + 0.7152 * (255 - v) + 0.0722 * (v / 2)),
+          new RGBColor(v, 255 - v, v / 2).getLuma());
+    }
+    assertEquals(999, new RGBColor(999, 999, 999).getLuma());
+  }
+
+  // Chains of macros give the same image as running each macro in turn
+  @Test
+  public void testMacroChain() {
+    Macro[] macros = new Macro[]{new Sepia(), new MatrixTransform(new double[][]{
+        {1.2, -0.3, 0.1},
+        {0.0, 0.9, 0.4},
+        {-0.5, 0.2, 1.7}
+    }, new double[]{-12.5, 3, 40}), new Brighten(-30), new Brighten(60),
+        new Levels(0.1, 1.4, 0.9), new Component(c -> c.getRed() * 2 - 100), new HorizontalFlip(),
+        Component.luma(), new Brighten(25), new Blur(), new Greyscale(), new Brighten(-10)};
+
+    Color[][] grid = new Color[11][13];
+    for (int row = 0; row < grid.length; row += 1) {
+      for (int col = 0; col < grid[row].length; col += 1) {
+        grid[row][col] = new RGBColor(row * 4, col * 3, (row * col) % 50);
+      }
+    }
+    ImageTransform[] images = new ImageTransform[]{patternImage(37, 23, 255),
+        new Image(grid, 50), new Image(grid, 1000)};
+    for (ImageTransform img : images) {
+      for (int from = 0; from < macros.length; from += 1) {
+        for (int to = from; to <= macros.length; to += 1) {
+          ImageTransform expected = img;
+          for (int i = from; i < to; i += 1) {
+            expected = macros[i].execute(expected);
+          }
+          Macro chain = new MacroChain(Arrays.copyOfRange(macros, from, to));
+          assertEquals(expected, chain.execute(img));
+        }
+      }
+    }
+  }
+
+  // Flips, rotations, and crops move the pixels of the image to the right places
+  @Test
+  public void testGeometricViews() {
+    Color[][] grid = new Color[11][13];
+    for (int row = 0; row < grid.length; row += 1) {
+      for (int col = 0; col < grid[row].length; col += 1) {
+        grid[row][col] = new RGBColor(row * 20, col * 17, (row * col) % 250);
+      }
+    }
+    for (ImageTransform img : new ImageTransform[]{new Image(grid), new Image(grid, 1000)}) {
+      int h = img.getHeight();
+      int w = img.getWidth();
+      ImageTransform horizontal = new HorizontalFlip().execute(img);
+      ImageTransform vertical = new VerticalFlip().execute(img);
+      ImageTransform clockwise = new Rotate(1).execute(img);
+      ImageTransform halfTurn = new Rotate(2).execute(img);
+      ImageTransform counterclockwise = new Rotate(-1).execute(img);
+      ImageTransform cropped = new Crop(2, 3, 5, 4).execute(img);
+      assertEquals(w, clockwise.getHeight());
+      assertEquals(h, clockwise.getWidth());
+      assertEquals(5, cropped.getHeight());
+      assertEquals(4, cropped.getWidth());
+      for (int row = 0; row < h; row += 1) {
+        for (int col = 0; col < w; col += 1) {
+          Color c = img.getColorAt(row, col);
+          assertEquals(c, horizontal.getColorAt(row, w - col - 1));
+          assertEquals(c, vertical.getColorAt(h - row - 1, col));
+          assertEquals(c, clockwise.getColorAt(col, h - row - 1));
+          assertEquals(c, halfTurn.getColorAt(h - row - 1, w - col - 1));
+          assertEquals(c, counterclockwise.getColorAt(w - col - 1, row));
+          if (row >= 2 && row < 7 && col >= 3 && col < 7) {
+            assertEquals(c, cropped.getColorAt(row - 2, col - 3));
+          }
+        }
+      }
+
+      // views of views, compared with the same images built pixel by pixel
+      assertEquals(img, new Rotate(4).execute(img));
+      assertEquals(img, new Rotate(-1).execute(clockwise));
+      assertEquals(halfTurn, new VerticalFlip().execute(horizontal));
+      assertEquals(halfTurn, new Rotate(1).execute(clockwise));
+      ImageTransform view = new Crop(1, 2, 6, 3).execute(new Rotate(1).execute(horizontal));
+      Color[][] expected = new Color[6][3];
+      for (int row = 0; row < 6; row += 1) {
+        for (int col = 0; col < 3; col += 1) {
+          // the rotation turns rows of the flip into columns read from the bottom up
+          expected[row][col] = img.getColorAt(h - 3 - col, w - 2 - row);
+        }
+      }
+      ImageTransform built = new Image(expected, img.getMaxValue());
+      assertEquals(built, view);
+      assertEquals(view, built);
+      assertEquals(built.hashCode(), view.hashCode());
+      assertEquals(new Brighten(10).execute(built), new Brighten(10).execute(view));
+      assertEquals(new Blur().execute(built), new Blur().execute(view));
+      assertEquals(new Sepia().execute(built), new Sepia().execute(view));
+      assertEquals(new Downscale(3, 2).execute(built), new Downscale(3, 2).execute(view));
+      assertEquals(Component.red().execute(built), Component.red().execute(view));
+      assertEquals(new ObservableImage(built), view);
+      assertEquals(new Image(0, 0, img.getMaxValue()), new Crop(3, 4, 0, 0).execute(img));
+    }
+  }
+
+  // Images spread over several pages read and write the same pixels across page boundaries
+  @Test
+  public void testPagedImages() {
+    // a page ends part of the way through a row
+    Color[][] grid = new Color[67][71];
+    for (int row = 0; row < grid.length; row += 1) {
+      for (int col = 0; col < grid[row].length; col += 1) {
+        grid[row][col] = new RGBColor((row * 3 + col) % 256, (col * 7) % 256, (row * col) % 250);
+      }
+    }
+    for (ImageTransform img : new ImageTransform[]{new Image(grid), new Image(grid, 1000)}) {
+      int h = img.getHeight();
+      int w = img.getWidth();
+      ImageTransform clockwise = new Rotate(1).execute(img);
+      ImageTransform cropped = new Crop(50, 20, 17, 40).execute(img);
+      int[] pixels = new int[w];
+      int[] channels = new int[w * 3];
+      for (int row = 0; row < h; row += 1) {
+        img.getPixelRow(row, pixels);
+        img.getChannelRow(row, channels);
+        for (int col = 0; col < w; col += 1) {
+          Color c = img.getColorAt(row, col);
+          assertEquals(new RGBColor(grid[row][col].getRed(), grid[row][col].getGreen(),
+              grid[row][col].getBlue()), c);
+          assertEquals(Pixels.rgb(c.getRed(), c.getGreen(), c.getBlue()), pixels[col]);
+          assertEquals(c.getBlue(), channels[col * 3 + 2]);
+          assertEquals(c, clockwise.getColorAt(col, h - row - 1));
+          if (row >= 50 && col >= 20 && col < 60) {
+            assertEquals(c, cropped.getColorAt(row - 50, col - 20));
+          }
+        }
+      }
+      assertEquals(img, new Rotate(-1).execute(clockwise));
+      assertEquals(img, img.transform((c, y, x) -> c));
+      Color[][] halved = new Color[h][w];
+      for (int row = 0; row < h; row += 1) {
+        for (int col = 0; col < w; col += 1) {
+          Color c = grid[row][col];
+          halved[row][col] = new RGBColor(c.getRed() / 2, c.getGreen(), c.getBlue());
+        }
+      }
+      assertEquals(new Image(halved, img.getMaxValue()), img.transform((c, y, x)
+          -> new RGBColor(c.getRed() / 2, c.getGreen(), c.getBlue())));
+    }
+
+    // pixels given as one array are split into pages, sharing those of the base image
+    ImageTransform img = new Image(grid);
+    int[] pixels = new int[67 * 71];
+    int[] line = new int[71];
+    for (int row = 0; row < 67; row += 1) {
+      img.getPixelRow(row, line);
+      System.arraycopy(line, 0, pixels, row * 71, 71);
+    }
+    pixels[pixels.length - 1] = Pixels.rgb(1, 2, 3);
+    ImageTransform built = Image.fromPixels(pixels.clone(), 67, 71, 255);
+    assertEquals(built, Image.fromPixels(pixels, 67, 71, 255, img));
+    assertEquals(Pixels.rgb(1, 2, 3), built.getPixelAt(66, 70));
+    assertEquals(img.getColorAt(66, 69), built.getColorAt(66, 69));
+
+    // pixels decoded straight into pages are kept, not copied
+    int[][] pages = Image.newPages(67, 71, 255);
+    assertEquals(2, pages.length);
+    assertEquals(Image.PAGE_PIXELS, pages[0].length);
+    for (int i = 0; i < pixels.length; i += 1) {
+      pages[i / Image.PAGE_PIXELS][i % Image.PAGE_PIXELS] = pixels[i];
+    }
+    long bytes = this.allocatedBytes(() -> assertEquals(built,
+        Image.fromPages(pages, 67, 71, 255)));
+    assertTrue(bytes < 67 * 71);
+    int[][] deep = Image.newPages(1, 2, 1000);
+    deep[0][0] = 2000;
+    assertEquals(new RGBColor(1000, 0, 0), Image.fromPages(deep, 1, 2, 1000).getColorAt(0, 0));
+    try {
+      Image.fromPages(Image.newPages(1, 2, 255), 1, 2, 1000);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("Pixel pages do not match the image dimensions.", e.getMessage());
+    }
+  }
+
+  // Flipping does not copy the pixels of the image
+  @Test
+  public void testGeometricViewsDoNotCopy() {
+    ImageTransform img = patternImage(300, 300, 255);
+    long bytes = this.allocatedBytes(() -> {
+      ImageTransform view = img;
+      for (int i = 0; i < 100; i += 1) {
+        view = new HorizontalFlip().execute(new VerticalFlip().execute(view));
+        view = new Crop(1, 1, view.getHeight() - 2, view.getWidth() - 2).execute(view);
+        view = new Rotate(i).execute(view);
+      }
+    });
+    assertTrue(bytes < 300 * 300);
+  }
+
+  // the levels of a channel of an image with max value 255 for Levels(0.2, 2, 0.8)
+  private int level(int channel) {
+    double level = Math.max(Math.min((channel / 255.0 - 0.2) / 0.6, 1), 0);
+    return (int) Math.round(255 * Math.pow(level, 0.5));
+  }
+
+  @Test
+  public void testSeparableConvolve() {
+    assertTrue(new Blur().isSeparable());
+    assertTrue(new Convolve(this.gaussian(15, 2.5)).isSeparable());
+    assertTrue(new Convolve(new double[][]{{1, 2, 3}, {2, 4, 6}, {-1, -2, -3}}).isSeparable());
+    assertFalse(new Sharpen().isSeparable());
+    assertFalse(new Convolve(new double[][]{{0, 0, 0}, {0, 0, 0}, {0, 0, 0}}).isSeparable());
+    assertFalse(new Convolve(new double[][]{{1, 0, 0}, {0, 1, 0}, {0, 0, 1}}).isSeparable());
+
+    ImageTransform img = patternImage(37, 23, 255);
+    // blurring is exact, since every factor is a power of two
+    assertEquals(this.imageConvolve(img, blur), new Blur().execute(img));
+    assertEquals(this.imageConvolve(img1, blur), new Blur().execute(img1));
+    assertEquals(this.imageConvolve(oneByOne, blur), new Blur().execute(oneByOne));
+    double[][] integers = new double[][]{{1, 2, 3}, {2, 4, 6}, {-1, -2, -3}};
+    assertEquals(this.imageConvolve(img, integers), new Convolve(integers).execute(img));
+
+    // other kernels may round the last bit differently, which can only change a channel by one
+    double[][] gaussian = this.gaussian(15, 2.5);
+    ImageState expected = this.imageConvolve(img, gaussian);
+    ImageState actual = new Convolve(gaussian).execute(img);
+    for (int row = 0; row < img.getHeight(); row += 1) {
+      for (int col = 0; col < img.getWidth(); col += 1) {
+        Color e = expected.getColorAt(row, col);
+        Color a = actual.getColorAt(row, col);
+        assertTrue(Math.abs(e.getRed() - a.getRed()) <= 1);
+        assertTrue(Math.abs(e.getGreen() - a.getGreen()) <= 1);
+        assertTrue(Math.abs(e.getBlue() - a.getBlue()) <= 1);
+      }
+    }
+  }
+
+  // Kernels that are not separable must give exactly the same output as a plain convolution,
+  // both in the interior and near the borders
+  @Test
+  public void testDirectConvolve() {
+    double[][] uneven = new double[][]{
+        {0.1, -0.3, 0.7, 0.2, 0.05},
+        {0.3, 0.9, -0.2, 0.1, 0.4},
+        {-0.6, 0.2, 1.3, 0.2, 0.6},
+        {0.1, 0.25, 0.3, -0.7, 0.1},
+        {0.05, 0.2, 0.1, 0.2, 0.3}};
+    assertFalse(new Convolve(uneven).isSeparable());
+    ImageTransform[] images = new ImageTransform[]{patternImage(37, 23, 255),
+        patternImage(1, 1, 255), patternImage(3, 40, 255), patternImage(40, 3, 255),
+        patternImage(5, 5, 255), patternImage(6, 9, 255), img1, img2};
+    for (ImageTransform img : images) {
+      assertEquals(this.imageConvolve(img, sharpen), new Sharpen().execute(img));
+      assertEquals(this.imageConvolve(img, uneven), new Convolve(uneven).execute(img));
+    }
+  }
+
+  // A normalized size by size gaussian kernel
+  private double[][] gaussian(int size, double sigma) {
+    double[] weights = new double[size];
+    double total = 0;
+    for (int i = 0; i < size; i += 1) {
+      double d = i - size / 2;
+      weights[i] = Math.exp(-d * d / (2 * sigma * sigma));
+      total += weights[i];
+    }
+    double[][] kernel = new double[size][size];
+    for (int row = 0; row < size; row += 1) {
+      for (int col = 0; col < size; col += 1) {
+        kernel[row][col] = weights[row] * weights[col] / (total * total);
+      }
+    }
+    return kernel;
+  }
+
+  // Built-in macros should only allocate the new images, not an object per pixel
+  @Test
+  public void testMacrosDoNotAllocatePerPixel() {
+    int size = 200;
+    Color[][] grid = new Color[size][size];
+    for (int row = 0; row < size; row += 1) {
+      for (int col = 0; col < size; col += 1) {
+        grid[row][col] = new RGBColor(row % 256, col % 256, (row * col) % 256);
+      }
+    }
+    ImageTransform img = new Image(grid);
+    ImageTransform mask = new Image(grid).transformPixels((p, y, x)
+        -> (x + y) % 2 == 0 ? Pixels.rgb(0, 0, 0) : p);
+    Macro[] macros = new Macro[]{new Brighten(10), Component.red(), Component.green(),
+        Component.blue(), Component.value(), Component.intensity(), Component.luma(),
+        new HorizontalFlip(), new VerticalFlip(), new Blur(), new Sharpen(), new Greyscale(),
+        new Sepia(), new Downscale(100, 100), new Mask(new Blur(), mask),
+        new Levels(0.1, 1.5, 0.9)};
+
+    for (Macro macro : macros) {
+      // warm up
+      macro.execute(img);
+      long allocated = this.allocatedBytes(() -> macro.execute(img));
+      // the new image (and the one edited under the mask), with some room for noise
+      assertTrue(macro.getClass().getSimpleName() + " allocated " + allocated,
+          allocated < 3L * 4 * size * size);
+    }
+  }
+
+  // The number of bytes allocated by this thread while running the runnable
+  private long allocatedBytes(Runnable runnable) {
+    com.sun.management.ThreadMXBean bean =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long id = Thread.currentThread().getId();
+    long before = bean.getThreadAllocatedBytes(id);
+    runnable.run();
+    return bean.getThreadAllocatedBytes(id) - before;
+  }
 }
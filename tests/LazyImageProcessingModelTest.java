@@ -0,0 +1,194 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.function.IntUnaryOperator;
+
+import model.ImageState;
+import model.ImageTransform;
+import model.LazyImageProcessingModel;
+import model.macros.Brighten;
+import model.macros.Macro;
+import model.macros.PixelOperation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for the lazy model, which must behave as the eager model does (every test of the eager
+ * model is run again on it) apart from when macros run.
+ */
+public class LazyImageProcessingModelTest extends ImageProcessingModelImplTest {
+  private LazyImageProcessingModel lazy;
+
+  @Before
+  public void initLazyModel() {
+    this.lazy = new LazyImageProcessingModel();
+    this.model = this.lazy;
+  }
+
+  // The macro runs when the image is first asked for, and only then
+  @Override
+  @Test
+  public void testRunCommand() {
+    model.createImage(img1arr, "twoByThree", 255);
+    StringBuilder out = new StringBuilder();
+    model.runCommand(img -> {
+      out.append("called once");
+      return img;
+    }, "twoByThree", "changedImage");
+    assertEquals("", out.toString());
+    assertFalse(lazy.isMaterialized("changedImage"));
+    assertEquals(img1, model.getImage("changedImage"));
+    assertEquals(img1, model.getImage("changedImage"));
+    assertEquals("called once", out.toString());
+    assertTrue(lazy.isMaterialized("changedImage"));
+  }
+
+  // Images that nothing asked for is made from are never worked out
+  @Test
+  public void testUnusedImages() {
+    StringBuilder out = new StringBuilder();
+    model.createImage(img1arr, "img", 255);
+    model.runCommand(this.logged("a", out), "img", "a");
+    model.runCommand(this.logged("b", out), "a", "b");
+    model.runCommand(this.logged("unused", out), "a", "unused");
+    model.runCommand(this.logged("c", out), "b", "c");
+    assertEquals("", out.toString());
+    assertEquals(new Brighten(3).execute(img1), model.getImage("c"));
+    assertEquals("abc", out.toString());
+    assertTrue(lazy.isMaterialized("a"));
+    assertFalse(lazy.isMaterialized("unused"));
+  }
+
+  // Running the same macro on the same image again shares the work
+  @Test
+  public void testSharedRecipes() {
+    StringBuilder out = new StringBuilder();
+    Macro brighten = this.logged("x", out);
+    model.createImage(img1arr, "img", 255);
+    model.runCommand(brighten, "img", "first");
+    model.runCommand(brighten, "img", "second");
+    model.runCommand(new Brighten(1), "first", "third");
+    model.runCommand(new Brighten(1), "second", "fourth");
+    assertEquals(model.getImage("third"), model.getImage("fourth"));
+    assertEquals("x", out.toString());
+
+    // renaming over an image does not change the images made from it
+    model.createImage(img2arr, "img", 255);
+    assertEquals(new Brighten(2).execute(img1), model.getImage("fourth"));
+  }
+
+  // Long chains are worked out without recursing through them
+  @Test
+  public void testLongChain() {
+    model.createImage(img1arr, "img", 255);
+    for (int i = 0; i < 100000; i += 1) {
+      model.runCommand(new Brighten(i % 2 == 0 ? 1 : -1), "img", "img");
+    }
+    assertEquals(img1, model.getImage("img"));
+  }
+
+  // A macro that fails does so when its image is asked for
+  @Test
+  public void testLateFailure() {
+    model.createImage(img1arr, "img", 255);
+    model.runCommand(img -> null, "img", "broken");
+    ImageState img = model.getImage("img");
+    assertEquals(img1, img);
+    try {
+      model.getImage("broken");
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("Macro did not return an image", e.getMessage());
+    }
+    try {
+      lazy.isMaterialized("missing");
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("Unknown image.", e.getMessage());
+    }
+  }
+
+  // Recipes without a name are not shared any more, so they can be freed
+  @Test
+  public void testRemovedRecipes() {
+    StringBuilder out = new StringBuilder();
+    Macro brighten = this.logged("x", out);
+    model.createImage(img1arr, "img", 255);
+    model.runCommand(brighten, "img", "first");
+    model.runCommand(brighten, "img", "second");
+    model.removeImage("first");
+    assertEquals(new Brighten(1).execute(img1), model.getImage("second"));
+    model.removeImage("second");
+    model.runCommand(brighten, "img", "third");
+    assertFalse(lazy.isMaterialized("third"));
+    assertEquals(new Brighten(1).execute(img1), model.getImage("third"));
+    assertEquals("xx", out.toString());
+
+    // images made from a removed image can still be worked out
+    model.runCommand(brighten, "third", "fourth");
+    model.removeImage("third");
+    model.removeImage("img");
+    assertEquals(new Brighten(2).execute(img1), model.getImage("fourth"));
+  }
+
+  // Chains of pixel operations whose images in between have no name run in a single pass
+  @Test
+  public void testFusedChains() {
+    StringBuilder out = new StringBuilder();
+    model.createImage(img1arr, "img", 255);
+    model.runCommand(this.loggedPixels("a", out), "img", "x");
+    model.runCommand(this.loggedPixels("b", out), "x", "x");
+    model.runCommand(this.loggedPixels("c", out), "x", "x");
+    assertEquals(new Brighten(3).execute(img1), model.getImage("x"));
+    assertEquals("abc", out.toString());
+
+    // images that are still named, or that another image is made from, are built on their own
+    out.setLength(0);
+    model.runCommand(this.loggedPixels("d", out), "x", "named");
+    model.runCommand(this.loggedPixels("e", out), "named", "y");
+    model.runCommand(this.loggedPixels("f", out), "y", "shared");
+    model.runCommand(this.loggedPixels("g", out), "shared", "z");
+    model.runCommand(new Brighten(1), "shared", "other");
+    model.removeImage("shared");
+    model.runCommand(this.loggedPixels("h", out), "z", "z");
+    assertEquals(new Brighten(8).execute(img1), model.getImage("z"));
+    assertEquals("DEFgh", out.toString());
+    assertEquals(new Brighten(7).execute(img1), model.getImage("other"));
+    assertEquals("DEFgh", out.toString());
+
+    // other macros are not fused
+    out.setLength(0);
+    model.runCommand(this.logged("i", out), "img", "w");
+    model.runCommand(this.loggedPixels("j", out), "w", "w");
+    assertEquals(new Brighten(2).execute(img1), model.getImage("w"));
+    assertEquals("iJ", out.toString());
+  }
+
+  // a pixel operation that brightens by 1, logging its name when it runs on its own, and its name
+  // in lower case when it is fused with others
+  private Macro loggedPixels(String name, StringBuilder out) {
+    return new PixelOperation() {
+      @Override
+      public ImageTransform execute(ImageTransform img) {
+        out.append(name.toUpperCase());
+        return new Brighten(1).execute(img);
+      }
+
+      @Override
+      public IntUnaryOperator pixelOperation(int maxValue) {
+        out.append(name);
+        return new Brighten(1).pixelOperation(maxValue);
+      }
+    };
+  }
+
+  private Macro logged(String name, StringBuilder out) {
+    return img -> {
+      out.append(name);
+      return new Brighten(1).execute(img);
+    };
+  }
+}
@@ -0,0 +1,174 @@
+import org.junit.Test;
+
+import model.Image;
+import model.ImageProcessingModel;
+import model.ImageProcessingModelImpl;
+import model.ImageStore;
+import model.ImageTransform;
+import model.MacroCache;
+import model.macros.Blur;
+import model.macros.Brighten;
+import model.macros.Component;
+import model.macros.Convolve;
+import model.macros.Crop;
+import model.macros.Downscale;
+import model.macros.Greyscale;
+import model.macros.HorizontalFlip;
+import model.macros.Levels;
+import model.macros.Macro;
+import model.macros.MacroChain;
+import model.macros.Mask;
+import model.macros.MatrixTransform;
+import model.macros.Rotate;
+import model.macros.Sepia;
+import model.macros.Sharpen;
+import model.macros.VerticalFlip;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for remembering the results of macros, and for the equality of macros it relies on.
+ */
+public class MacroCacheTest extends TestHelper {
+  // Macros with the same parameters are equal, and those with different ones are not
+  @Test
+  public void testMacroEquality() {
+    Macro[][] equal = new Macro[][]{
+        {new Brighten(10), new Brighten(10)},
+        {new Levels(0.1, 1.5, 0.9), new Levels(0.1, 1.5, 0.9)},
+        {new Crop(1, 2, 3, 4), new Crop(1, 2, 3, 4)},
+        {new Downscale(5, 6), new Downscale(5, 6)},
+        {new Rotate(1), new Rotate(-3)},
+        {new HorizontalFlip(), new HorizontalFlip()},
+        {new VerticalFlip(), new VerticalFlip()},
+        {new Blur(), new Blur()},
+        {new Sharpen(), new Convolve(new double[][]{
+            {-1 / 8., -1 / 8., -1 / 8., -1 / 8., -1 / 8.},
+            {-1 / 8., 1 / 4., 1 / 4., 1 / 4., -1 / 8.},
+            {-1 / 8., 1 / 4., 1, 1 / 4., -1 / 8.},
+            {-1 / 8., 1 / 4., 1 / 4., 1 / 4., -1 / 8.},
+            {-1 / 8., -1 / 8., -1 / 8., -1 / 8., -1 / 8.}})},
+        {new Sepia(), new Sepia()},
+        {new Greyscale(), new MatrixTransform(new double[][]{
+            {0.393, 0.769, 0.189}, {0.393, 0.769, 0.189}, {0.393, 0.769, 0.189}})},
+        {Component.luma(), Component.luma()},
+        {new MacroChain(new Blur(), new Brighten(1)), new MacroChain(new Blur(), new Brighten(1))},
+        {new Mask(new Brighten(1), img1), new Mask(new Brighten(1), new Image(img1arr, 255))}
+    };
+    for (Macro[] pair : equal) {
+      assertEquals(pair[0], pair[1]);
+      assertEquals(pair[0].hashCode(), pair[1].hashCode());
+    }
+
+    Macro[][] different = new Macro[][]{
+        {new Brighten(10), new Brighten(11)},
+        {new Levels(0.1, 1.5, 0.9), new Levels(0.1, 1.6, 0.9)},
+        {new Crop(1, 2, 3, 4), new Crop(1, 2, 4, 3)},
+        {new Downscale(5, 6), new Downscale(6, 5)},
+        {new Rotate(1), new Rotate(2)},
+        {new HorizontalFlip(), new VerticalFlip()},
+        {new Blur(), new Sharpen()},
+        {new Sepia(), new Greyscale()},
+        {Component.luma(), Component.red()},
+        {new Component(c -> 0), new Component(c -> 0)},
+        {new MacroChain(new Blur(), new Brighten(1)), new MacroChain(new Brighten(1), new Blur())},
+        {new Mask(new Brighten(1), img1), new Mask(new Brighten(1), img2)},
+        {new Mask(new Brighten(1), img1), new Brighten(1)}
+    };
+    for (Macro[] pair : different) {
+      assertNotEquals(pair[0], pair[1]);
+    }
+  }
+
+  // Running an equal macro on the same image gives back the same result
+  @Test
+  public void testHits() {
+    MacroCache cache = new MacroCache(1 << 20);
+    ImageTransform result = cache.run(new Brighten(10), img1);
+    assertEquals(new Brighten(10).execute(img1), result);
+    assertSame(result, cache.run(new Brighten(10), img1));
+    assertEquals(new Brighten(11).execute(img1), cache.run(new Brighten(11), img1));
+    assertEquals(new Brighten(10).execute(img2), cache.run(new Brighten(10), img2));
+    assertEquals(1, cache.getHits());
+    assertEquals(3, cache.getMisses());
+    assertEquals(3, cache.size());
+
+    StringBuilder out = new StringBuilder();
+    Macro logged = img -> {
+      out.append("x");
+      return img;
+    };
+    cache.run(logged, img1);
+    cache.run(logged, img1);
+    cache.run(img -> {
+      out.append("y");
+      return img;
+    }, img1);
+    assertEquals("xy", out.toString());
+  }
+
+  // The least recently used results are forgotten to stay within the budget
+  @Test
+  public void testBudget() {
+    MacroCache cache = new MacroCache(2 * 6 * 4);
+    ImageTransform first = cache.run(new Brighten(1), img1);
+    cache.run(new Brighten(2), img1);
+    assertSame(first, cache.run(new Brighten(1), img1));
+    cache.run(new Brighten(3), img1);
+    assertEquals(2, cache.size());
+    assertSame(first, cache.run(new Brighten(1), img1));
+    assertEquals(new Brighten(2).execute(img1), cache.run(new Brighten(2), img1));
+    assertEquals(4, cache.getMisses());
+
+    MacroCache none = new MacroCache(0);
+    none.run(new Brighten(1), img1);
+    none.run(new Brighten(1), img1);
+    assertEquals(0, none.size());
+    assertEquals(0, none.getHits());
+  }
+
+  // The model runs commands through the cache
+  @Test
+  public void testModel() {
+    MacroCache cache = new MacroCache(1 << 20);
+    ImageProcessingModel cached = new ImageProcessingModelImpl(new ImageStore(), cache);
+    cached.createImage(img1arr, "img", 255);
+    cached.runCommand(new Blur(), "img", "a");
+    cached.runCommand(new Blur(), "img", "b");
+    cached.runCommand(new Brighten(5), "b", "c");
+    cached.runCommand(new Brighten(5), "a", "d");
+    assertEquals(2, cache.getHits());
+    assertEquals(new Brighten(5).execute(new Blur().execute(img1)), cached.getImage("d"));
+  }
+
+  @Test
+  public void testInvalidCaches() {
+    try {
+      new MacroCache(-1);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("Budget cannot be negative.", e.getMessage());
+    }
+    try {
+      new ImageProcessingModelImpl(new ImageStore(), null);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("Macro cache cannot be null.", e.getMessage());
+    }
+    try {
+      new MacroCache().run(null, img1);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("Macro cannot be null.", e.getMessage());
+    }
+    try {
+      new MacroCache().run(new Blur(), null);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("Image cannot be null.", e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,105 @@
+import org.junit.Test;
+
+import java.nio.IntBuffer;
+
+import model.Color;
+import model.Image;
+import model.ImageTransform;
+import model.MappedImage;
+import model.Pixels;
+import model.RGBColor;
+import model.macros.Blur;
+import model.macros.Brighten;
+import model.macros.Sepia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for images read from buffers, which must behave the same as images with the same pixels.
+ */
+public class MappedImageTest {
+  // Every view and transform of a mapped image is the same as that of the image it holds
+  @Test
+  public void testSameAsImage() {
+    for (int maxValue : new int[]{255, 100, 1000}) {
+      ImageTransform img = TestHelper.patternImage(37, 53, maxValue);
+      ImageTransform mapped = map(img);
+      assertEquals(img, mapped);
+      assertEquals(mapped, img);
+      assertEquals(img.hashCode(), mapped.hashCode());
+      assertEquals(img.getColorAt(5, 7), mapped.getColorAt(5, 7));
+      assertEquals(img.getPixelAt(36, 52), mapped.getPixelAt(36, 52));
+      assertEquals(img.flipHorizontal(), mapped.flipHorizontal());
+      assertEquals(img.flipVertical(), mapped.flipVertical());
+      for (int turns = -1; turns <= 4; turns += 1) {
+        assertEquals(img.rotate(turns), mapped.rotate(turns));
+      }
+      assertEquals(img.crop(3, 4, 20, 10).rotate(1).flipHorizontal(),
+          mapped.crop(3, 4, 20, 10).rotate(1).flipHorizontal());
+      assertEquals(new Blur().execute(img), new Blur().execute(mapped));
+      assertEquals(new Sepia().execute(img), new Sepia().execute(mapped));
+      assertEquals(new Brighten(-40).execute(img.flipVertical()),
+          new Brighten(-40).execute(mapped.flipVertical()));
+      assertNotEquals(img.flipVertical(), mapped);
+    }
+  }
+
+  // Channels out of range in the buffer are clamped as they are read
+  @Test
+  public void testClamped() {
+    int[] pixels = new int[]{0x00ff8040, Pixels.rgb(1, 2, 3)};
+    MappedImage packed = new MappedImage(IntBuffer.wrap(pixels), 1, 2, 100);
+    assertEquals(new Image(new Color[][]{{new RGBColor(100, 100, 64),
+        new RGBColor(1, 2, 3)}}, 100), packed);
+    MappedImage deep = new MappedImage(IntBuffer.wrap(new int[]{-5, 2000, 300}), 1, 1, 1000);
+    assertEquals(new RGBColor(0, 1000, 300), deep.getColorAt(0, 0));
+  }
+
+  @Test
+  public void testInvalid() {
+    try {
+      new MappedImage(null, 1, 1, 255);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("Pixel buffer cannot be null.", e.getMessage());
+    }
+    try {
+      new MappedImage(IntBuffer.allocate(3), 1, 1, 255);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("Pixel buffer does not match the image dimensions.", e.getMessage());
+    }
+    try {
+      new MappedImage(IntBuffer.allocate(0), -1, 0, 255);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("Invalid image dimensions.", e.getMessage());
+    }
+    try {
+      new MappedImage(IntBuffer.allocate(3), 1, 1, 1000).transformPixels((p, y, x) -> p);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("Image pixels cannot be packed.", e.getMessage());
+    }
+  }
+
+  // a mapped image with the pixels of the image, in the order images store them
+  private static MappedImage map(ImageTransform img) {
+    boolean packed = Pixels.isPackable(img.getMaxValue());
+    int stride = packed ? 1 : 3;
+    int[] pixels = new int[img.getHeight() * img.getWidth() * stride];
+    int[] row = new int[img.getWidth() * stride];
+    for (int r = 0; r < img.getHeight(); r += 1) {
+      if (packed) {
+        img.getPixelRow(r, row);
+      } else {
+        img.getChannelRow(r, row);
+      }
+      System.arraycopy(row, 0, pixels, r * row.length, row.length);
+    }
+    return new MappedImage(IntBuffer.wrap(pixels), img.getHeight(), img.getWidth(),
+        img.getMaxValue());
+  }
+}
@@ -0,0 +1,135 @@
+import org.junit.Test;
+
+import model.Image;
+import model.ImageState;
+import model.ImageTransform;
+import model.Pixels;
+import model.RGBColor;
+import model.macros.Blur;
+import model.macros.Brighten;
+import model.macros.Component;
+import model.macros.Convolve;
+import model.macros.Downscale;
+import model.macros.HorizontalFlip;
+import model.macros.Macro;
+import model.macros.Mask;
+import model.macros.MaskRegion;
+import model.macros.Sepia;
+import model.macros.Sharpen;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for masks, which must give the same image as running the macro on the whole image and
+ * keeping its pixels where the mask is black, however much of the image the mask selects.
+ */
+public class MaskTest extends TestHelper {
+  // Every kind of macro, on sparse and dense masks, and on packed and deeper images
+  @Test
+  public void testSameAsWholeImage() {
+    Macro[] macros = new Macro[]{new Blur(), new Sharpen(), new Brighten(30), new Sepia(),
+        Component.luma(), new HorizontalFlip(), new Convolve(new double[][]{{0, 0, 0},
+        {0, 0, 1}, {0, 0, 0}})};
+    for (int maxValue : new int[]{255, 1000}) {
+      ImageTransform img = patternImage(150, 200, maxValue);
+      ImageState[] masks = new ImageState[]{
+          // a small disc, well within a tile
+          mask(150, 200, (y, x) -> Math.hypot(y - 70, x - 100) < 8),
+          // a few pixels on the edges and corners of tiles and of the image
+          mask(150, 200, (y, x) -> (y == 0 || y == 63 || y == 64 || y == 149)
+              && (x == 0 || x == 63 || x == 64 || x == 199)),
+          // stripes over most of the image
+          mask(150, 200, (y, x) -> x % 3 != 0),
+          mask(150, 200, (y, x) -> true),
+          mask(150, 200, (y, x) -> false)};
+      for (Macro macro : macros) {
+        for (ImageState mask : masks) {
+          assertEquals(this.wholeImage(macro, mask, img), new Mask(macro, mask).execute(img));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testRegion() {
+    MaskRegion region = MaskRegion.of(mask(70, 130, (y, x) -> y == 65 && x >= 60 && x < 70
+        || y == 2 && (x == 0 || x == 129)));
+    assertEquals(12, region.getSelectedPixels());
+    assertEquals(4, region.getSelectedTiles());
+    assertTrue(region.isSelected(65, 60));
+    assertTrue(region.isSelected(65, 69));
+    assertFalse(region.isSelected(65, 70));
+    assertFalse(region.isSelected(65, 59));
+    assertTrue(region.isSelected(2, 129));
+    assertArrayEquals(new int[]{2, 0, 66, 130}, region.getBounds());
+    assertEquals(12.0 / (70 * 130), region.getCoverage(), 1e-12);
+    assertArrayEquals(new int[]{0, 0, 0, 0},
+        MaskRegion.of(mask(5, 5, (y, x) -> false)).getBounds());
+    assertFalse(region.isSelected(3, 129));
+    try {
+      region.isSelected(70, 0);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("Cannot get color from invalid location.", e.getMessage());
+    }
+    try {
+      MaskRegion.of(null);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("Mask image cannot be null.", e.getMessage());
+    }
+  }
+
+  // A mask built from a region works the same as one built from its image
+  @Test
+  public void testSharedRegion() {
+    ImageState mask = mask(150, 200, (y, x) -> Math.hypot(y - 70, x - 100) < 8);
+    ImageTransform img = new Image(150, 200, 255).transformPixels((p, y, x)
+        -> Pixels.rgb(y, x, y + x));
+    MaskRegion region = MaskRegion.of(mask);
+    assertEquals(new Mask(new Blur(), mask), new Mask(new Blur(), region));
+    assertEquals(new Mask(new Blur(), mask).execute(img),
+        new Mask(new Blur(), region).execute(img));
+    try {
+      new Mask(new Blur(), (MaskRegion) null);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("Mask image cannot be null.", e.getMessage());
+    }
+  }
+
+  // Macros that change the size of the image still fail under any mask
+  @Test
+  public void testResizingMacro() {
+    for (boolean sparse : new boolean[]{true, false}) {
+      try {
+        new Mask(new Downscale(2, 2), mask(3, 2, (y, x) -> sparse && y == 0)).execute(img1);
+        fail();
+      } catch (IllegalArgumentException e) {
+        assertEquals("Resulting image dimensions must be the same as image dimensions.",
+            e.getMessage());
+      }
+    }
+  }
+
+  // runs the macro on the whole image, keeping its pixels where the mask is black
+  private ImageTransform wholeImage(Macro macro, ImageState mask, ImageTransform img) {
+    ImageTransform edited = macro.execute(img);
+    return img.transform((c, y, x)
+        -> mask.getColorAt(y, x).equals(new RGBColor(0, 0, 0)) ? edited.getColorAt(y, x) : c);
+  }
+
+  // builds a mask that is black where the test holds, and white elsewhere
+  private static ImageState mask(int height, int width, PixelTest test) {
+    return new Image(height, width, 255).transformPixels((p, y, x)
+        -> test.selects(y, x) ? Pixels.rgb(0, 0, 0) : Pixels.rgb(255, 255, 255));
+  }
+
+  private interface PixelTest {
+    boolean selects(int row, int col);
+  }
+}
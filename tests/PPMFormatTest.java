@@ -0,0 +1,245 @@
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import controller.ImageProcessingControllerImpl;
+import controller.io.PPMFormat;
+import controller.io.PPMReader;
+import controller.io.PPMWriter;
+import model.Color;
+import model.Image;
+import model.ImageProcessingModel;
+import model.ImageProcessingModelImpl;
+import model.ImageTransform;
+import model.RGBColor;
+import model.macros.Component;
+import view.ImageProcessingViewImpl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for reading and writing the PPM formats.
+ */
+public class PPMFormatTest {
+  @Test
+  public void testMagic() {
+    assertEquals(PPMFormat.P3, PPMFormat.fromMagic("P3"));
+    assertEquals(PPMFormat.P5, PPMFormat.fromMagic("p5"));
+    assertEquals(PPMFormat.P6, PPMFormat.fromMagic("P6"));
+    assertFalse(PPMFormat.P3.isBinary());
+    assertEquals(1, PPMFormat.P5.getSamplesPerPixel());
+    assertEquals(3, PPMFormat.P6.getSamplesPerPixel());
+    try {
+      PPMFormat.fromMagic("P4");
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("Invalid file format.", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testReadP6() throws IOException {
+    Path file = TestHelper.tempFile(".ppm", new byte[]{'P', '6', '\n', '#', ' ', 'c', '\n', '2',
+        ' ', '1', ' ', '#', 'x', '\n', '2', '5', '5', '\n', 10, 20, 30, (byte) 255, 0, (byte) 128});
+    assertEquals(new Image(new Color[][]{{new RGBColor(10, 20, 30), new RGBColor(255, 0, 128)}}),
+        PPMReader.read(file));
+  }
+
+  @Test
+  public void testReadP3() throws IOException {
+    Path file = this.text("# made by hand\n  P3\n2 1 # width and height\n255\n"
+        + "10 20#red\n30\n\t300 0 128");
+    assertEquals(new Image(new Color[][]{{new RGBColor(10, 20, 30), new RGBColor(255, 0, 128)}}),
+        PPMReader.read(file));
+    Path deep = this.text("P3 1 1 1000\r\n1000 256 7\r\n");
+    assertEquals(new Image(new Color[][]{{new RGBColor(1000, 256, 7)}}, 1000),
+        PPMReader.read(deep));
+  }
+
+  // Text files much larger than the buffer are read a block at a time
+  @Test
+  public void testReadLargeP3() throws IOException {
+    Color[][] grid = new Color[300][400];
+    StringBuilder text = new StringBuilder("P3\n400 300\n255\n");
+    for (int row = 0; row < grid.length; row += 1) {
+      text.append("# row ").append(row).append('\n');
+      for (int col = 0; col < grid[row].length; col += 1) {
+        grid[row][col] = new RGBColor((row + col) % 256, (row * 7) % 256, (col * 3) % 256);
+        text.append(grid[row][col].getRed()).append(' ').append(grid[row][col].getGreen())
+            .append(' ').append(grid[row][col].getBlue()).append('\n');
+      }
+    }
+    assertEquals(new Image(grid), PPMReader.read(this.text(text.toString())));
+  }
+
+  @Test
+  public void testReadSixteenBit() throws IOException {
+    Path p6 = TestHelper.tempFile(".ppm", new byte[]{'P', '6', ' ', '1', ' ', '1', ' ', '1', '0',
+        '0', '0', ' ', 0x03, (byte) 0xe8, 0x01, 0x00, 0x00, 0x07});
+    assertEquals(new Image(new Color[][]{{new RGBColor(1000, 256, 7)}}, 1000),
+        PPMReader.read(p6));
+    Path p5 = TestHelper.tempFile(".ppm", new byte[]{'P', '5', '\n', '2', ' ', '1', '\n', '6', '5',
+        '5', '3', '5', '\n', (byte) 0xff, (byte) 0xff, 0x12, 0x34});
+    assertEquals(new Image(new Color[][]{{new RGBColor(65535, 65535, 65535),
+        new RGBColor(0x1234, 0x1234, 0x1234)}}, 65535), PPMReader.read(p5));
+  }
+
+  @Test
+  public void testInvalidFiles() throws IOException {
+    byte[][] files = new byte[][]{
+        {'P', '3', ' ', '1', ' ', '1', ' ', '2', '5', '5', ' ', '0', ' ', '0'},
+        {'P', '3', ' ', '1', ' ', '1', ' ', '2', '5', '5', ' ', '0', ' ', '0', ' ', '-', '1'},
+        {'P', '3', ' ', '1', ' ', '1', ' ', '2', '5', '5', ' ', '0', ' ', '0', ' ', '1', 'x'},
+        {'P', '3', '1', ' ', '1', ' ', '2', '5', '5', ' ', '0', ' ', '0', ' ', '0'},
+        {'P', '6', ' ', '1', ' ', '1', ' ', '2', '5', '5', ' ', 0, 0},
+        {'P', '6', ' ', 'x', ' ', '1', ' ', '2', '5', '5', ' ', 0, 0, 0},
+        {'P', '5', ' ', '1', ' ', '1', ' ', '7', '0', '0', '0', '0', ' ', 0, 0},
+        {'P', '6'}};
+    for (byte[] bytes : files) {
+      Path file = TestHelper.tempFile(".ppm", bytes);
+      try {
+        PPMReader.read(file);
+        fail();
+      } catch (IllegalArgumentException e) {
+        assertEquals("Invalid file format.", e.getMessage());
+      }
+    }
+  }
+
+  @Test
+  public void testWrite() throws IOException {
+    Path file = TestHelper.tempFile(".ppm");
+    ImageTransform img = new Image(new Color[][]{{new RGBColor(10, 20, 30),
+        new RGBColor(40, 40, 40)}});
+    PPMWriter.write(img, file, PPMFormat.P6);
+    assertArrayEquals(new byte[]{'P', '6', '\n', '2', ' ', '1', '\n', '2', '5', '5', '\n',
+        10, 20, 30, 40, 40, 40}, Files.readAllBytes(file));
+    PPMWriter.write(img, file, PPMFormat.P5);
+    assertArrayEquals(new byte[]{'P', '5', '\n', '2', ' ', '1', '\n', '2', '5', '5', '\n',
+        18, 40}, Files.readAllBytes(file));
+
+    ImageTransform deep = new Image(new Color[][]{{new RGBColor(1000, 256, 7)}}, 1000);
+    PPMWriter.write(deep, file, PPMFormat.P6);
+    assertArrayEquals(new byte[]{'P', '6', '\n', '1', ' ', '1', '\n', '1', '0', '0', '0', '\n',
+        0x03, (byte) 0xe8, 0x01, 0x00, 0x00, 0x07}, Files.readAllBytes(file));
+
+    String n = System.lineSeparator();
+    PPMWriter.write(img, file, PPMFormat.P3);
+    assertEquals("P3" + n + "2 1" + n + "255" + n + "10" + n + "20" + n + "30" + n + "40" + n
+        + "40" + n + "40" + n, new String(Files.readAllBytes(file), StandardCharsets.US_ASCII));
+    PPMWriter.write(deep, file, PPMFormat.P3);
+    assertEquals("P3" + n + "1 1" + n + "1000" + n + "1000" + n + "256" + n + "7" + n,
+        new String(Files.readAllBytes(file), StandardCharsets.US_ASCII));
+    ImageTransform deeper = new Image(new Color[][]{{new RGBColor(70000, 0, 123456)}}, 200000);
+    PPMWriter.write(deeper, file, PPMFormat.P3);
+    assertEquals(deeper, PPMReader.read(file));
+
+    // binary samples have at most two bytes, so deeper images are refused rather than cut down
+    for (PPMFormat format : new PPMFormat[]{PPMFormat.P5, PPMFormat.P6}) {
+      try {
+        PPMWriter.write(Image.fromPixels(new int[]{70000, 1, 2}, 1, 1, 100000), file, format);
+        fail();
+      } catch (IllegalArgumentException e) {
+        assertEquals("Max value is too large for a binary format.", e.getMessage());
+      }
+      assertEquals(deeper, PPMReader.read(file));
+    }
+    ImageTransform widest = new Image(new Color[][]{{new RGBColor(65535, 0, 9)}}, 65535);
+    PPMWriter.write(widest, file, PPMFormat.P6);
+    assertEquals(widest, PPMReader.read(file));
+  }
+
+  // Images larger than the buffers survive being written and read back, in every format
+  @Test
+  public void testRoundTrip() throws IOException {
+    Path file = TestHelper.tempFile(".ppm");
+    for (int maxValue : new int[]{255, 100, 4095}) {
+      ImageTransform img = TestHelper.patternImage(157, 211, maxValue);
+      PPMWriter.write(img, file, PPMFormat.P6);
+      assertEquals(img, PPMReader.read(file));
+      ImageTransform grey = Component.luma().execute(img);
+      PPMWriter.write(grey, file, PPMFormat.P5);
+      assertEquals(grey, PPMReader.read(file));
+      PPMWriter.write(img, file, PPMFormat.P3);
+      assertEquals(img, PPMReader.read(file));
+    }
+  }
+
+  // Files can be read and written a strip of rows at a time
+  @Test
+  public void testStrips() throws IOException {
+    Path file = TestHelper.tempFile(".ppm");
+    Color[][] grid = new Color[53][37];
+    for (int row = 0; row < grid.length; row += 1) {
+      for (int col = 0; col < grid[row].length; col += 1) {
+        grid[row][col] = new RGBColor(row * 4, col * 6, (row + col) % 256);
+      }
+    }
+    ImageTransform img = new Image(grid);
+    for (PPMFormat format : new PPMFormat[]{PPMFormat.P3, PPMFormat.P6}) {
+      try (PPMWriter writer = PPMWriter.open(file, format, 53, 37, 255)) {
+        for (int row = 0; row < 53; row += 10) {
+          writer.writeRows(img.crop(row, 0, Math.min(10, 53 - row), 37));
+        }
+      }
+      try (PPMReader reader = PPMReader.open(file)) {
+        assertEquals(53, reader.getHeight());
+        assertEquals(37, reader.getWidth());
+        assertEquals(255, reader.getMaxValue());
+        assertEquals(img.crop(0, 0, 20, 37), reader.readRows(20));
+        assertEquals(33, reader.getRowsLeft());
+        assertEquals(img.crop(20, 0, 33, 37), reader.readRows(50));
+        assertEquals(0, reader.readRows(5).getHeight());
+      }
+    }
+
+    PPMWriter writer = PPMWriter.open(file, PPMFormat.P6, 53, 37, 255);
+    try {
+      writer.writeRows(img);
+      writer.writeRows(img.crop(0, 0, 1, 37));
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("Rows do not match the image.", e.getMessage());
+    }
+    writer = PPMWriter.open(file, PPMFormat.P6, 54, 37, 255);
+    writer.writeRows(img);
+    try {
+      writer.close();
+      fail();
+    } catch (IllegalStateException e) {
+      assertEquals("Not every row of the image was written.", e.getMessage());
+    }
+  }
+
+  // The controller loads binary files, and saves them when asked for a binary format
+  @Test
+  public void testController() throws IOException {
+    Path p6 = TestHelper.tempFile(".ppm");
+    Path p5 = TestHelper.tempFile(".pgm");
+    ImageProcessingModel model = new ImageProcessingModelImpl();
+    StringBuilder log = new StringBuilder();
+    new ImageProcessingControllerImpl(model, new ImageProcessingViewImpl(log),
+        new StringReader("load res/img1.ppm img\nsave " + p6 + " img p6\n"
+            + "load " + p6 + " binary\nred-component img red\n"
+            + "save " + p5 + " red\nload " + p5 + " grey\n"
+            + "save res/img1.png img p6\nq\n")).control();
+    assertEquals(model.getImage("img"), model.getImage("binary"));
+    assertEquals(model.getImage("red"), model.getImage("grey"));
+    assertEquals('6', Files.readAllBytes(p6)[1]);
+    assertEquals('5', Files.readAllBytes(p5)[1]);
+    assertTrue(log.toString().contains("Command failed: Only PPM files can be saved in a PPM "
+        + "format."));
+  }
+
+  private Path text(String text) throws IOException {
+    return TestHelper.tempFile(".ppm", text.getBytes(StandardCharsets.US_ASCII));
+  }
+}
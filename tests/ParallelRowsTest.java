@@ -0,0 +1,166 @@
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import model.Color;
+import model.Image;
+import model.ImageState;
+import model.ImageTransform;
+import model.ParallelRows;
+import model.Pixels;
+import model.RGBColor;
+import model.macros.Blur;
+import model.macros.Brighten;
+import model.macros.Component;
+import model.macros.Downscale;
+import model.macros.Greyscale;
+import model.macros.HorizontalFlip;
+import model.macros.Levels;
+import model.macros.Macro;
+import model.macros.Mask;
+import model.macros.Sepia;
+import model.macros.Sharpen;
+import model.macros.VerticalFlip;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for running the rows of images in parallel.
+ */
+public class ParallelRowsTest extends TestHelper {
+
+  @After
+  public void resetParallelism() {
+    ParallelRows.configure(Runtime.getRuntime().availableProcessors(),
+        ParallelRows.DEFAULT_THRESHOLD);
+  }
+
+  @Test
+  public void testConfigure() {
+    ParallelRows.configure(3, 100);
+    assertEquals(3, ParallelRows.getParallelism());
+    assertEquals(100, ParallelRows.getThreshold());
+
+    try {
+      ParallelRows.configure(0, 100);
+      fail("Configured no threads.");
+    } catch (IllegalArgumentException e) {
+      assertEquals("Parallelism must be positive.", e.getMessage());
+    }
+    try {
+      ParallelRows.configure(2, 0);
+      fail("Configured a non-positive threshold.");
+    } catch (IllegalArgumentException e) {
+      assertEquals("Threshold must be positive.", e.getMessage());
+    }
+    try {
+      ParallelRows.configure(40000, 100);
+      fail("Configured more threads than a pool can have.");
+    } catch (IllegalArgumentException e) {
+      assertEquals("Parallelism is too large.", e.getMessage());
+    }
+    // the old configuration is kept
+    assertEquals(3, ParallelRows.getParallelism());
+  }
+
+  // Configuring again while other threads run rows does not stop their work
+  @Test
+  public void testConfigureWhileRunning() throws InterruptedException {
+    ParallelRows.configure(4, 1);
+    ImageTransform img = this.bigImage(8, 8);
+    ImageTransform expected = new Brighten(1).execute(img);
+    List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 4; t += 1) {
+      threads.add(new Thread(() -> {
+        try {
+          for (int i = 0; i < 2000; i += 1) {
+            assertEquals(expected, new Brighten(1).execute(img));
+          }
+        } catch (Throwable e) {
+          failures.add(e);
+        }
+      }));
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      for (int i = 0; thread.isAlive(); i += 1) {
+        ParallelRows.configure(2 + i % 3, 1);
+      }
+      thread.join();
+    }
+    assertEquals(Collections.emptyList(), failures);
+  }
+
+  @Test
+  public void testBandsCoverEveryRowOnce() {
+    ParallelRows.configure(4, 1);
+    AtomicIntegerArray visits = new AtomicIntegerArray(101);
+    ParallelRows.forEachBand(101, 3, (fromRow, toRow) -> {
+      for (int row = fromRow; row < toRow; row += 1) {
+        visits.incrementAndGet(row);
+      }
+    });
+    for (int row = 0; row < visits.length(); row += 1) {
+      assertEquals(1, visits.get(row));
+    }
+  }
+
+  @Test
+  public void testExceptionsKeepTheirMessage() {
+    ParallelRows.configure(4, 1);
+    ImageTransform img = this.bigImage(64, 48);
+    try {
+      img.transform((c, y, x) -> y == 40 ? null : c);
+      fail("Transformed into a null color.");
+    } catch (IllegalArgumentException e) {
+      assertEquals("Pixel color cannot be null.", e.getMessage());
+    }
+  }
+
+  // Every macro must give exactly the same image in parallel as it does sequentially
+  @Test
+  public void testMacrosMatchSequential() {
+    ImageTransform img = this.bigImage(97, 131);
+    ImageState mask = img.transformPixels((p, y, x)
+        -> (x * y) % 3 == 0 ? Pixels.rgb(0, 0, 0) : p);
+    ImageTransform deepImg = new Image(this.grid(67, 71), 1000);
+    Macro[] macros = new Macro[]{new Brighten(30), new Brighten(-30), Component.red(),
+        Component.green(), Component.blue(), Component.value(), Component.intensity(),
+        Component.luma(), new Component(Color::getLuma), new Levels(0.1, 0.7, 0.95),
+        new HorizontalFlip(), new VerticalFlip(), new Blur(), new Sharpen(), new Greyscale(),
+        new Sepia(), new Downscale(50, 60), new Mask(new Sharpen(), mask)};
+
+    for (Macro macro : macros) {
+      ParallelRows.configure(1, ParallelRows.DEFAULT_THRESHOLD);
+      ImageState sequential = macro.execute(img);
+      ImageState deepSequential = macro instanceof Mask ? null : macro.execute(deepImg);
+      ParallelRows.configure(4, 1);
+      assertEquals(sequential, macro.execute(img));
+      if (deepSequential != null) {
+        assertEquals(deepSequential, macro.execute(deepImg));
+      }
+    }
+  }
+
+  private ImageTransform bigImage(int height, int width) {
+    return new Image(this.grid(height, width));
+  }
+
+  private Color[][] grid(int height, int width) {
+    Color[][] grid = new Color[height][width];
+    for (int row = 0; row < height; row += 1) {
+      for (int col = 0; col < width; col += 1) {
+        grid[row][col] = new RGBColor((row * 7) % 256, (col * 13) % 256, (row * col) % 256);
+      }
+    }
+    return grid;
+  }
+}
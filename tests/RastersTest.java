@@ -0,0 +1,94 @@
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+
+import controller.io.Rasters;
+import model.ImageState;
+import model.ImageTransform;
+import model.RGBColor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for copying pixels between buffered images and images of the model.
+ */
+public class RastersTest {
+  // every type with a direct path, and two that fall back to getRGB and setRGB
+  private static final int[] TYPES = new int[]{BufferedImage.TYPE_INT_ARGB,
+      BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR,
+      BufferedImage.TYPE_INT_BGR, BufferedImage.TYPE_USHORT_565_RGB};
+
+  // Every type gets the same pixels that setRGB and getRGB would give, one pixel at a time
+  @Test
+  public void testMatchesPerPixel() {
+    ImageState img = this.image(13, 17);
+    for (int type : TYPES) {
+      BufferedImage expected = new BufferedImage(17, 13, type);
+      for (int row = 0; row < 13; row += 1) {
+        for (int col = 0; col < 17; col += 1) {
+          expected.setRGB(col, row, img.getPixelAt(row, col));
+        }
+      }
+      BufferedImage actual = new BufferedImage(17, 13, type);
+      Rasters.toBufferedImage(img, actual);
+      ImageTransform back = Rasters.fromBufferedImage(actual);
+      for (int row = 0; row < 13; row += 1) {
+        for (int col = 0; col < 17; col += 1) {
+          assertEquals(expected.getRGB(col, row), actual.getRGB(col, row));
+          assertEquals(expected.getRGB(col, row), back.getPixelAt(row, col));
+        }
+      }
+    }
+  }
+
+  // Images with all four channels survive a round trip through the types with alpha
+  @Test
+  public void testRoundTrip() {
+    ImageState img = this.image(40, 31);
+    for (int type : new int[]{BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_4BYTE_ABGR}) {
+      BufferedImage buff = new BufferedImage(31, 40, type);
+      Rasters.toBufferedImage(img, buff);
+      assertEquals(img, Rasters.fromBufferedImage(buff));
+    }
+  }
+
+  // Parts of a larger buffered image are copied through getRGB
+  @Test
+  public void testSubimage() {
+    BufferedImage buff = new BufferedImage(17, 13, BufferedImage.TYPE_INT_ARGB);
+    Rasters.toBufferedImage(this.image(13, 17), buff);
+    BufferedImage part = buff.getSubimage(2, 3, 5, 4);
+    assertEquals(this.image(13, 17).crop(3, 2, 4, 5),
+        Rasters.fromBufferedImage(part));
+  }
+
+  @Test
+  public void testExceptions() {
+    try {
+      Rasters.fromBufferedImage(null);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("Buffered image cannot be null.", e.getMessage());
+    }
+    try {
+      Rasters.toBufferedImage(null, new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB));
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("Images cannot be null.", e.getMessage());
+    }
+    try {
+      Rasters.toBufferedImage(this.image(2, 2),
+          new BufferedImage(2, 3, BufferedImage.TYPE_INT_ARGB));
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("Images must be the same size.", e.getMessage());
+    }
+  }
+
+  // a pattern image with an alpha channel as well
+  private ImageTransform image(int height, int width) {
+    return TestHelper.patternImage(height, width, 255).transform((c, y, x)
+        -> new RGBColor(c.getRed(), c.getGreen(), c.getBlue(), (y * 5 + x * 11) % 256));
+  }
+}
@@ -0,0 +1,194 @@
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import controller.ImageProcessingControllerImpl;
+import controller.ImageProcessingControllerImplProMax;
+import model.ImageProcessingModel;
+import model.ImageProcessingModelImpl;
+import model.LazyImageProcessingModel;
+import view.ImageProcessingViewImpl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for running scripts on several threads, which must give the same messages and images as
+ * running them a line at a time.
+ */
+public class ScriptThreadsTest {
+  // Shared by the lines of the test scripts that must run at the same time
+  private static CyclicBarrier meeting;
+
+  @Test
+  public void testSameAsLineByLine() throws IOException {
+    File dir = Files.createTempDirectory("script").toFile();
+    dir.deleteOnExit();
+    String saved = new File(dir, "a.ppm").getPath();
+    String script = "load res/img1.ppm a\nload res/img1.png b\n# a comment\n"
+        + "blur a a1\nsharpen b b1\nbrighten 10 a1 a2\nbrighten -5 b1 b2\n"
+        + "load res/arjunSmall.png s\nload res/arjunSmallMask.png m\n"
+        + "blur s m s1\nbrighten 20 s m s2\ndownscale 5 5 s s3\nsize s3\n"
+        + "save " + saved + " a2\nload " + saved + " a3\nhorizontal-flip a3 a\n"
+        + "sepia a a\nvertical-flip a a4\nunknown x y\nblur missing z\nbrighten x a z\n"
+        + "menu\n\nsave " + new File(dir, "s.png").getPath() + " s1 p6\n"
+        + "luma-component s2 s m2\nq\n";
+    String[] images = new String[]{"a", "a1", "a2", "a3", "a4", "b1", "b2", "s1", "s2", "s3",
+        "s", "m2"};
+
+    for (boolean lazy : new boolean[]{false, true}) {
+      ImageProcessingModel expectedModel = lazy ? new LazyImageProcessingModel()
+          : new ImageProcessingModelImpl();
+      StringBuilder expected = new StringBuilder();
+      new ImageProcessingControllerImplProMax(expectedModel, new ImageProcessingViewImpl(expected),
+          new StringReader(script)).control();
+
+      ImageProcessingModel model = lazy ? new LazyImageProcessingModel()
+          : new ImageProcessingModelImpl();
+      StringBuilder actual = new StringBuilder();
+      ImageProcessingControllerImplProMax controller = new ImageProcessingControllerImplProMax(
+          model, new ImageProcessingViewImpl(actual), new StringReader(script));
+      controller.setScriptThreads(4);
+      controller.control();
+
+      assertEquals(expected.toString(), actual.toString());
+      for (String name : images) {
+        assertEquals(expectedModel.getImage(name), model.getImage(name));
+      }
+    }
+  }
+
+  // Lines on different images run at the same time, and lines on the same image run in order
+  @Test
+  public void testConcurrentLines() {
+    meeting = new CyclicBarrier(2);
+    StringBuilder log = new StringBuilder();
+    ImageProcessingControllerImpl controller = new MeetingController(
+        new StringReader("meet x\nappend 1 x x\nmeet y\nappend 2 x x\nappend 3 x x\nq\n"), log);
+    controller.setScriptThreads(3);
+    controller.control();
+    assertEquals("Welcome to the Image Processing program!\n"
+        + "By: Arjun Bhat & Alexander Chang-Davidson\n\n"
+        + "[Type menu to read support user instructions.]\n"
+        + "Type instruction:\nmet\nType instruction:\n1\nType instruction:\nmet\n"
+        + "Type instruction:\n12\nType instruction:\n123\nType instruction:\n"
+        + "Thank you for using this program!\n", log.toString().replace(
+        System.lineSeparator(), "\n"));
+  }
+
+  // The stats command waits for every line before it, and every line after waits for it
+  @Test
+  public void testStatsBarrier() {
+    meeting = new CyclicBarrier(2);
+    StringBuilder log = new StringBuilder();
+    ImageProcessingControllerImpl controller = new MeetingController(
+        new StringReader("meet x\nstats\nmeet y\nq\n"), log);
+    controller.setScriptThreads(3);
+    controller.control();
+    assertEquals(2, log.toString().split("timed out", -1).length - 1);
+  }
+
+  // Images are forgotten once their value is not used again, without changing what is saved
+  @Test
+  public void testFreeImages() throws IOException {
+    File dir = Files.createTempDirectory("script").toFile();
+    dir.deleteOnExit();
+    File expectedFile = new File(dir, "expected.ppm");
+    File actualFile = new File(dir, "actual.ppm");
+    String script = "load res/img1.ppm a\nblur a b\nsharpen b c\nload res/img1.png a\n"
+        + "brighten 10 a d\nbrighten 20 c d e\nhorizontal-flip e e\nsave %s e\nkept x\nq\n";
+
+    for (boolean lazy : new boolean[]{false, true}) {
+      for (int threads : new int[]{0, 2}) {
+        StringBuilder expected = new StringBuilder();
+        new ImageProcessingControllerImplProMax(new ImageProcessingModelImpl(),
+            new ImageProcessingViewImpl(expected), new StringReader(
+            String.format(script, expectedFile.getPath()))).control();
+
+        ImageProcessingModel model = lazy ? new LazyImageProcessingModel()
+            : new ImageProcessingModelImpl();
+        StringBuilder actual = new StringBuilder();
+        ImageProcessingControllerImplProMax controller = new ImageProcessingControllerImplProMax(
+            model, new ImageProcessingViewImpl(actual), new StringReader(
+            String.format(script, actualFile.getPath())));
+        controller.setFreeImages(true);
+        controller.setScriptThreads(threads);
+        controller.control();
+
+        String farewell = "Thank you for using this program!" + System.lineSeparator();
+        String[] ending = actual.toString().split(System.lineSeparator());
+        assertTrue(ending[ending.length - 2].startsWith("Peak heap use: "));
+        assertEquals(expected.toString(),
+            actual.toString().replace(ending[ending.length - 2] + System.lineSeparator(), ""));
+        assertTrue(expected.toString().endsWith(farewell));
+        assertEquals(Files.readAllLines(expectedFile.toPath()),
+            Files.readAllLines(actualFile.toPath()));
+        for (String name : new String[]{"a", "b", "c", "d", "e", "x"}) {
+          try {
+            model.getImage(name);
+            fail();
+          } catch (IllegalArgumentException e) {
+            assertEquals("Unknown image.", e.getMessage());
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testScriptErrors() {
+    ImageProcessingControllerImpl controller = new ImageProcessingControllerImpl(
+        new ImageProcessingModelImpl(), new ImageProcessingViewImpl(new StringBuilder()),
+        new StringReader("load res/img1.ppm a\n"));
+    try {
+      controller.setScriptThreads(-1);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("Threads cannot be negative.", e.getMessage());
+    }
+    controller.setScriptThreads(2);
+    try {
+      controller.control();
+      fail();
+    } catch (IllegalStateException e) {
+      assertEquals("Unable to successfully receive input.", e.getMessage());
+    }
+  }
+
+  // A controller with a command that waits for another line to run it too, and one that appends
+  // its number to a running string (reading and writing the image it names)
+  private static class MeetingController extends ImageProcessingControllerImpl {
+    private final StringBuilder appended = new StringBuilder();
+
+    MeetingController(Readable input, StringBuilder log) {
+      super(new ImageProcessingModelImpl(), new ImageProcessingViewImpl(log), input);
+    }
+
+    @Override
+    protected void loadCommands() {
+      super.loadCommands();
+      addCommand("meet", sc -> model -> {
+        sc.next();
+        try {
+          meeting.await(1, TimeUnit.SECONDS);
+          this.writeMessage("met");
+        } catch (InterruptedException | BrokenBarrierException | TimeoutException e) {
+          meeting.reset();
+          this.writeMessage("timed out");
+        }
+      });
+      addCommand("append", 1, sc -> model -> {
+        appended.append(sc.next());
+        this.writeMessage(appended.toString());
+      });
+    }
+  }
+}
@@ -0,0 +1,171 @@
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import controller.ImageProcessingControllerImplProMax;
+import controller.io.PPMFormat;
+import controller.io.PPMReader;
+import controller.io.PPMWriter;
+import controller.io.StripPipeline;
+import model.Image;
+import model.ImageProcessingModel;
+import model.ImageProcessingModelImpl;
+import model.ImageTransform;
+import model.RGBColor;
+import model.macros.Blur;
+import model.macros.Brighten;
+import model.macros.Component;
+import model.macros.Convolve;
+import model.macros.Downscale;
+import model.macros.HorizontalFlip;
+import model.macros.Macro;
+import model.macros.Rotate;
+import model.macros.Sepia;
+import model.macros.Sharpen;
+import model.macros.VerticalFlip;
+import view.ImageProcessingViewImpl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for running macros on files a strip at a time, which must give the same image as running
+ * them on the whole image, however small the strips.
+ */
+public class StripPipelineTest {
+  // Every kind of macro that can be streamed, alone and in chains, on packed and deeper images
+  @Test
+  public void testSameAsWholeImage() throws IOException {
+    double[][] wide = new double[7][7];
+    wide[0][6] = 0.5;
+    wide[6][0] = 0.5;
+    List<List<Macro>> pipelines = Arrays.asList(
+        Collections.singletonList(new Blur()),
+        Collections.singletonList(new Convolve(wide)),
+        Collections.singletonList(new VerticalFlip()),
+        Collections.singletonList(new Rotate(1)),
+        Collections.singletonList(new Rotate(-1)),
+        Collections.singletonList(new Rotate(2)),
+        Collections.singletonList(new Rotate(4)),
+        Arrays.asList(new Brighten(20), new Sharpen(), new HorizontalFlip()),
+        Arrays.asList(new Blur(), new Rotate(1), new Blur(), new VerticalFlip(), new Sepia()),
+        Arrays.asList(new VerticalFlip(), new Rotate(3), Component.luma(), new Sharpen()));
+    Path input = TestHelper.tempFile(".ppm");
+    Path output = TestHelper.tempFile(".ppm");
+    for (int maxValue : new int[]{255, 1000}) {
+      ImageTransform img = TestHelper.patternImage(67, 45, maxValue);
+      PPMWriter.write(img, input, PPMFormat.P6);
+      for (List<Macro> macros : pipelines) {
+        ImageTransform expected = img;
+        for (Macro macro : macros) {
+          expected = macro.execute(expected);
+        }
+        for (int stripPixels : new int[]{1, 100, 1000, StripPipeline.DEFAULT_STRIP_PIXELS}) {
+          new StripPipeline(macros, stripPixels).run(input, output, PPMFormat.P6);
+          assertEquals(macros + " in strips of " + stripPixels, expected,
+              PPMReader.read(output));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testInvalid() throws IOException {
+    try {
+      new StripPipeline(Collections.singletonList(new Downscale(1, 1)));
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("Macro cannot be run in strips.", e.getMessage());
+    }
+    try {
+      new StripPipeline(Collections.singletonList(new Blur()), 0);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("Strip size must be positive.", e.getMessage());
+    }
+    Path file = TestHelper.tempFile(".ppm");
+    try {
+      new StripPipeline(Collections.singletonList(new Blur())).run(file, file, PPMFormat.P6);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("Cannot stream a file onto itself.", e.getMessage());
+    }
+  }
+
+  // A stream that fails partway leaves the output file as it was, and no temporary file behind
+  @Test
+  public void testFailureKeepsOutput() throws IOException {
+    Path input = TestHelper.tempFile(".ppm");
+    Path output = TestHelper.tempFile(".ppm");
+    ImageTransform img = new Image(50, 40, 255).transform((c, y, x) -> new RGBColor(y, x, 7));
+    PPMWriter.write(img, output, PPMFormat.P6);
+    byte[] before = Files.readAllBytes(output);
+    // the header promises more rows than the file has
+    Files.write(input, Arrays.copyOf(before, before.length - 40 * 3 * 10));
+    try {
+      new StripPipeline(Collections.singletonList(new Blur()), 40).run(input, output,
+          PPMFormat.P6);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("Invalid file format.", e.getMessage());
+    }
+    assertArrayEquals(before, Files.readAllBytes(output));
+    try (Stream<Path> files = Files.list(output.toAbsolutePath().getParent())) {
+      String name = output.getFileName().toString();
+      assertEquals(1, files.filter(file -> file.getFileName().toString().contains(name))
+          .count());
+    }
+  }
+
+  // Streaming over a file keeps its permissions
+  @Test
+  public void testPermissions() throws IOException {
+    Path output = TestHelper.tempFile(".ppm");
+    if (Files.getFileAttributeView(output, PosixFileAttributeView.class) == null) {
+      return;
+    }
+    Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rw-r-----");
+    Files.setPosixFilePermissions(output, permissions);
+    new StripPipeline(Collections.singletonList(new Blur()), 40).run(Paths.get("res/img1.ppm"),
+        output, PPMFormat.P6);
+    assertEquals(permissions, Files.getPosixFilePermissions(output));
+  }
+
+  // The controller streams files through the commands given by name, without loading them
+  @Test
+  public void testController() throws IOException {
+    Path output = TestHelper.tempFile(".ppm");
+    ImageProcessingModel model = new ImageProcessingModelImpl();
+    StringBuilder log = new StringBuilder();
+    new ImageProcessingControllerImplProMax(model, new ImageProcessingViewImpl(log),
+        new StringReader("stream res/img1.ppm " + output + " P6 brighten 10 blur vertical-flip\n"
+            + "load res/img1.ppm img\nbrighten 10 img img\nblur img img\n"
+            + "vertical-flip img img\nload " + output + " streamed\n"
+            + "stream res/img1.ppm " + output + " downscale 1 1\n"
+            + "stream res/img1.ppm " + output + " size\n"
+            + "stream res/img1.ppm res/img1.png blur\nq\n")).control();
+    assertEquals(model.getImage("img"), model.getImage("streamed"));
+    assertTrue(log.toString().contains("File is streamed."));
+    assertTrue(log.toString().contains("Command failed: Macro cannot be run in strips."));
+    assertTrue(log.toString().contains("Command failed: Command does not run a macro."));
+    assertTrue(log.toString().contains("Command failed: Only PPM files can be streamed."));
+    // only the blur command that was run writes its message
+    String messages = log.toString();
+    assertEquals(messages.indexOf("Blurred image created."),
+        messages.lastIndexOf("Blurred image created."));
+  }
+}
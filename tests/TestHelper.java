@@ -4,6 +4,8 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.function.Function;
 
 import javax.imageio.ImageIO;
@@ -103,6 +105,26 @@ public abstract class TestHelper {
         {0.272, 0.534, 0.131}};
   }
 
+  // An image with lots of different colors, spread over channel values up to the max value
+  protected static ImageTransform patternImage(int height, int width, int maxValue) {
+    return new Image(height, width, maxValue).transform((c, y, x)
+        -> new RGBColor((y * 31 + x) % 256 * maxValue / 255, x * 17 % 256 * maxValue / 255,
+        y * x * 7 % 256 * maxValue / 255));
+  }
+
+  // A temporary file holding the bytes, deleted once the tests are done
+  protected static Path tempFile(String suffix, byte[] bytes) throws IOException {
+    File file = File.createTempFile("test", suffix);
+    file.deleteOnExit();
+    Files.write(file.toPath(), bytes);
+    return file.toPath();
+  }
+
+  // An empty temporary file, deleted once the tests are done
+  protected static Path tempFile(String suffix) throws IOException {
+    return tempFile(suffix, new byte[0]);
+  }
+
   protected ImageState imageAsComponent(ImageState img, Function<Color, Integer> component) {
     if (img == null) {
       throw new IllegalArgumentException("Image cannot be null.");